@@ -0,0 +1,241 @@
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The operations measured by the JMH benchmarks in {@code benchmarks.OpeningsBenchmark}:
+ * the loading paths, per-row parsing, the analyses and each tester question, with the
+ * data pre-loaded and end to end.
+ *
+ * JMH only accepts benchmark classes outside the default package, and those cannot refer to
+ * the classes here, so the benchmark looks operations up by name through {@link #operation}.
+ * Each operation does its setup when it is created and only the measured work when called.
+ */
+public final class ChessOpeningsBenchmark {
+    private static final int PARSE_LINES = 10_000;
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    private ChessOpeningsBenchmark() {}
+
+    /**
+     * Prepares the data and creates one operation.
+     *
+     * @param name operation name, e.g. "load.parallel"; the benchmark's operation parameter lists them all
+     * @param syntheticRows if above 0, a synthetic file of that many rows is generated from the
+     *                      configured openings file and benchmarked instead
+     * @return the operation; its result should be consumed so the JIT cannot drop the work
+     * @throws Exception if the data cannot be prepared
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public static Callable<Object> operation(String name, long syntheticRows) throws Exception {
+        File csv = new File(OpeningsDataset.getConfiguredPath());
+        if (syntheticRows > 0) {
+            File synthetic = File.createTempFile("openings-bench", ".csv");
+            synthetic.deleteOnExit();
+            OpeningsSnapshot.snapshotFile(synthetic).deleteOnExit();
+            SyntheticOpeningsGenerator.generate(csv, synthetic, syntheticRows, 42);
+            csv = synthetic;
+        }
+        OpeningsDataset.setPath(csv.getPath());
+        File snapshot = OpeningsSnapshot.snapshotFile(csv);
+        OpeningsSnapshot.write(snapshot, OpeningsDataset.get().getOpenings(), csv.length(), csv.lastModified());
+        return operation(name, csv, snapshot);
+    }
+
+    /**
+     * Size of the openings file the operations were last prepared for, to normalise the load benchmarks.
+     *
+     * @return the number of openings in the file and its size in bytes
+     * @throws Exception if the file cannot be loaded
+     */
+    public static long[] volume() throws Exception {
+        File csv = new File(OpeningsDataset.getConfiguredPath());
+        return new long[] { OpeningsDataset.get().size(), csv.length() };
+    }
+
+    private static Callable<Object> operation(String name, File csv, File snapshot) throws Exception {
+        EnumSet<OpeningsColumn> questionThreeColumns = EnumSet.of(OpeningsColumn.COLOUR, OpeningsColumn.NUM_GAMES, OpeningsColumn.PLAYER_WIN);
+        OpeningsTable table = OpeningsDataset.get().getTable();
+        OpeningsTable white = table.whereColor(OpeningsTable.WHITE);
+        switch (name) {
+            // Loading
+            case "load.tokenizer":
+                return () -> {
+                    ArrayList<ChessOpening> openings = new ArrayList<>();
+                    try (OpeningsCsvReader reader = OpeningsCsvReader.open(csv)) {
+                        reader.nextRecord();
+                        reader.readOpenings(openings);
+                    }
+                    return openings;
+                };
+            case "load.parallel":
+                return () -> ParallelOpeningsLoader.load(csv);
+            case "load.projected":
+                return () -> OpeningsDataset.loadProjected(csv, questionThreeColumns);
+            case "load.projectedLazyMoves": {
+                EnumSet<OpeningsColumn> columns = EnumSet.copyOf(questionThreeColumns);
+                columns.add(OpeningsColumn.MOVES);
+                return () -> OpeningsDataset.loadProjected(csv, columns);
+            }
+            case "load.snapshot":
+                return () -> OpeningsSnapshot.read(snapshot, csv.length(), csv.lastModified());
+            case "load.scanner":
+                return () -> {
+                    int count = 0;
+                    try (Scanner in = new Scanner(csv, "UTF-8")) {
+                        in.nextLine();
+                        while (in.hasNextLine()) {
+                            ChessOpening opening = new ChessOpening(new Scanner(in.nextLine()));
+                            if (!opening.getEco().contains("-")) {
+                                count++;
+                            }
+                        }
+                    }
+                    return count;
+                };
+            case "parse.row": {
+                List<String> lines;
+                try (Stream<String> head = Files.lines(csv.toPath())) {
+                    lines = head.skip(1).limit(PARSE_LINES).collect(Collectors.toList());
+                }
+                // One tokenizer reused over lines read in advance, as a streaming load reuses its buffers
+                OpeningsCsvReader reader = OpeningsCsvReader.forLines();
+                return new Callable<Object>() {
+                    private int next;
+
+                    @Override
+                    public Object call() {
+                        reader.parseLine(lines.get(next++ % lines.size()));
+                        return reader.fieldCount() > OpeningsCsvReader.MOVES_LIST ? new ChessOpening(reader) : null;
+                    }
+                };
+            }
+            case "dataset.table":
+                return () -> OpeningsTable.from(OpeningsDataset.get().getOpenings());
+            case "positions.index": {
+                MoveTrie trie = MoveTrie.build(OpeningsDataset.get().getOpenings());
+                return () -> PositionIndex.build(trie);
+            }
+
+            // Analyses over pre-loaded data
+            case "correlation.list": {
+                ArrayList<Double> games = new ArrayList<>();
+                ArrayList<Double> wins = new ArrayList<>();
+                for (int row = 0; row < white.size(); row++) {
+                    games.add((double) white.numGames()[row]);
+                    wins.add(white.winPercent()[row]);
+                }
+                return () -> ChessOpeningsAnalysis.findCorrelationCoeff(games, wins);
+            }
+            case "correlation.table":
+                return () -> ChessOpeningsAnalysis.findCorrelationCoeff(white.numGames(), white.winPercent());
+            case "countEco.list": {
+                ArrayList<ChessOpening> openings = new ArrayList<>(OpeningsDataset.get().getOpenings());
+                return () -> ChessOpeningsAnalysis.countEco(openings);
+            }
+            case "countEco.table":
+                return () -> EcoIndex.build(table).counts();
+            case "top25.list": {
+                ArrayList<ChessOpening> openings = new ArrayList<>(OpeningsDataset.get().getOpenings());
+                return () -> ChessOpeningsAnalysis.findTop25Ratings(openings);
+            }
+            case "top25.table":
+                return () -> ChessOpeningsAnalysis.findTop25Ratings(table);
+            case "sufficientWinRates.direct":
+                return () -> ChessOpeningsAnalysis.findSufficientWinRates();
+            case "sufficientWinRates.cacheHit":
+                return () -> AnalysisCache.shared().sufficientWinRates();
+            case "cube.build":
+                return () -> OpeningsCube.build(table);
+            case "cube.correlation": {
+                OpeningsCube cube = OpeningsCube.build(table);
+                return () -> cube.slice().color(OpeningsTable.WHITE).aggregate()
+                        .correlation(OpeningsColumns.Measure.MOVE_COUNT, OpeningsColumns.Measure.WIN_PERCENT);
+            }
+            case "cube.ecoCounts": {
+                OpeningsCube cube = OpeningsCube.build(table);
+                return () -> cube.slice().color(OpeningsTable.BLACK).ratingAtLeast(2200).ecoCounts();
+            }
+
+            // Resampling, at the engine's default number of resamples
+            case "resampling.bootstrap": {
+                ResamplingEngine resampling = new ResamplingEngine();
+                double[] whiteGames = whiteGames(white);
+                return () -> resampling.bootstrap(whiteGames, white.winPercent(), ResamplingEngine.PEARSON, 0.95);
+            }
+            case "resampling.permutation": {
+                ResamplingEngine resampling = new ResamplingEngine();
+                double[] whiteGames = whiteGames(white);
+                return () -> resampling.permutationTest(whiteGames, white.winPercent(), ResamplingEngine.PEARSON,
+                                                        ResamplingEngine.Alternative.TWO_SIDED);
+            }
+            case "resampling.ecoFrequency": {
+                ResamplingEngine resampling = new ResamplingEngine();
+                int[] whiteTop = Quantiles.topPercent(white.avgRating(), 25);
+                return () -> resampling.ecoFrequencyTest(white, whiteTop);
+            }
+
+            // Tester questions with the dataset already loaded, and including a full reload. The preloaded
+            // cases use a fresh cache and rebuild the cube on every call, so they time the analyses
+            // rather than cache hits
+            case "question1.preloaded": return () -> uncached().questionOne.get();
+            case "question2.preloaded": return () -> uncached().questionTwo.get();
+            case "question3.preloaded": return () -> uncached().questionThree.get();
+            case "question4.preloaded": return () -> uncached().questionFour.get();
+            case "question1.endToEnd": return reloading(snapshot, () -> { ChessOpeningTester.questionOne(); return null; });
+            case "question2.endToEnd": return reloading(snapshot, () -> { ChessOpeningTester.questionTwo(); return null; });
+            case "question3.endToEnd": return reloading(snapshot, () -> { ChessOpeningTester.questionThree(); return null; });
+            case "question4.endToEnd": return reloading(snapshot, () -> { ChessOpeningTester.questionFour(); return null; });
+            case "main.endToEnd": return reloading(snapshot, () -> { ChessOpeningTester.main(new String[0]); return null; });
+            default:
+                throw new IllegalArgumentException("Unknown benchmark " + name);
+        }
+    }
+
+    private static ChessOpeningTester.Analyses uncached() {
+        return new ChessOpeningTester.Analyses(new AnalysisScheduler(), new AnalysisCache(16), true);
+    }
+
+    private static double[] whiteGames(OpeningsTable white) {
+        double[] games = new double[white.size()];
+        for (int row = 0; row < white.size(); row++) {
+            games[row] = white.numGames()[row];
+        }
+        return games;
+    }
+
+    /**
+     * Drops the loaded dataset and the file's snapshot before each call, so the operation
+     * includes a full reload that tokenizes the CSV rather than reading the snapshot.
+     */
+    private static Callable<Object> reloading(File snapshot, Callable<?> operation) {
+        return quietly(() -> {
+            Files.deleteIfExists(snapshot.toPath());
+            OpeningsDataset.invalidate();
+            return operation.call();
+        });
+    }
+
+    /**
+     * Runs an operation with System.out discarded, for the tester questions that print their results.
+     */
+    private static Callable<Object> quietly(Callable<?> operation) {
+        return () -> {
+            PrintStream out = System.out;
+            System.setOut(DISCARD);
+            try {
+                return operation.call();
+            } finally {
+                System.setOut(out);
+            }
+        };
+    }
+}
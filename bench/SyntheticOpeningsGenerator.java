@@ -0,0 +1,128 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Writes openings.csv-shaped files of any size for benchmarking, by cycling through the
+ * records of a template file and jittering their numbers. Every generated record has the
+ * template's columns, quoting and move lists, so it exercises the same parsing paths.
+ *
+ * Usage: java SyntheticOpeningsGenerator rows output.csv [template.csv] [seed]
+ */
+public final class SyntheticOpeningsGenerator {
+    private static final String DEFAULT_TEMPLATE = "data/openings.csv";
+
+    private SyntheticOpeningsGenerator() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java SyntheticOpeningsGenerator rows output.csv [template.csv] [seed]");
+            System.exit(1);
+        }
+        long rows = Long.parseLong(args[0]);
+        File output = new File(args[1]);
+        File template = new File(args.length > 2 ? args[2] : DEFAULT_TEMPLATE);
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+
+        generate(template, output, rows, seed);
+        System.out.println("Wrote " + rows + " rows (" + output.length() + " bytes) to " + output);
+    }
+
+    /**
+     * Writes a synthetic openings file.
+     *
+     * @param template openings.csv-style file whose records are repeated
+     * @param output file to write
+     * @param rows number of records to write, not counting the header
+     * @param seed seed of the random jitter, so the same arguments always give the same file
+     * @throws FileNotFoundException if the template is not found
+     * @throws IOException if the template cannot be read or the output written
+     */
+    public static void generate(File template, File output, long rows, long seed) throws IOException {
+        String[] header;
+        ArrayList<String[]> records = new ArrayList<>();
+        try (OpeningsCsvReader reader = OpeningsCsvReader.open(template)) {
+            if (!reader.nextRecord()) {
+                throw new IOException(template + " is empty");
+            }
+            header = fields(reader);
+            while (reader.nextRecord()) {
+                if (reader.fieldCount() > OpeningsCsvReader.MOVES_LIST) {
+                    records.add(fields(reader));
+                }
+            }
+        }
+        if (records.isEmpty()) {
+            throw new IOException(template + " has no records");
+        }
+
+        SplittableRandom random = new SplittableRandom(seed);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8), 1 << 16)) {
+            writeRecord(out, header);
+            for (long row = 0; row < rows; row++) {
+                String[] record = records.get((int) (row % records.size())).clone();
+                record[0] = Long.toString(row);
+                if (row >= records.size()) {
+                    jitter(record, random);
+                }
+                writeRecord(out, record);
+            }
+        }
+    }
+
+    /**
+     * Varies the game count, rating and result percentages of a copied record.
+     * Values that are not plain numbers (such as a dashed ECO row's fields) are left alone.
+     */
+    private static void jitter(String[] record, SplittableRandom random) {
+        try {
+            int games = Integer.parseInt(record[OpeningsCsvReader.NUM_GAMES]);
+            record[OpeningsCsvReader.NUM_GAMES] = Integer.toString(Math.max(1, (int) (games * (0.5 + random.nextDouble()))));
+
+            int rating = Integer.parseInt(record[OpeningsCsvReader.AVG_PLAYER]);
+            record[OpeningsCsvReader.AVG_PLAYER] = Integer.toString(rating + random.nextInt(-100, 101));
+
+            // Move win percentage to or from the opponent so the three results still add up
+            double win = Double.parseDouble(record[OpeningsCsvReader.PLAYER_WIN]);
+            double loss = Double.parseDouble(record[OpeningsCsvReader.OPPONENT_WIN]);
+            double shift = Math.max(-win, Math.min(loss, random.nextDouble(-3, 3)));
+            record[OpeningsCsvReader.PLAYER_WIN] = String.format(Locale.ROOT, "%.1f", win + shift);
+            record[OpeningsCsvReader.OPPONENT_WIN] = String.format(Locale.ROOT, "%.1f", loss - shift);
+        } catch (NumberFormatException e) {
+            // Keep the record as it is
+        }
+    }
+
+    private static String[] fields(OpeningsCsvReader reader) {
+        String[] fields = new String[reader.fieldCount()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = reader.getString(i);
+        }
+        return fields;
+    }
+
+    private static void writeRecord(Writer out, String[] fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            String field = fields[i];
+            if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0) {
+                out.write('"');
+                out.write(field.replace("\"", "\"\""));
+                out.write('"');
+            } else {
+                out.write(field);
+            }
+        }
+        out.write('\n');
+    }
+}
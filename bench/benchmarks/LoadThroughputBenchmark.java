@@ -0,0 +1,75 @@
+package benchmarks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Load throughput of the whole-file operations of ChessOpeningsBenchmark: besides loads per
+ * second, each run reports the openings and megabytes of the file read per second as the
+ * {@code rows} and {@code megabytes} secondary results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LoadThroughputBenchmark {
+    @Param({ "load.tokenizer", "load.parallel", "load.projected", "load.projectedLazyMoves", "load.snapshot", "load.scanner" })
+    public String operation;
+
+    // Rows of a synthetic file generated from the openings file; 0 benchmarks the file itself
+    @Param("0")
+    public long rows;
+
+    private Callable<?> call;
+    private long rowsPerLoad;
+    private double megabytesPerLoad;
+
+    /**
+     * Openings and megabytes loaded, which JMH divides by the measured time like the loads themselves.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Volume {
+        public long rows;
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rows = 0;
+            megabytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Class<?> operations = Class.forName("ChessOpeningsBenchmark");
+        call = (Callable<?>) operations.getMethod("operation", String.class, long.class).invoke(null, operation, rows);
+        long[] volume = (long[]) operations.getMethod("volume").invoke(null);
+        rowsPerLoad = volume[0];
+        megabytesPerLoad = volume[1] / 1e6;
+    }
+
+    @Benchmark
+    public Object load(Volume volume) throws Exception {
+        Object loaded = call.call();
+        volume.rows += rowsPerLoad;
+        volume.megabytes += megabytesPerLoad;
+        return loaded;
+    }
+}
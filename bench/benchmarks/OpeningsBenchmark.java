@@ -0,0 +1,65 @@
+package benchmarks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark over the operations of ChessOpeningsBenchmark, one run per operation name.
+ *
+ * The operations live in the default package with the rest of the code, which a packaged
+ * class cannot refer to, so they are looked up reflectively once per trial; the measured
+ * call is a plain interface call whose result JMH consumes.
+ *
+ * Run with the gc profiler to count allocation on every thread, fork-join workers included:
+ * java -jar jmh/target/benchmarks.jar -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class OpeningsBenchmark {
+    @Param({
+        "load.tokenizer", "load.parallel", "load.projected", "load.projectedLazyMoves", "load.snapshot", "load.scanner",
+        "parse.row", "dataset.table", "positions.index",
+        "correlation.list", "correlation.table", "countEco.list", "countEco.table", "top25.list", "top25.table",
+        "sufficientWinRates.direct", "sufficientWinRates.cacheHit", "cube.build", "cube.correlation", "cube.ecoCounts",
+        "resampling.bootstrap", "resampling.permutation", "resampling.ecoFrequency",
+        "question1.preloaded", "question1.endToEnd", "question2.preloaded", "question2.endToEnd",
+        "question3.preloaded", "question3.endToEnd", "question4.preloaded", "question4.endToEnd",
+        "main.endToEnd"
+    })
+    public String operation;
+
+    // Rows of a synthetic file generated from the openings file; 0 benchmarks the file itself
+    @Param("0")
+    public long rows;
+
+    private Callable<?> call;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        call = (Callable<?>) Class.forName("ChessOpeningsBenchmark")
+                .getMethod("operation", String.class, long.class)
+                .invoke(null, operation, rows);
+    }
+
+    @Benchmark
+    public Object run() throws Exception {
+        return call.call();
+    }
+}
@@ -0,0 +1,568 @@
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * A bounded cache of analysis results, keyed by dataset version, operation and parameters,
+ * for the questions clients ask over and over (good openings per color, correlations per color,
+ * the top-rated openings).
+ *
+ * Eviction follows W-TinyLFU: new entries go to a small LRU window (1% of the bound), and an
+ * entry leaving the window is only admitted to the main space if it has been requested more often
+ * than the entry it would evict, as estimated by a count-min sketch of recent request frequencies
+ * that is halved periodically so old popularity fades. The main space is a segmented LRU: entries
+ * requested again move from its probation segment to a protected one holding 80% of it. A burst of
+ * one-off queries therefore cannot flush the popular results.
+ *
+ * When several threads miss on the same key at once, only one computes the value and the others
+ * wait for it. A result for a newer dataset version than the cache has seen drops every entry,
+ * since results of older snapshots are never requested again; results for an older version than
+ * the latest are computed but not stored.
+ *
+ * The typed accessors hand out copies of results that could be modified, so no caller can change
+ * what later hits see; values returned by {@link #get} itself are shared and must not be modified.
+ */
+public final class AnalysisCache {
+    /** System property with the maximum number of entries of the {@link #shared()} cache. */
+    public static final String SIZE_PROPERTY = "chess.openings.cache.size";
+    private static final int DEFAULT_SIZE = 256;
+
+    private static final AnalysisCache SHARED = new AnalysisCache(Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE));
+
+    /**
+     * Computes a value on a miss.
+     */
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load() throws FileNotFoundException;
+    }
+
+    private enum Segment { WINDOW, PROBATION, PROTECTED }
+
+    private static final class Entry {
+        final Key key;
+        final Object value;
+        final long weight;
+        Segment segment = Segment.WINDOW;
+        // Neighbours in the LRU order of the entry's segment
+        Entry previous;
+        Entry next;
+
+        Entry(Key key, Object value, long weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * LRU order of one segment, least recently used first, linked through the entries themselves
+     * so both ends are found and any entry is moved in constant time.
+     */
+    private static final class SegmentList {
+        // Sentinel: its next entry is the first of the list and its previous one the last
+        private final Entry head = new Entry(null, null, 0);
+
+        SegmentList() {
+            clear();
+        }
+
+        boolean isEmpty() {
+            return head.next == head;
+        }
+
+        Entry first() {
+            return head.next;
+        }
+
+        Entry last() {
+            return head.previous;
+        }
+
+        void addLast(Entry entry) {
+            entry.previous = head.previous;
+            entry.next = head;
+            head.previous.next = entry;
+            head.previous = entry;
+        }
+
+        void remove(Entry entry) {
+            entry.previous.next = entry.next;
+            entry.next.previous = entry.previous;
+            entry.previous = null;
+            entry.next = null;
+        }
+
+        void moveToLast(Entry entry) {
+            remove(entry);
+            addLast(entry);
+        }
+
+        void clear() {
+            head.previous = head;
+            head.next = head;
+        }
+    }
+
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final ToLongFunction<Object> weigher;
+
+    // Entries by key, and the LRU order of each segment (least recently used first); guarded by this
+    private final HashMap<Key, Entry> entries = new HashMap<>();
+    private final SegmentList window = new SegmentList();
+    private final SegmentList probation = new SegmentList();
+    private final SegmentList protectedSegment = new SegmentList();
+    private long windowWeight;
+    private long protectedWeight;
+    private long weight;
+    private long version = Long.MIN_VALUE;
+    private final FrequencySketch sketch;
+
+    // Loads in progress, so concurrent misses on a key wait for the same computation
+    private final ConcurrentHashMap<Key, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * Creates a cache holding at most the given number of entries.
+     *
+     * @param maximumSize maximum number of entries, at least 1
+     */
+    public AnalysisCache(int maximumSize) {
+        this(maximumSize, value -> 1);
+    }
+
+    /**
+     * Creates a cache bounded by the total weight of its values.
+     *
+     * @param maximumWeight maximum total weight, at least 1
+     * @param weigher weight of a value, e.g. its number of rows; must not be negative
+     */
+    public AnalysisCache(long maximumWeight, ToLongFunction<Object> weigher) {
+        if (maximumWeight < 1) {
+            throw new IllegalArgumentException("Maximum weight must be at least 1: " + maximumWeight);
+        }
+        this.maximumWeight = maximumWeight;
+        this.weigher = Objects.requireNonNull(weigher);
+        this.windowMaximum = Math.max(1, maximumWeight / 100);
+        this.protectedMaximum = (long) ((maximumWeight - windowMaximum) * 0.8);
+        this.sketch = new FrequencySketch((int) Math.min(maximumWeight, 1 << 20));
+    }
+
+    /**
+     * @return the process-wide cache, sized by {@link #SIZE_PROPERTY}
+     */
+    public static AnalysisCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Openings with sufficient win rates in the current dataset, see
+     * {@link ChessOpeningsAnalysis#findSufficientWinRates()}.
+     *
+     * @return copies of the lists of white and black openings
+     * @throws FileNotFoundException if the openings file cannot be read
+     */
+    public ArrayList<ArrayList<ChessOpening>> sufficientWinRates() throws FileNotFoundException {
+        return sufficientWinRates(OpeningsDataset.get());
+    }
+
+    /**
+     * Openings with sufficient win rates in a given dataset, for callers that must read one
+     * version of the dataset throughout, see {@link ChessOpeningsAnalysis#findSufficientWinRates()}.
+     *
+     * @param dataset dataset to read
+     * @return copies of the lists of white and black openings
+     * @throws FileNotFoundException if the openings file cannot be read
+     */
+    public ArrayList<ArrayList<ChessOpening>> sufficientWinRates(OpeningsDataset dataset) throws FileNotFoundException {
+        ArrayList<ArrayList<ChessOpening>> cached = get(dataset, "sufficientWinRates", () -> ChessOpeningsAnalysis.findSufficientWinRates(dataset));
+        ArrayList<ArrayList<ChessOpening>> copy = new ArrayList<>(cached.size());
+        for (ArrayList<ChessOpening> openings : cached) {
+            copy.add(new ArrayList<>(openings));
+        }
+        return copy;
+    }
+
+    /**
+     * Correlation of two measures over one color of the current dataset, see
+     * {@link ChessOpeningsAnalysis#findCorrelationCoeff(OpeningsColumns, byte, OpeningsColumns.Measure, OpeningsColumns.Measure)}.
+     *
+     * @param color OpeningsTable.WHITE or BLACK
+     * @param x first measure
+     * @param y second measure
+     * @return correlation coefficient between -1 and 1
+     * @throws FileNotFoundException if the openings file cannot be read
+     */
+    public double correlation(byte color, OpeningsColumns.Measure x, OpeningsColumns.Measure y) throws FileNotFoundException {
+        OpeningsDataset dataset = OpeningsDataset.get();
+        return get(dataset, "correlation", () -> ChessOpeningsAnalysis.findCorrelationCoeff(dataset.getTable(), color, x, y), color, x, y);
+    }
+
+    /**
+     * Openings of one color used by the top 25% rated players of the current dataset, see
+     * {@link ChessOpeningsAnalysis#findTop25Ratings(OpeningsTable)}.
+     *
+     * @param color OpeningsTable.WHITE or BLACK
+     * @return copy of the table of the top-rated openings
+     * @throws FileNotFoundException if the openings file cannot be read
+     */
+    public OpeningsTable top25Ratings(byte color) throws FileNotFoundException {
+        OpeningsDataset dataset = OpeningsDataset.get();
+        OpeningsTable cached = get(dataset, "top25Ratings", () -> ChessOpeningsAnalysis.findTop25Ratings(dataset.getTable().whereColor(color)), color);
+        return cached.copy();
+    }
+
+    /**
+     * Returns the cached result of an operation on a dataset, computing it on a miss.
+     *
+     * @param dataset dataset the operation reads; its version is part of the key
+     * @param operation name of the operation
+     * @param loader computes the result from the dataset
+     * @param parameters the operation's parameters, compared with equals
+     * @return the result, shared with other callers
+     * @throws FileNotFoundException if the loader fails because the openings file is not found
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(OpeningsDataset dataset, String operation, Loader<T> loader, Object... parameters) throws FileNotFoundException {
+        Key key = new Key(dataset.getVersion(), operation, parameters);
+        synchronized (this) {
+            Object cached = lookup(key);
+            if (cached != null) {
+                return (T) cached;
+            }
+        }
+
+        CompletableFuture<Object> load = new CompletableFuture<>();
+        CompletableFuture<Object> running = loading.putIfAbsent(key, load);
+        if (running != null) {
+            // Another thread is computing the same key; waiting for it counts as a hit
+            synchronized (this) {
+                hits++;
+            }
+            return (T) join(running);
+        }
+
+        try {
+            Object value;
+            synchronized (this) {
+                // The key may have been stored between the lookup and claiming the load
+                value = entries.containsKey(key) ? entries.get(key).value : null;
+                if (value == null) {
+                    misses++;
+                }
+            }
+            if (value == null) {
+                value = loader.load();
+                store(key, value);
+            }
+            load.complete(value);
+            return (T) value;
+        } catch (FileNotFoundException | RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, load);
+        }
+    }
+
+    private static Object join(CompletableFuture<Object> load) throws FileNotFoundException {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof FileNotFoundException) {
+                throw (FileNotFoundException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+    }
+
+    /**
+     * Finds an entry, recording the request and moving the entry up its segment. Guarded by this.
+     */
+    private Object lookup(Key key) {
+        sketch.increment(key.hashCode());
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        hits++;
+        switch (entry.segment) {
+            case WINDOW:
+                window.moveToLast(entry);
+                break;
+            case PROBATION:
+                // Requested again while on probation: promote it
+                probation.remove(entry);
+                entry.segment = Segment.PROTECTED;
+                protectedSegment.addLast(entry);
+                protectedWeight += entry.weight;
+                demoteProtected();
+                break;
+            default:
+                protectedSegment.moveToLast(entry);
+                break;
+        }
+        return entry.value;
+    }
+
+    private synchronized void store(Key key, Object value) {
+        if (key.version > version) {
+            // The dataset was reloaded: no one asks for the old snapshot's results again
+            invalidations += entries.size();
+            clear();
+            version = key.version;
+        } else if (key.version < version) {
+            return;
+        }
+        long entryWeight = weigher.applyAsLong(value);
+        if (entryWeight < 0) {
+            throw new IllegalArgumentException("Negative weight " + entryWeight + " for " + key);
+        }
+        if (entryWeight > maximumWeight) {
+            evictions++;
+            return;
+        }
+
+        Entry entry = new Entry(key, value, entryWeight);
+        entries.put(key, entry);
+        window.addLast(entry);
+        windowWeight += entryWeight;
+        weight += entryWeight;
+        evict();
+    }
+
+    /**
+     * Moves the window's overflow to probation, then evicts until the cache fits its bound,
+     * keeping whichever of the newest probation entry (the candidate) and the least recently
+     * used one (the victim) has been requested more often.
+     */
+    private void evict() {
+        while (windowWeight > windowMaximum && !window.isEmpty()) {
+            Entry entry = window.first();
+            window.remove(entry);
+            windowWeight -= entry.weight;
+            entry.segment = Segment.PROBATION;
+            probation.addLast(entry);
+        }
+
+        while (weight > maximumWeight) {
+            Entry victim;
+            if (probation.isEmpty()) {
+                victim = (protectedSegment.isEmpty() ? window : protectedSegment).first();
+            } else {
+                victim = probation.first();
+                Entry candidate = probation.last();
+                if (candidate != victim && sketch.frequency(candidate.key.hashCode()) <= sketch.frequency(victim.key.hashCode())) {
+                    victim = candidate;
+                }
+            }
+            remove(victim);
+            evictions++;
+        }
+    }
+
+    /**
+     * Moves the least recently used protected entries back to probation while the segment is too big.
+     */
+    private void demoteProtected() {
+        while (protectedWeight > protectedMaximum && !protectedSegment.isEmpty()) {
+            Entry entry = protectedSegment.first();
+            protectedSegment.remove(entry);
+            protectedWeight -= entry.weight;
+            entry.segment = Segment.PROBATION;
+            probation.addLast(entry);
+        }
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.key);
+        weight -= entry.weight;
+        switch (entry.segment) {
+            case WINDOW:
+                window.remove(entry);
+                windowWeight -= entry.weight;
+                break;
+            case PROBATION:
+                probation.remove(entry);
+                break;
+            default:
+                protectedSegment.remove(entry);
+                protectedWeight -= entry.weight;
+                break;
+        }
+    }
+
+    /**
+     * Drops every entry. Statistics are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+        windowWeight = 0;
+        protectedWeight = 0;
+        weight = 0;
+    }
+
+    /**
+     * @return counters for sizing the cache
+     */
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, invalidations, entries.size(), weight);
+    }
+
+    /**
+     * Identifies one result: the dataset version, the operation and its parameters.
+     */
+    private static final class Key {
+        final long version;
+        final String operation;
+        final List<Object> parameters;
+        final int hash;
+
+        Key(long version, String operation, Object[] parameters) {
+            this.version = version;
+            this.operation = operation;
+            this.parameters = Arrays.asList(parameters.clone());
+            this.hash = Objects.hash(version, operation, this.parameters);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return version == key.version && operation.equals(key.operation) && parameters.equals(key.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return operation + parameters + "@" + version;
+        }
+    }
+
+    /**
+     * Count-min sketch of request frequencies with 4-bit counters, four per key. After a number of
+     * increments proportional to its size, every counter is halved so the estimates follow recent traffic.
+     */
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = { 0x97CB3127L, 0xB7A9E2A1L, 0xE0DC1AB9L, 0xC2B2AE3DL };
+        private static final long RESET_MASK = 0x7777_7777_7777_7777L;
+
+        private final long[] table;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            // 16 counters per long; at least one long per expected entry
+            table = new long[Math.max(1, Integer.highestOneBit(Math.max(1, capacity) - 1) << 1)];
+            sampleSize = 10 * Math.max(1, capacity);
+        }
+
+        int frequency(int hash) {
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < SEEDS.length; i++) {
+                frequency = Math.min(frequency, (int) ((table[index(hash, i)] >>> shift(hash, i)) & 0xF));
+            }
+            return frequency;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int index = index(hash, i);
+                int shift = shift(hash, i);
+                if (((table[index] >>> shift) & 0xF) < 15) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & RESET_MASK;
+                }
+                additions /= 2;
+            }
+        }
+
+        private int index(int hash, int i) {
+            long mixed = (hash + SEEDS[i]) * SEEDS[i];
+            mixed ^= mixed >>> 32;
+            return (int) mixed & (table.length - 1);
+        }
+
+        private int shift(int hash, int i) {
+            // One of the 16 counters of the long, different for each of the four rows
+            return (((hash >>> (i * 8)) & 3) + i * 4) << 2;
+        }
+    }
+
+    /**
+     * Point-in-time counters of a cache.
+     */
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long invalidations;
+        private final int size;
+        private final long weight;
+
+        private Stats(long hits, long misses, long evictions, long invalidations, int size, long weight) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.size = size;
+            this.weight = weight;
+        }
+
+        /** @return requests answered without computing, including those that waited for another thread's load */
+        public long getHits() { return hits; }
+        /** @return requests that computed their result */
+        public long getMisses() { return misses; }
+        /** @return entries removed to stay within the bound, or not admitted because they weighed more than it */
+        public long getEvictions() { return evictions; }
+        /** @return entries dropped because the dataset was reloaded */
+        public long getInvalidations() { return invalidations; }
+        public int getSize() { return size; }
+        public long getWeight() { return weight; }
+
+        /**
+         * @return hits divided by requests, or NaN before the first request
+         */
+        public double getHitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? Double.NaN : (double) hits / requests;
+        }
+
+        @Override
+        public String toString() {
+            return "hits " + hits + ", misses " + misses + ", evictions " + evictions + ", invalidations " + invalidations
+                    + ", size " + size + ", weight " + weight;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs analyses expressed as a graph of named stages with memoized results.
+ *
+ * A stage declares the stages it depends on and computes its result from theirs. A stage is
+ * started the first time it or a stage depending on it is requested, once all of its
+ * dependencies have finished, and its result is kept, so an intermediate shared by several
+ * analyses is computed exactly once. Stages whose dependencies are done run concurrently
+ * on the scheduler's executor.
+ *
+ * Stages can only depend on stages defined before them, so the graph never has cycles.
+ */
+public final class AnalysisScheduler {
+    private final Executor executor;
+    private final List<Stage<?>> stages = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Creates a scheduler running its stages on the common fork-join pool.
+     */
+    public AnalysisScheduler() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param executor executor the stages run on
+     */
+    public AnalysisScheduler(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Computes a stage's result. Dependencies are read with {@link Stage#get()}, which returns at once
+     * since they have finished before the body runs.
+     */
+    @FunctionalInterface
+    public interface Body<T> {
+        T compute() throws FileNotFoundException;
+    }
+
+    /**
+     * Defines a stage. Nothing runs until the stage or one depending on it is requested.
+     *
+     * @param name name of the stage, for error messages
+     * @param body computes the stage's result
+     * @param dependencies stages whose results the body reads
+     * @return the new stage
+     */
+    public <T> Stage<T> stage(String name, Body<T> body, Stage<?>... dependencies) {
+        for (Stage<?> dependency : dependencies) {
+            if (dependency.scheduler != this) {
+                throw new IllegalArgumentException("Stage " + dependency.name + " belongs to another scheduler");
+            }
+        }
+        Stage<T> stage = new Stage<>(this, name, body, dependencies.clone());
+        stages.add(stage);
+        return stage;
+    }
+
+    /**
+     * Starts the given stages and their dependencies, and waits until all of them have finished.
+     *
+     * @param targets stages to run
+     * @throws FileNotFoundException if a stage failed because the openings file was not found
+     */
+    public void run(Stage<?>... targets) throws FileNotFoundException {
+        // Start everything first so independent targets run concurrently
+        for (Stage<?> target : targets) {
+            target.start();
+        }
+        for (Stage<?> target : targets) {
+            target.get();
+        }
+    }
+
+    /**
+     * @return number of stages that have been started
+     */
+    public int startedStages() {
+        synchronized (stages) {
+            int started = 0;
+            for (Stage<?> stage : stages) {
+                if (stage.isStarted()) {
+                    started++;
+                }
+            }
+            return started;
+        }
+    }
+
+    /**
+     * A named step of an analysis whose result is computed at most once.
+     */
+    public static final class Stage<T> {
+        private final AnalysisScheduler scheduler;
+        private final String name;
+        private final Body<T> body;
+        private final Stage<?>[] dependencies;
+        private CompletableFuture<T> future;
+
+        private Stage(AnalysisScheduler scheduler, String name, Body<T> body, Stage<?>[] dependencies) {
+            this.scheduler = scheduler;
+            this.name = name;
+            this.body = body;
+            this.dependencies = dependencies;
+        }
+
+        /**
+         * Starts the stage, after its dependencies, unless it has already been started.
+         *
+         * @return future completed with the stage's result
+         */
+        public synchronized CompletableFuture<T> start() {
+            if (future == null) {
+                CompletableFuture<?>[] inputs = new CompletableFuture<?>[dependencies.length];
+                for (int i = 0; i < dependencies.length; i++) {
+                    inputs[i] = dependencies[i].start();
+                }
+                future = CompletableFuture.allOf(inputs).thenApplyAsync(done -> {
+                    try {
+                        return body.compute();
+                    } catch (FileNotFoundException e) {
+                        throw new CompletionException(e);
+                    }
+                }, scheduler.executor);
+            }
+            return future;
+        }
+
+        /**
+         * Starts the stage if needed and waits for its result.
+         *
+         * @return the stage's result
+         * @throws FileNotFoundException if this stage or a dependency failed because the openings file was not found
+         */
+        public T get() throws FileNotFoundException {
+            try {
+                return start().join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof FileNotFoundException) {
+                    throw (FileNotFoundException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException("Stage " + name + " failed", cause);
+            }
+        }
+
+        /**
+         * @return true once the stage has been started
+         */
+        public synchronized boolean isStarted() { return future != null; }
+
+        public String getName() { return name; }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,565 @@
+import java.util.SplittableRandom;
+
+/**
+ * A minimal chess position that moves can be played on in standard algebraic notation
+ * ("e4", "Nbd7", "exd5", "O-O", "e8=Q+"), used to replay opening lines.
+ *
+ * The board is a 64-byte array indexed by rank * 8 + file (a1 = 0, h8 = 63). Moves are checked
+ * for legality, including pins, checks, castling through attacked squares and en passant, but
+ * repetition and the fifty-move rule are not tracked, since they do not change the position.
+ *
+ * Every position has a 64-bit Zobrist hash over the pieces, the side to move, the castling
+ * rights and the en passant file, updated as moves are played. The en passant file only counts
+ * when a pawn can actually capture there, so move orders such as 1.e4 e6 2.d4 and 1.d4 e6 2.e4
+ * reach the same hash. The keys come from a fixed seed, so hashes are the same in every run.
+ */
+public final class ChessBoard {
+    public static final byte WHITE = 0;
+    public static final byte BLACK = 1;
+
+    // Piece types; a piece is its type, plus BLACK_PIECE for black
+    static final byte EMPTY = 0;
+    static final byte PAWN = 1;
+    static final byte KNIGHT = 2;
+    static final byte BISHOP = 3;
+    static final byte ROOK = 4;
+    static final byte QUEEN = 5;
+    static final byte KING = 6;
+    private static final byte BLACK_PIECE = 8;
+
+    // Castling rights bits
+    private static final int WHITE_KINGSIDE = 1;
+    private static final int WHITE_QUEENSIDE = 2;
+    private static final int BLACK_KINGSIDE = 4;
+    private static final int BLACK_QUEENSIDE = 8;
+
+    private static final int[] KNIGHT_STEPS = { -17, -15, -10, -6, 6, 10, 15, 17 };
+    private static final int[] KING_STEPS = { -9, -8, -7, -1, 1, 7, 8, 9 };
+    private static final int[] ROOK_DIRECTIONS = { -8, -1, 1, 8 };
+    private static final int[] BISHOP_DIRECTIONS = { -9, -7, 7, 9 };
+    private static final String PIECE_LETTERS = " PNBRQK";
+
+    // Zobrist keys, indexed by piece (0-15) * 64 + square, castling rights and en passant file
+    private static final long[] PIECE_KEYS = new long[16 * 64];
+    private static final long[] CASTLING_KEYS = new long[16];
+    private static final long[] EN_PASSANT_KEYS = new long[8];
+    private static final long SIDE_KEY;
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EED_C4E55L);
+        for (int i = 0; i < PIECE_KEYS.length; i++) {
+            PIECE_KEYS[i] = random.nextLong();
+        }
+        for (int i = 0; i < CASTLING_KEYS.length; i++) {
+            CASTLING_KEYS[i] = random.nextLong();
+        }
+        for (int i = 0; i < EN_PASSANT_KEYS.length; i++) {
+            EN_PASSANT_KEYS[i] = random.nextLong();
+        }
+        SIDE_KEY = random.nextLong();
+    }
+
+    private final byte[] squares = new byte[64];
+    private final int[] kingSquare = new int[2];
+    private byte sideToMove;
+    private int castling;
+    private int enPassant; // square a pawn may capture onto, or -1
+    // Hash of everything but the en passant file, which is added by hash()
+    private long key;
+
+    /**
+     * Creates a board in the starting position.
+     */
+    public ChessBoard() {
+        reset();
+    }
+
+    private ChessBoard(ChessBoard source) {
+        copyFrom(source);
+    }
+
+    /**
+     * Sets the board back to the starting position.
+     */
+    public void reset() {
+        byte[] backRank = { ROOK, KNIGHT, BISHOP, QUEEN, KING, BISHOP, KNIGHT, ROOK };
+        java.util.Arrays.fill(squares, EMPTY);
+        for (int file = 0; file < 8; file++) {
+            squares[file] = backRank[file];
+            squares[8 + file] = PAWN;
+            squares[48 + file] = PAWN | BLACK_PIECE;
+            squares[56 + file] = (byte) (backRank[file] | BLACK_PIECE);
+        }
+        kingSquare[WHITE] = 4;
+        kingSquare[BLACK] = 60;
+        sideToMove = WHITE;
+        castling = WHITE_KINGSIDE | WHITE_QUEENSIDE | BLACK_KINGSIDE | BLACK_QUEENSIDE;
+        enPassant = -1;
+
+        key = CASTLING_KEYS[castling];
+        for (int square = 0; square < 64; square++) {
+            if (squares[square] != EMPTY) {
+                key ^= PIECE_KEYS[squares[square] * 64 + square];
+            }
+        }
+    }
+
+    /**
+     * @return an independent copy of this position
+     */
+    public ChessBoard copy() {
+        return new ChessBoard(this);
+    }
+
+    /**
+     * Sets this board to the same position as another, without allocating.
+     *
+     * @param source position to copy
+     */
+    public void copyFrom(ChessBoard source) {
+        System.arraycopy(source.squares, 0, squares, 0, 64);
+        kingSquare[WHITE] = source.kingSquare[WHITE];
+        kingSquare[BLACK] = source.kingSquare[BLACK];
+        sideToMove = source.sideToMove;
+        castling = source.castling;
+        enPassant = source.enPassant;
+        key = source.key;
+    }
+
+    /**
+     * @return Zobrist hash of the position
+     */
+    public long hash() {
+        return canCaptureEnPassant() ? key ^ EN_PASSANT_KEYS[enPassant & 7] : key;
+    }
+
+    /**
+     * @return WHITE or BLACK
+     */
+    public byte sideToMove() { return sideToMove; }
+
+    /**
+     * Plays a move if it is legal in this position.
+     *
+     * @param san move in standard algebraic notation; a move number ("12.") and check or
+     *        annotation marks ("+", "#", "!?") are ignored
+     * @return true if the move was played, false if it is malformed, illegal or ambiguous,
+     *         in which case the board is unchanged
+     */
+    public boolean play(String san) {
+        int start = 0;
+        int end = san.length();
+        // Skip a move number such as "12." or "12..."
+        while (start < end && Character.isDigit(san.charAt(start))) {
+            start++;
+        }
+        if (start < end && start > 0 && san.charAt(start) == '.') {
+            while (start < end && san.charAt(start) == '.') {
+                start++;
+            }
+        } else {
+            start = 0;
+        }
+        while (end > start && "+#!?".indexOf(san.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        if (end - start < 2) {
+            return false;
+        }
+
+        char first = san.charAt(start);
+        if (first == 'O' || first == '0') {
+            return castle(san, start, end);
+        }
+
+        // Promotion: "e8=Q" or "e8Q"
+        byte promotion = EMPTY;
+        int last = san.charAt(end - 1);
+        int type = PIECE_LETTERS.indexOf(last);
+        if (type >= KNIGHT && type <= QUEEN && first >= 'a' && first <= 'h') {
+            promotion = (byte) type;
+            end--;
+            if (san.charAt(end - 1) == '=') {
+                end--;
+            }
+        }
+        if (end - start < 2) {
+            return false;
+        }
+
+        int toFile = san.charAt(end - 2) - 'a';
+        int toRank = san.charAt(end - 1) - '1';
+        if (toFile < 0 || toFile > 7 || toRank < 0 || toRank > 7) {
+            return false;
+        }
+        int to = toRank * 8 + toFile;
+
+        byte piece;
+        int fromFile = -1;
+        int fromRank = -1;
+        int i = start;
+        if (first >= 'a' && first <= 'h') {
+            piece = PAWN;
+        } else {
+            piece = (byte) PIECE_LETTERS.indexOf(first);
+            if (piece < KNIGHT || piece > KING) {
+                return false;
+            }
+            i++;
+        }
+        // Disambiguation and capture mark between the piece and the destination
+        for (; i < end - 2; i++) {
+            char c = san.charAt(i);
+            if (c >= 'a' && c <= 'h') {
+                fromFile = c - 'a';
+            } else if (c >= '1' && c <= '8') {
+                fromRank = c - '1';
+            } else if (c != 'x' && c != ':') {
+                return false;
+            }
+        }
+
+        if (piece == PAWN) {
+            return playPawn(to, fromFile, promotion);
+        }
+
+        int from = -1;
+        for (int square = 0; square < 64; square++) {
+            if (squares[square] != own(piece)
+                    || (fromFile >= 0 && (square & 7) != fromFile)
+                    || (fromRank >= 0 && (square >> 3) != fromRank)
+                    || !reaches(piece, square, to)
+                    || isOwn(squares[to])
+                    || !isLegal(square, to, -1)) {
+                continue;
+            }
+            if (from >= 0) {
+                // Ambiguous without more disambiguation
+                return false;
+            }
+            from = square;
+        }
+        if (from < 0) {
+            return false;
+        }
+        move(from, to, EMPTY);
+        return true;
+    }
+
+    private boolean playPawn(int to, int fromFile, byte promotion) {
+        int forward = sideToMove == WHITE ? 8 : -8;
+        int lastRank = sideToMove == WHITE ? 7 : 0;
+        if (to >> 3 != lastRank && promotion != EMPTY) {
+            return false;
+        }
+        if (to >> 3 == lastRank && promotion == EMPTY) {
+            // Lenient about a missing promotion piece, which always means a queen in practice
+            promotion = QUEEN;
+        }
+
+        int from;
+        int captured = -1;
+        if (fromFile < 0 || fromFile == (to & 7)) {
+            // Push, one or two squares
+            if (squares[to] != EMPTY) {
+                return false;
+            }
+            from = to - forward;
+            if (from < 0 || from > 63) {
+                return false;
+            }
+            if (squares[from] == EMPTY) {
+                int startRank = sideToMove == WHITE ? 1 : 6;
+                from -= forward;
+                if (from < 0 || from > 63 || from >> 3 != startRank) {
+                    return false;
+                }
+            }
+            if (squares[from] != own(PAWN)) {
+                return false;
+            }
+        } else {
+            if (Math.abs(fromFile - (to & 7)) != 1) {
+                return false;
+            }
+            from = to - forward - (to & 7) + fromFile;
+            if (from < 0 || from > 63 || squares[from] != own(PAWN)) {
+                return false;
+            }
+            if (to == enPassant) {
+                captured = to - forward;
+            } else if (!isOpponent(squares[to])) {
+                return false;
+            }
+        }
+        if (!isLegal(from, to, captured)) {
+            return false;
+        }
+        move(from, to, promotion);
+        return true;
+    }
+
+    private boolean castle(String san, int start, int end) {
+        String text = san.substring(start, end).replace('0', 'O');
+        boolean kingside;
+        if (text.equals("O-O")) {
+            kingside = true;
+        } else if (text.equals("O-O-O")) {
+            kingside = false;
+        } else {
+            return false;
+        }
+
+        int rank = sideToMove == WHITE ? 0 : 56;
+        int right = sideToMove == WHITE ? (kingside ? WHITE_KINGSIDE : WHITE_QUEENSIDE)
+                                        : (kingside ? BLACK_KINGSIDE : BLACK_QUEENSIDE);
+        int king = rank + 4;
+        int rook = rank + (kingside ? 7 : 0);
+        if ((castling & right) == 0 || squares[king] != own(KING) || squares[rook] != own(ROOK)) {
+            return false;
+        }
+        for (int square = Math.min(king, rook) + 1; square < Math.max(king, rook); square++) {
+            if (squares[square] != EMPTY) {
+                return false;
+            }
+        }
+        // The king may not castle out of, through or into check
+        int step = kingside ? 1 : -1;
+        byte opponent = (byte) (1 - sideToMove);
+        for (int square = king; square != king + 3 * step; square += step) {
+            if (isAttacked(square, opponent)) {
+                return false;
+            }
+        }
+
+        move(king, king + 2 * step, EMPTY);
+        // move() switched sides; put the rook next to the king without another switch
+        byte rookPiece = squares[rook];
+        int rookTo = king + step;
+        squares[rook] = EMPTY;
+        squares[rookTo] = rookPiece;
+        key ^= PIECE_KEYS[rookPiece * 64 + rook] ^ PIECE_KEYS[rookPiece * 64 + rookTo];
+        return true;
+    }
+
+    /**
+     * Plays a move that is known to be legal, updating the hash, castling rights,
+     * en passant square and side to move.
+     */
+    private void move(int from, int to, byte promotion) {
+        byte piece = squares[from];
+        int type = piece & 7;
+        key ^= CASTLING_KEYS[castling];
+
+        if (squares[to] != EMPTY) {
+            key ^= PIECE_KEYS[squares[to] * 64 + to];
+        } else if (type == PAWN && to == enPassant) {
+            int captured = to + (sideToMove == WHITE ? -8 : 8);
+            key ^= PIECE_KEYS[squares[captured] * 64 + captured];
+            squares[captured] = EMPTY;
+        }
+        byte placed = promotion == EMPTY ? piece : own(promotion);
+        key ^= PIECE_KEYS[piece * 64 + from] ^ PIECE_KEYS[placed * 64 + to];
+        squares[from] = EMPTY;
+        squares[to] = placed;
+
+        if (type == KING) {
+            kingSquare[sideToMove] = to;
+            castling &= sideToMove == WHITE ? ~(WHITE_KINGSIDE | WHITE_QUEENSIDE) : ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);
+        }
+        // A rook leaving or captured on its corner loses that side's right
+        castling &= ~(cornerRight(from) | cornerRight(to));
+        enPassant = type == PAWN && Math.abs(to - from) == 16 ? (from + to) / 2 : -1;
+
+        key ^= CASTLING_KEYS[castling] ^ SIDE_KEY;
+        sideToMove = (byte) (1 - sideToMove);
+    }
+
+    private static int cornerRight(int square) {
+        switch (square) {
+            case 0: return WHITE_QUEENSIDE;
+            case 7: return WHITE_KINGSIDE;
+            case 56: return BLACK_QUEENSIDE;
+            case 63: return BLACK_KINGSIDE;
+            default: return 0;
+        }
+    }
+
+    /**
+     * Tries a move on the squares and checks that it does not leave the mover's king attacked.
+     *
+     * @param captured square of a pawn taken en passant, or -1
+     */
+    private boolean isLegal(int from, int to, int captured) {
+        byte moving = squares[from];
+        byte target = squares[to];
+        byte takenEnPassant = captured >= 0 ? squares[captured] : EMPTY;
+        squares[to] = moving;
+        squares[from] = EMPTY;
+        if (captured >= 0) {
+            squares[captured] = EMPTY;
+        }
+        int king = (moving & 7) == KING ? to : kingSquare[sideToMove];
+        boolean legal = !isAttacked(king, (byte) (1 - sideToMove));
+
+        squares[from] = moving;
+        squares[to] = target;
+        if (captured >= 0) {
+            squares[captured] = takenEnPassant;
+        }
+        return legal;
+    }
+
+    /**
+     * @return true if a piece of the given color attacks the square
+     */
+    private boolean isAttacked(int square, byte by) {
+        byte black = by == BLACK ? BLACK_PIECE : 0;
+        // A pawn attacks diagonally forward, so look diagonally backward from the square
+        int pawnRow = by == WHITE ? -8 : 8;
+        for (int side = -1; side <= 1; side += 2) {
+            int from = square + pawnRow + side;
+            if (from >= 0 && from < 64 && Math.abs((from & 7) - (square & 7)) == 1 && squares[from] == (PAWN | black)) {
+                return true;
+            }
+        }
+        for (int step : KNIGHT_STEPS) {
+            int from = square + step;
+            if (from >= 0 && from < 64 && Math.abs((from & 7) - (square & 7)) <= 2 && squares[from] == (KNIGHT | black)) {
+                return true;
+            }
+        }
+        for (int step : KING_STEPS) {
+            int from = square + step;
+            if (from >= 0 && from < 64 && Math.abs((from & 7) - (square & 7)) <= 1 && squares[from] == (KING | black)) {
+                return true;
+            }
+        }
+        return slides(square, ROOK_DIRECTIONS, (byte) (ROOK | black), (byte) (QUEEN | black))
+            || slides(square, BISHOP_DIRECTIONS, (byte) (BISHOP | black), (byte) (QUEEN | black));
+    }
+
+    /**
+     * @return true if the first piece along one of the directions is one of the two given pieces
+     */
+    private boolean slides(int square, int[] directions, byte piece, byte queen) {
+        for (int direction : directions) {
+            int current = square;
+            while (true) {
+                int next = current + direction;
+                if (next < 0 || next > 63 || Math.abs((next & 7) - (current & 7)) > 1) {
+                    break;
+                }
+                byte found = squares[next];
+                if (found != EMPTY) {
+                    if (found == piece || found == queen) {
+                        return true;
+                    }
+                    break;
+                }
+                current = next;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if a piece of the type on from could move to (or capture on) to, ignoring pins
+     */
+    private boolean reaches(byte type, int from, int to) {
+        int fileDistance = Math.abs((from & 7) - (to & 7));
+        int rankDistance = Math.abs((from >> 3) - (to >> 3));
+        switch (type) {
+            case KNIGHT:
+                return fileDistance * rankDistance == 2;
+            case KING:
+                return Math.max(fileDistance, rankDistance) == 1;
+            case BISHOP:
+                return fileDistance == rankDistance && fileDistance > 0 && clearBetween(from, to);
+            case ROOK:
+                return (fileDistance == 0) != (rankDistance == 0) && clearBetween(from, to);
+            case QUEEN:
+                return (fileDistance == rankDistance || fileDistance == 0 || rankDistance == 0)
+                    && from != to && clearBetween(from, to);
+            default:
+                return false;
+        }
+    }
+
+    private boolean clearBetween(int from, int to) {
+        int step = Integer.signum((to >> 3) - (from >> 3)) * 8 + Integer.signum((to & 7) - (from & 7));
+        for (int square = from + step; square != to; square += step) {
+            if (squares[square] != EMPTY) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean canCaptureEnPassant() {
+        if (enPassant < 0) {
+            return false;
+        }
+        int row = sideToMove == WHITE ? -8 : 8;
+        int file = enPassant & 7;
+        return (file > 0 && squares[enPassant + row - 1] == own(PAWN))
+            || (file < 7 && squares[enPassant + row + 1] == own(PAWN));
+    }
+
+    private byte own(int type) {
+        return (byte) (sideToMove == WHITE ? type : type | BLACK_PIECE);
+    }
+
+    private boolean isOwn(byte piece) {
+        return piece != EMPTY && (piece & BLACK_PIECE) == (sideToMove == WHITE ? 0 : BLACK_PIECE);
+    }
+
+    private boolean isOpponent(byte piece) {
+        return piece != EMPTY && !isOwn(piece);
+    }
+
+    /**
+     * @return the position in Forsyth-Edwards Notation, without the move counters
+     */
+    public String toFen() {
+        StringBuilder fen = new StringBuilder();
+        for (int rank = 7; rank >= 0; rank--) {
+            int empty = 0;
+            for (int file = 0; file < 8; file++) {
+                byte piece = squares[rank * 8 + file];
+                if (piece == EMPTY) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                char letter = PIECE_LETTERS.charAt(piece & 7);
+                fen.append((piece & BLACK_PIECE) != 0 ? Character.toLowerCase(letter) : letter);
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            if (rank > 0) {
+                fen.append('/');
+            }
+        }
+        fen.append(sideToMove == WHITE ? " w " : " b ");
+        if (castling == 0) {
+            fen.append('-');
+        }
+        if ((castling & WHITE_KINGSIDE) != 0) fen.append('K');
+        if ((castling & WHITE_QUEENSIDE) != 0) fen.append('Q');
+        if ((castling & BLACK_KINGSIDE) != 0) fen.append('k');
+        if ((castling & BLACK_QUEENSIDE) != 0) fen.append('q');
+        fen.append(' ');
+        fen.append(enPassant < 0 ? "-" : "" + (char) ('a' + (enPassant & 7)) + (enPassant / 8 + 1));
+        return fen.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toFen();
+    }
+}
@@ -1,4 +1,5 @@
 import java.util.Scanner;
+import java.util.Set;
 
 /**
  * Represents a chess opening with associated statistics and move information.
@@ -6,13 +7,26 @@ import java.util.Scanner;
  * including win rates, popularity, and the sequence of moves.
  */
 public class ChessOpening {
+    // One line tokenizer per thread, reused by the Scanner constructor
+    private static final ThreadLocal<OpeningsCsvReader> LINE_READER = ThreadLocal.withInitial(OpeningsCsvReader::forLines);
+
     private String opening;
     private String color;
     private String eco;
+    private String lastPlayed;
     private int numGames;
     private int avgRating;
     private double playerWinPercent;
-    private String[] movesList;
+    private double drawPercent;
+    private double opponentWinPercent;
+    // Moves are stored as a slice of the MoveLines buffer of the load that created the opening...
+    private MoveLines moveLines;
+    private int movesOffset;
+    private int movesLength;
+    // ...unless their move numbers do not follow the usual 1.e4 e5 2.Nf3 pattern
+    private String[] irregularMoves;
+    // Raw moves_list text of a projected load, decoded on first use
+    private volatile String pendingMoves;
 
    /**
     * Default constructor creating an empty ChessOpening object.
@@ -20,47 +34,257 @@ public class ChessOpening {
    public ChessOpening() {}
 
    // Full constructor 
-   public ChessOpening(String opening, String color, String eco, int numGames,int avgRating, double playerWinPercent, String[] movesList) {
+   public ChessOpening(String opening, String color, String eco, int numGames, int avgRating, double playerWinPercent,
+                       double drawPercent, double opponentWinPercent, String[] movesList) {
         this.opening = opening;
         this.color = color;
         this.eco = eco;
         this.numGames = numGames;
         this.avgRating = avgRating;
         this.playerWinPercent = playerWinPercent;
-        this.movesList = movesList;
+        this.drawPercent = drawPercent;
+        this.opponentWinPercent = opponentWinPercent;
+        setMoves(movesList, null);
+    }
+
+   /**
+    * Full constructor including the date the opening was last played.
+    *
+    * @param lastPlayed ISO date (yyyy-mm-dd) of the last game, or null if unknown
+    */
+   public ChessOpening(String opening, String color, String eco, int numGames, int avgRating, double playerWinPercent,
+                       double drawPercent, double opponentWinPercent, String[] movesList, String lastPlayed) {
+        this(opening, color, eco, numGames, avgRating, playerWinPercent, drawPercent, opponentWinPercent, movesList);
+        this.lastPlayed = lastPlayed;
+   }
+
+   /**
+    * Full constructor storing the moves in a load's shared buffer rather than one of their own.
+    *
+    * @param lines buffer of the load creating the opening
+    */
+   ChessOpening(String opening, String color, String eco, int numGames, int avgRating, double playerWinPercent,
+                double drawPercent, double opponentWinPercent, String[] movesList, String lastPlayed, MoveLines lines) {
+        this.opening = opening;
+        this.color = color;
+        this.eco = eco;
+        this.numGames = numGames;
+        this.avgRating = avgRating;
+        this.playerWinPercent = playerWinPercent;
+        this.drawPercent = drawPercent;
+        this.opponentWinPercent = opponentWinPercent;
+        this.lastPlayed = lastPlayed;
+        setMoves(movesList, lines);
+   }
+
+   /**
+    * Creates an opening with another opening's name, color, ECO code and moves and new statistics,
+    * sharing the stored moves instead of adding them to a MoveLines buffer again.
+    */
+   ChessOpening(ChessOpening source, int numGames, int avgRating, double playerWinPercent,
+                double drawPercent, double opponentWinPercent, String lastPlayed) {
+        source.decodePendingMoves();
+        this.opening = source.opening;
+        this.color = source.color;
+        this.eco = source.eco;
+        this.numGames = numGames;
+        this.avgRating = avgRating;
+        this.playerWinPercent = playerWinPercent;
+        this.drawPercent = drawPercent;
+        this.opponentWinPercent = opponentWinPercent;
+        this.moveLines = source.moveLines;
+        this.movesOffset = source.movesOffset;
+        this.movesLength = source.movesLength;
+        this.irregularMoves = source.irregularMoves;
+        this.lastPlayed = lastPlayed;
+   }
+
+   // Constructor without draw and loss rates, which are left at 0
+   public ChessOpening(String opening, String color, String eco, int numGames,int avgRating, double playerWinPercent, String[] movesList) {
+        this(opening, color, eco, numGames, avgRating, playerWinPercent, 0.0, 0.0, movesList);
     }
 
-   // Scanner constructor for CSV parsing
+   // Scanner constructor for CSV parsing, kept for existing callers
    public ChessOpening(Scanner lineScanner) {
-     String line = lineScanner.nextLine();
-     // Declare values outside try-catch to ensure it's in scope
-     String[] values = null;  // Initialize as null to avoid compilation error
- 
-      values = line.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)");
- 
-     // Parse values according to CSV column positions
-     opening = values[1].replaceAll("\"", "");  // Column 1: Opening
-     color = values[2].toLowerCase();           // Column 2: Colour
-     numGames = Integer.parseInt(values[3]);    // Column 3: Num Games
-     eco = values[4];                          // Column 4: ECO
-     avgRating = Integer.parseInt(values[7]);   // Column 7: Avg Player
-     playerWinPercent = Double.parseDouble(values[8]); // Column 8: Player Win %
- 
-     // Parse movesList from the moves_list column (column 12)
-     String movesString = values[12].replaceAll("\"", "")  // Remove quotes
-                                   .replaceAll("\\[|\\]", "") // Remove square brackets
-                                   .replaceAll("'", ""); // Remove single quotes
-     movesList = movesString.split(", ");
- 
-}
+     this(parseLine(lineScanner.nextLine()));
+   }
+
+   private static OpeningsCsvReader parseLine(String line) {
+     OpeningsCsvReader reader = LINE_READER.get();
+     reader.parseLine(line);
+     return reader;
+   }
+
+   /**
+    * Creates an opening from the tokenizer's current CSV record.
+    *
+    * @param reader tokenizer positioned on an openings.csv record
+    */
+   ChessOpening(OpeningsCsvReader reader) {
+     opening = reader.getString(OpeningsCsvReader.OPENING);                // Column 1: Opening
+     color = reader.getColor(OpeningsCsvReader.COLOUR);                    // Column 2: Colour
+     numGames = reader.getInt(OpeningsCsvReader.NUM_GAMES);                // Column 3: Num Games
+     eco = reader.getString(OpeningsCsvReader.ECO);                        // Column 4: ECO
+     lastPlayed = reader.getString(OpeningsCsvReader.LAST_PLAYED);         // Column 5: Last Played
+     if (lastPlayed.isEmpty()) {
+       lastPlayed = null;
+     }
+     avgRating = reader.getInt(OpeningsCsvReader.AVG_PLAYER);              // Column 7: Avg Player
+     playerWinPercent = reader.getDouble(OpeningsCsvReader.PLAYER_WIN);    // Column 8: Player Win %
+     drawPercent = reader.getDouble(OpeningsCsvReader.DRAW);               // Column 9: Draw %
+     opponentWinPercent = reader.getDouble(OpeningsCsvReader.OPPONENT_WIN); // Column 10: Opponent Win %
+     setMoves(reader.getMoves(OpeningsCsvReader.MOVES_LIST), reader.moveLines()); // Column 12: moves_list
+   }
+
+   /**
+    * Creates an opening from the tokenizer's current CSV record, setting only the projected
+    * columns. The moves are kept as text and decoded the first time they are read.
+    *
+    * @param reader tokenizer positioned on an openings.csv record
+    * @param columns columns to set; the other fields are left null or 0
+    */
+   ChessOpening(OpeningsCsvReader reader, Set<OpeningsColumn> columns) {
+     if (columns.contains(OpeningsColumn.OPENING)) {
+       opening = reader.getString(OpeningsCsvReader.OPENING);
+     }
+     if (columns.contains(OpeningsColumn.COLOUR)) {
+       color = reader.getColor(OpeningsCsvReader.COLOUR);
+     }
+     if (columns.contains(OpeningsColumn.NUM_GAMES)) {
+       numGames = reader.getInt(OpeningsCsvReader.NUM_GAMES);
+     }
+     if (columns.contains(OpeningsColumn.ECO)) {
+       eco = reader.getString(OpeningsCsvReader.ECO);
+     }
+     if (columns.contains(OpeningsColumn.LAST_PLAYED)) {
+       lastPlayed = reader.getString(OpeningsCsvReader.LAST_PLAYED);
+       if (lastPlayed.isEmpty()) {
+         lastPlayed = null;
+       }
+     }
+     if (columns.contains(OpeningsColumn.AVG_PLAYER)) {
+       avgRating = reader.getInt(OpeningsCsvReader.AVG_PLAYER);
+     }
+     if (columns.contains(OpeningsColumn.PLAYER_WIN)) {
+       playerWinPercent = reader.getDouble(OpeningsCsvReader.PLAYER_WIN);
+     }
+     if (columns.contains(OpeningsColumn.DRAW)) {
+       drawPercent = reader.getDouble(OpeningsCsvReader.DRAW);
+     }
+     if (columns.contains(OpeningsColumn.OPPONENT_WIN)) {
+       opponentWinPercent = reader.getDouble(OpeningsCsvReader.OPPONENT_WIN);
+     }
+     if (columns.contains(OpeningsColumn.MOVES)) {
+       pendingMoves = reader.getString(OpeningsCsvReader.MOVES_LIST);
+     }
+   }
+
+   /**
+    * Decodes the moves of a projected load the first time they are needed. Openings are shared
+    * between threads, so the decoding is done once under the lock, into a buffer of the opening's
+    * own, and published by clearing the volatile text.
+    */
+   private void decodePendingMoves() {
+     if (pendingMoves != null) {
+       synchronized (this) {
+         String raw = pendingMoves;
+         if (raw != null) {
+           setMoves(OpeningsCsvReader.splitMoves(raw), null);
+           pendingMoves = null;
+         }
+       }
+     }
+   }
+
+   /**
+    * Stores a move list as dictionary codes in a MoveLines buffer. Lists numbered
+    * in the usual way ("1.e4", "e5", "2.Nf3", ...) have their numbers removed and
+    * restored by getMovesList(); any other list is kept as it is.
+    *
+    * @param lines buffer of the load creating the opening, or null for a buffer of its own
+    */
+   private void setMoves(String[] movesList, MoveLines lines) {
+     String[] sans = new String[movesList.length];
+     for (int i = 0; i < movesList.length; i++) {
+       String san = MoveDictionary.normalize(movesList[i]);
+       String expected = i % 2 == 0 ? (i / 2 + 1) + "." + san : san;
+       if (san.isEmpty() || !expected.equals(movesList[i])) {
+         irregularMoves = movesList;
+         movesOffset = -1;
+         movesLength = movesList.length;
+         return;
+       }
+       sans[i] = san;
+     }
+     moveLines = lines == null ? MoveLines.of(sans) : lines;
+     movesOffset = lines == null ? 0 : lines.append(sans);
+     movesLength = sans.length;
+   }
+
+   /**
+    * Points the opening at a buffer its load's buffer was copied into, see {@link MoveLines#concat}.
+    * Only called by the load, before the opening is shared.
+    *
+    * @param from buffer the moves may be in
+    * @param to buffer from was copied into
+    * @param shift offset of from's first move in to
+    */
+   void relocateMoves(MoveLines from, MoveLines to, int shift) {
+     if (moveLines == from) {
+       moveLines = to;
+       movesOffset += shift;
+     }
+   }
 
    // Getters
    public String getOpening() { return opening; }
    public String getColor() { return color; }
    public String getEco() { return eco; }
+   /** @return ISO date (yyyy-mm-dd) the opening was last played, or null if unknown */
+   public String getLastPlayed() { return lastPlayed; }
    public int getNumGames() { return numGames; }
    public int getAvgRating() { return avgRating; }
    public double getPlayerWinPercent() { return playerWinPercent; }
-   public String[] getMovesList() { return movesList; }
+   public double getDrawPercent() { return drawPercent; }
+   public double getOpponentWinPercent() { return opponentWinPercent; }
+   public int getMoveCount() {
+     decodePendingMoves();
+     return movesLength;
+   }
+
+   /**
+    * Decodes the moves on each call, e.g. ["1.e4", "Nf6", "2.e5"].
+    * Use getMoveCount() and getMoveCode(int) to avoid creating the Strings.
+    *
+    * @return the opening's moves, numbered as in the CSV file
+    */
+   public String[] getMovesList() {
+     decodePendingMoves();
+     if (irregularMoves != null) {
+       // Shared with other openings built from the same source, so callers get a copy
+       return irregularMoves.clone();
+     }
+     String[] movesList = new String[movesLength];
+     for (int i = 0; i < movesLength; i++) {
+       String san = MoveDictionary.move(moveLines.codeAt(movesOffset + i));
+       movesList[i] = i % 2 == 0 ? (i / 2 + 1) + "." + san : san;
+     }
+     return movesList;
+   }
+
+   /**
+    * @param index position of a move in the list
+    * @return the move's MoveDictionary code
+    */
+   public int getMoveCode(int index) {
+     decodePendingMoves();
+     if (index < 0 || index >= movesLength) {
+       throw new IndexOutOfBoundsException("Move " + index + " out of bounds for length " + movesLength);
+     }
+     if (irregularMoves != null) {
+       return MoveDictionary.code(MoveDictionary.normalize(irregularMoves[index]));
+     }
+     return moveLines.codeAt(movesOffset + index);
+   }
 
 }
\ No newline at end of file
@@ -6,53 +6,77 @@ import java.util.ArrayList;
  * about opening effectiveness, popularity, and usage patterns across different player levels.
  */
 public class ChessOpeningTester {
- 
+
+    /**
+     * The four questions as stages of an {@link AnalysisScheduler} graph. Inputs shared by
+     * several questions (the tables per color, the cube, the openings with sufficient win rates
+     * and the ECO frequency distributions) are computed once, and independent stages run concurrently.
+     * Every input is derived from the one dataset the root stage reads, so the answers agree
+     * even if the file is reloaded during the run.
+     *
+     * The correlations and the overall ECO frequencies are read from the dataset's
+     * {@link OpeningsCube}. The top 25% frequencies are not: the 75th percentile rating that
+     * separates the top players does not fall on a rating band edge, so they scan the rows.
+     */
+    static final class Analyses {
+        final AnalysisScheduler.Stage<OpeningsDataset> dataset;
+        final AnalysisScheduler.Stage<OpeningsTable> table;
+        final AnalysisScheduler.Stage<OpeningsTable> white;
+        final AnalysisScheduler.Stage<OpeningsTable> black;
+        final AnalysisScheduler.Stage<OpeningsCube> cube;
+        final AnalysisScheduler.Stage<ArrayList<ArrayList<ChessOpening>>> sufficientWinRates;
+        final AnalysisScheduler.Stage<double[]> wOverallFreq;
+        final AnalysisScheduler.Stage<double[]> bOverallFreq;
+        final AnalysisScheduler.Stage<double[]> wTopFreq;
+        final AnalysisScheduler.Stage<double[]> bTopFreq;
+
+        final AnalysisScheduler.Stage<String> questionOne;
+        final AnalysisScheduler.Stage<String> questionTwo;
+        final AnalysisScheduler.Stage<String> questionThree;
+        final AnalysisScheduler.Stage<String> questionFour;
+
+        Analyses(AnalysisScheduler scheduler) {
+            this(scheduler, AnalysisCache.shared(), false);
+        }
+
+        /**
+         * @param scheduler scheduler the stages run on
+         * @param cache cache the openings with sufficient win rates are memoized in
+         * @param rebuildCube build the cube from the table rather than using the dataset's memoized
+         *                    one, e.g. so a benchmark times the build
+         */
+        Analyses(AnalysisScheduler scheduler, AnalysisCache cache, boolean rebuildCube) {
+            dataset = scheduler.stage("dataset", OpeningsDataset::get);
+            table = scheduler.stage("table", () -> dataset.get().getTable(), dataset);
+            white = scheduler.stage("white", () -> table.get().whereColor(OpeningsTable.WHITE), table);
+            black = scheduler.stage("black", () -> table.get().whereColor(OpeningsTable.BLACK), table);
+            cube = rebuildCube ? scheduler.stage("cube", () -> OpeningsCube.build(table.get()), table)
+                               : scheduler.stage("cube", () -> dataset.get().getCube(), dataset);
+            sufficientWinRates = scheduler.stage("sufficientWinRates", () -> cache.sufficientWinRates(dataset.get()), dataset);
+
+            // Frequency distributions for all players and for the top 25% rated players
+            wOverallFreq = scheduler.stage("wOverallFreq", () -> cube.get().slice().color(OpeningsTable.WHITE).ecoFrequencies(), cube);
+            bOverallFreq = scheduler.stage("bOverallFreq", () -> cube.get().slice().color(OpeningsTable.BLACK).ecoFrequencies(), cube);
+            wTopFreq = scheduler.stage("wTopFreq", () -> ChessOpeningsAnalysis.findOpeningFreq(ChessOpeningsAnalysis.findTop25Ratings(white.get())), white);
+            bTopFreq = scheduler.stage("bTopFreq", () -> ChessOpeningsAnalysis.findOpeningFreq(ChessOpeningsAnalysis.findTop25Ratings(black.get())), black);
+
+            questionOne = scheduler.stage("questionOne", () -> answerOne(sufficientWinRates.get()), sufficientWinRates);
+            questionTwo = scheduler.stage("questionTwo", () -> answerTwo(cube.get(), sufficientWinRates.get()),
+                                          cube, sufficientWinRates);
+            questionThree = scheduler.stage("questionThree", () -> answerThree(cube.get(), sufficientWinRates.get()),
+                                            cube, sufficientWinRates);
+            questionFour = scheduler.stage("questionFour", () -> answerFour(wOverallFreq.get(), bOverallFreq.get(), wTopFreq.get(), bTopFreq.get()),
+                                           wOverallFreq, bOverallFreq, wTopFreq, bTopFreq);
+        }
+    }
+
     /**
      * Question 1: Analyzes which chess openings are considered "good" based on win rates
      * - For white: win rate > 50% is considered good (due to first-move advantage)
      * - For black: win rate > 45% is considered good
-     * Also analyzes the distribution of good openings across ECO codes (A-E)
      */
     public static void questionOne() throws FileNotFoundException {
-        // Get lists of openings with sufficient win rates for both white and black
-        ArrayList<ArrayList<ChessOpening>> sufficientWinRates = ChessOpeningsAnalysis.findSufficientWinRates();
-    
-        // Create lists to store just the opening names for easier output
-        ArrayList<ArrayList<String>> sufficientWinRatesNames = new ArrayList<>();
-        sufficientWinRatesNames.add(new ArrayList<>());  // White openings
-        sufficientWinRatesNames.add(new ArrayList<>());  // Black openings
-    
-        // Extract opening names from the ChessOpening objects
-        for (int i = 0; i < sufficientWinRates.size(); i++) { 
-            for (int j = 0; j < sufficientWinRates.get(i).size(); j++) {  
-                sufficientWinRatesNames.get(i).add(sufficientWinRates.get(i).get(j).getOpening());
-            }
-        }
-    
-        // Output the results
-        System.out.println("For white, the openings with sufficient win rates are: " + sufficientWinRatesNames.get(0));
-        System.out.println("Number of 'good' white openings: " + sufficientWinRatesNames.get(0).size());
-        System.out.println("For black, the openings with sufficient win rates are: " + sufficientWinRatesNames.get(1));
-        System.out.println("Number of 'good' black openings: " + sufficientWinRatesNames.get(1).size());
-
-        // Find majority across ECO codes
-        int[] wEcoCounter = new int[5];  
-        int[] bEcoCounter = new int[5]; 
-        for (int i = 0; i < sufficientWinRates.size(); i++){
-            for (int j = 0; j < sufficientWinRates.get(i).size(); j++) { 
-                String eco = sufficientWinRates.get(i).get(j).getEco();
-                char letter = eco.charAt(0);               
-                int index = (letter - 'A');  
-                if (i == 0){
-                    wEcoCounter[index]++;  
-                } else if (i == 1){
-                    bEcoCounter[index]++;  
-                }
-            }
-        }
-
-        //System.out.println ("White ECO counter: " + Arrays.toString(wEcoCounter));
-        //System.out.println ("Black ECO counter: " + Arrays.toString(bEcoCounter));
+        System.out.print(new Analyses(new AnalysisScheduler()).questionOne.get());
     }
 
     /**
@@ -60,26 +84,7 @@ public class ChessOpeningTester {
      * Uses correlation coefficient analysis and Fisher transformation to compare white vs black
      */
     public static void questionTwo() throws FileNotFoundException{
-        ArrayList<ArrayList<Double>> winRates = new ArrayList<>();
-        ArrayList<ArrayList<ChessOpening>> splitByColor = ChessOpeningsAnalysis.splitByColor();
-
-        // Initialize lists for storing win rates
-        winRates.add(new ArrayList<>());  // White win rates
-        winRates.add(new ArrayList<>());  // Black win rates
-
-        // Extract win percentages for both colors
-        for (int i = 0; i < splitByColor.size(); i++){
-            for (int j = 0; j < splitByColor.get(i).size(); j++){
-                winRates.get(i).add(splitByColor.get(i).get(j).getPlayerWinPercent());
-            }
-        }
-
-        // Calculate correlation coefficients between development level and win rates
-        double rWhite = ChessOpeningsAnalysis.findCorrelationCoeff(ChessOpeningsAnalysis.getDevelopmentLevel(splitByColor).get(0), winRates.get(0));
-        double rBlack = ChessOpeningsAnalysis.findCorrelationCoeff(ChessOpeningsAnalysis.getDevelopmentLevel(splitByColor).get(1), winRates.get(1));
-
-        System.out.println ("White correlation: " + rWhite + "\nBlack Correlation: " + rBlack);
-        System.out.println(ChessOpeningsAnalysis.fisherTransformation(rWhite, rBlack));
+        System.out.print(new Analyses(new AnalysisScheduler()).questionTwo.get());
     }
 
     /**
@@ -87,37 +92,7 @@ public class ChessOpeningTester {
      * and its success rate. Uses correlation analysis and Fisher transformation to compare colors
      */
     public static void questionThree() throws FileNotFoundException{
-        ArrayList<ArrayList<Double>> numGamesArr = new ArrayList<>();
-        ArrayList<ArrayList<ChessOpening>> splitByColor = ChessOpeningsAnalysis.splitByColor();
-        ArrayList<ArrayList<Double>> winRates = new ArrayList<>();
-
-        // Initialize arrays for storing data
-        numGamesArr.add(new ArrayList<>());  // Number of games for white
-        numGamesArr.add(new ArrayList<>());  // Number of games for black
-
-        winRates.add(new ArrayList<>());  // Win rates for white
-        winRates.add(new ArrayList<>());  // Win rates for black
-
-        // Extract win rates for both colors
-        for (int i = 0; i < splitByColor.size(); i++){
-            for (int j = 0; j < splitByColor.get(i).size(); j++){
-                winRates.get(i).add(splitByColor.get(i).get(j).getPlayerWinPercent());
-            }
-        }
-
-        // Extract number of games played for both colors
-        for (int i = 0; i < splitByColor.size(); i++){
-            for (int j = 0; j < splitByColor.get(i).size(); j++){
-                numGamesArr.get(i).add((double)splitByColor.get(i).get(j).getNumGames());
-            }
-        }
-
-        // Calculate correlation between popularity and win rates
-        double wPopulationWinCorrelation = ChessOpeningsAnalysis.findCorrelationCoeff(numGamesArr.get(0), winRates.get(0));
-        double bPopulationWinCorrelation = ChessOpeningsAnalysis.findCorrelationCoeff(numGamesArr.get(1), winRates.get(1));
-
-        System.out.println ("White correlation: " + wPopulationWinCorrelation + "\nBlack Correlation: " + bPopulationWinCorrelation);        
-        System.out.println(ChessOpeningsAnalysis.fisherTransformation(wPopulationWinCorrelation, bPopulationWinCorrelation));
+        System.out.print(new Analyses(new AnalysisScheduler()).questionThree.get());
     }
 
     /**
@@ -125,134 +100,207 @@ public class ChessOpeningTester {
      * Uses statistical analysis to compare opening frequencies between top players and overall population
      */
     public static void questionFour() throws FileNotFoundException{
-        ArrayList<ArrayList<ChessOpening>> splitByColor = ChessOpeningsAnalysis.splitByColor();
-
-        // Calculate frequency distributions for all players
-        double[] wOverallFreq = ChessOpeningsAnalysis.findOpeningFreq(splitByColor.get(0));
-        double[] bOverallFreq = ChessOpeningsAnalysis.findOpeningFreq(splitByColor.get(1));
-
-        // Calculate frequency distributions for top 25% rated players
-        double[] wTopFreq = ChessOpeningsAnalysis.findOpeningFreq(ChessOpeningsAnalysis.findTop25Ratings(splitByColor.get(0)));
-        double[] bTopFreq = ChessOpeningsAnalysis.findOpeningFreq(ChessOpeningsAnalysis.findTop25Ratings(splitByColor.get(1)));
-
-        // Convert frequencies to z-scores for comparison
-        // White overall population z-scores
-        double[] wOverallZ = new double[500];
-        for (int i = 0; i < wOverallFreq.length; i++){
-            if (wOverallFreq[i] != 0) {
-                wOverallZ[i] = (ChessOpeningsAnalysis.convertToZ(wOverallFreq[i], ChessOpeningsAnalysis.findMean(wOverallFreq), ChessOpeningsAnalysis.findSD(wOverallFreq)));
-            } else {
-                wOverallZ[i] = 0;
+        System.out.print(new Analyses(new AnalysisScheduler()).questionFour.get());
+    }
+
+    /**
+     * @param sufficientWinRates Result of findSufficientWinRates
+     * @return Printed answer to question 1
+     */
+    static String answerOne(ArrayList<ArrayList<ChessOpening>> sufficientWinRates) {
+        try (OpeningsMetrics.Span span = OpeningsMetrics.start(OpeningsMetrics.Stage.QUESTION, "ChessOpeningTester.questionOne")) {
+            StringBuilder out = new StringBuilder();
+
+            // Create lists to store just the opening names for easier output
+            ArrayList<ArrayList<String>> sufficientWinRatesNames = new ArrayList<>();
+            sufficientWinRatesNames.add(new ArrayList<>());  // White openings
+            sufficientWinRatesNames.add(new ArrayList<>());  // Black openings
+
+            // Extract opening names from the ChessOpening objects
+            for (int i = 0; i < sufficientWinRates.size(); i++) {
+                for (int j = 0; j < sufficientWinRates.get(i).size(); j++) {
+                    sufficientWinRatesNames.get(i).add(sufficientWinRates.get(i).get(j).getOpening());
+                }
             }
+            span.rows(sufficientWinRatesNames.get(0).size() + sufficientWinRatesNames.get(1).size());
+
+            // Output the results
+            println(out, "For white, the openings with sufficient win rates are: " + sufficientWinRatesNames.get(0));
+            println(out, "Number of 'good' white openings: " + sufficientWinRatesNames.get(0).size());
+            println(out, "For black, the openings with sufficient win rates are: " + sufficientWinRatesNames.get(1));
+            println(out, "Number of 'good' black openings: " + sufficientWinRatesNames.get(1).size());
+
+            return out.toString();
         }
-        
-        // Black overall population z-scores
-        double[] bOverallZ = new double[500];
-        for (int i = 0; i < bOverallFreq.length; i++){
-            if (bOverallFreq[i] != 0) {          
-                bOverallZ[i] = (ChessOpeningsAnalysis.convertToZ(bOverallFreq[i], ChessOpeningsAnalysis.findMean(bOverallFreq), ChessOpeningsAnalysis.findSD(bOverallFreq)));
-            } else {
-                bOverallZ[i] = 0;
-            }
+    }
+
+    /**
+     * @param cube Aggregation cube of the openings
+     * @param sufficientWinRates Result of findSufficientWinRates, the sample of the Fisher test
+     * @return Printed answer to question 2
+     */
+    static String answerTwo(OpeningsCube cube, ArrayList<ArrayList<ChessOpening>> sufficientWinRates) {
+        try (OpeningsMetrics.Span span = OpeningsMetrics.start(OpeningsMetrics.Stage.QUESTION, "ChessOpeningTester.questionTwo")) {
+            StringBuilder out = new StringBuilder();
+
+            // Calculate correlation coefficients between development level and win rates
+            OpeningsCube.Aggregate white = cube.slice().color(OpeningsTable.WHITE).aggregate();
+            OpeningsCube.Aggregate black = cube.slice().color(OpeningsTable.BLACK).aggregate();
+            double rWhite = white.correlation(OpeningsColumns.Measure.MOVE_COUNT, OpeningsColumns.Measure.WIN_PERCENT);
+            double rBlack = black.correlation(OpeningsColumns.Measure.MOVE_COUNT, OpeningsColumns.Measure.WIN_PERCENT);
+            span.rows(white.getCount() + black.getCount());
+
+            println(out, "White correlation: " + rWhite + "\nBlack Correlation: " + rBlack);
+            println(out, ChessOpeningsAnalysis.fisherTransformation(rWhite, rBlack, sufficientWinRates));
+            return out.toString();
         }
+    }
 
-        // White top players z-scores
-        double[] wTopZ = new double[500];
-        for (int i = 0; i < wTopFreq.length; i++){
-            if (wTopFreq[i] != 0){
-                wTopZ[i] = (ChessOpeningsAnalysis.convertToZ(wTopFreq[i], ChessOpeningsAnalysis.findMean(wTopFreq), ChessOpeningsAnalysis.findSD(wTopFreq)));
-            } else {
-                wTopZ[i] = 0;
-            }
+    /**
+     * @param cube Aggregation cube of the openings
+     * @param sufficientWinRates Result of findSufficientWinRates, the sample of the Fisher test
+     * @return Printed answer to question 3
+     */
+    static String answerThree(OpeningsCube cube, ArrayList<ArrayList<ChessOpening>> sufficientWinRates) {
+        try (OpeningsMetrics.Span span = OpeningsMetrics.start(OpeningsMetrics.Stage.QUESTION, "ChessOpeningTester.questionThree")) {
+            StringBuilder out = new StringBuilder();
+
+            // Calculate correlation between popularity and win rates
+            OpeningsCube.Aggregate white = cube.slice().color(OpeningsTable.WHITE).aggregate();
+            OpeningsCube.Aggregate black = cube.slice().color(OpeningsTable.BLACK).aggregate();
+            double wPopulationWinCorrelation = white.correlation(OpeningsColumns.Measure.NUM_GAMES, OpeningsColumns.Measure.WIN_PERCENT);
+            double bPopulationWinCorrelation = black.correlation(OpeningsColumns.Measure.NUM_GAMES, OpeningsColumns.Measure.WIN_PERCENT);
+            span.rows(white.getCount() + black.getCount());
+
+            println(out, "White correlation: " + wPopulationWinCorrelation + "\nBlack Correlation: " + bPopulationWinCorrelation);
+            println(out, ChessOpeningsAnalysis.fisherTransformation(wPopulationWinCorrelation, bPopulationWinCorrelation, sufficientWinRates));
+            return out.toString();
         }
+    }
 
-        // Black top players z-scores
-        double[] bTopZ = new double[500];
-        for (int i = 0; i < bTopFreq.length; i++){
-            if (bTopFreq[i] != 0){
-                bTopZ[i] = (ChessOpeningsAnalysis.convertToZ((double)bTopFreq[i], ChessOpeningsAnalysis.findMean(wTopFreq), ChessOpeningsAnalysis.findSD(bTopFreq)));
-            } else {
-                bTopZ[i] = 0;
+    /**
+     * @param wOverallFreq ECO frequencies of all white openings
+     * @param bOverallFreq ECO frequencies of all black openings
+     * @param wTopFreq ECO frequencies of the white openings of the top 25% rated players
+     * @param bTopFreq ECO frequencies of the black openings of the top 25% rated players
+     * @return Printed answer to question 4
+     */
+    static String answerFour(double[] wOverallFreq, double[] bOverallFreq, double[] wTopFreq, double[] bTopFreq) {
+        try (OpeningsMetrics.Span span = OpeningsMetrics.start(OpeningsMetrics.Stage.QUESTION, "ChessOpeningTester.questionFour")) {
+            StringBuilder out = new StringBuilder();
+
+            // Convert frequencies to z-scores for comparison; the mean and SD of each
+            // distribution are computed once rather than once per ECO slot
+            double[] wOverallZ = zScores(wOverallFreq, ChessOpeningsAnalysis.findMean(wOverallFreq), ChessOpeningsAnalysis.findSD(wOverallFreq));
+            double[] bOverallZ = zScores(bOverallFreq, ChessOpeningsAnalysis.findMean(bOverallFreq), ChessOpeningsAnalysis.findSD(bOverallFreq));
+            double[] wTopZ = zScores(wTopFreq, ChessOpeningsAnalysis.findMean(wTopFreq), ChessOpeningsAnalysis.findSD(wTopFreq));
+            // Black top players are standardized with the white top players' mean, as in the published results
+            double[] bTopZ = zScores(bTopFreq, ChessOpeningsAnalysis.findMean(wTopFreq), ChessOpeningsAnalysis.findSD(bTopFreq));
+
+            // Identify openings where top players' usage is higher than overall population
+            ArrayList<Integer> wToTest = new ArrayList<>();
+            for (int i = 0; i < 500; i++){
+                if (wOverallZ[i] < wTopZ[i]) {
+                    wToTest.add(i);
+                }
             }
-        }
 
-        // Identify openings where top players' usage is higher than overall population
-        ArrayList<Integer> wToTest = new ArrayList<>();
-        for (int i = 0; i < 500; i++){
-            if (wOverallZ[i] < wTopZ[i]) {
-                wToTest.add(i);
+            ArrayList<Integer> bToTest = new ArrayList<>();
+            for (int i = 0; i < 500; i++){
+                if (bOverallZ[i] < bTopZ[i]) {
+                    bToTest.add(i);
+                }
             }
-        }
 
-        ArrayList<Integer> bToTest = new ArrayList<>();
-        for (int i = 0; i < 500; i++){
-            if (bOverallZ[i] < bTopZ[i]) {
-                bToTest.add(i);
+            // Perform hypothesis testing (α = .05) to identify statistically significant differences
+            span.rows(wToTest.size() + bToTest.size());
+            ArrayList<Integer> wEcoIndices = new ArrayList<>();
+            ArrayList<Integer> bEcoIndices = new ArrayList<>();
+
+            // Test white openings
+            for (int i = 0; i < wToTest.size(); i++){
+                int index = wToTest.get(i);
+                double wZDiff = wTopZ[index] - wOverallZ[index];
+                double p = 1 - ChessOpeningsAnalysis.normalcdf(wZDiff);
+                if (p < .05) {
+                    wEcoIndices.add(index);
+                }
             }
-        }
 
-        // Perform hypothesis testing (α = .05) to identify statistically significant differences
-        ArrayList<Integer> wEcoIndices = new ArrayList<>();
-        ArrayList<Integer> bEcoIndices = new ArrayList<>();
-
-        // Test white openings
-        for (int i = 0; i < wToTest.size(); i++){
-            int index = wToTest.get(i);
-            double wZDiff = wTopZ[index] - wOverallZ[index];
-            double p = 1 - ChessOpeningsAnalysis.normalcdf(wZDiff);
-            if (p < .05) {
-                wEcoIndices.add(index);
+            // Test black openings
+            for (int i = 0; i < bToTest.size(); i++){
+                int index = bToTest.get(i);
+                double bZDiff = bTopZ[index] - bOverallZ[index];
+                double p = 1 - ChessOpeningsAnalysis.normalcdf(bZDiff);
+                if (p < .05) {
+                    bEcoIndices.add(index);
+                }
             }
-        }
 
-        // Test black openings
-        for (int i = 0; i < bToTest.size(); i++){
-            int index = bToTest.get(i);
-            double bZDiff = bTopZ[index] - bOverallZ[index];
-            double p = 1 - ChessOpeningsAnalysis.normalcdf(bZDiff);
-            if (p < .05) {
-                bEcoIndices.add(index);
+            //println(out, "Number of white values to test:" + wToTest.size());
+            //println(out, "Number of black values to test:" + bToTest.size());
+
+            // Convert significant indices to ECO codes
+            ArrayList<String> wHigherEcos = new ArrayList<>();
+            ArrayList<String> bHigherEcos = new ArrayList<>();
+
+            for (int i = 0; i < wEcoIndices.size(); i++){
+                wHigherEcos.add(ChessOpeningsAnalysis.getEcoCode(wEcoIndices.get(i)));
             }
-        }
-        
-        //System.out.println ("Number of white values to test:" + wToTest.size());
-        //System.out.println ("Number of black values to test:" + bToTest.size());
 
-        // Convert significant indices to ECO codes
-        ArrayList<String> wHigherEcos = new ArrayList<>();
-        ArrayList<String> bHigherEcos = new ArrayList<>();
+            for (int i = 0; i < bEcoIndices.size(); i++){
+                bHigherEcos.add(ChessOpeningsAnalysis.getEcoCode(bEcoIndices.get(i)));
+            }
 
-        for (int i = 0; i < wEcoIndices.size(); i++){
-            wHigherEcos.add(ChessOpeningsAnalysis.getEcoCode(wEcoIndices.get(i)));
+            println(out, "For white, the opening variations that higher players tend to use more often are " + wHigherEcos);
+            println(out, "For black, the opening variations that higher players tend to use more often are " + bHigherEcos);
+            return out.toString();
         }
+    }
 
-        for (int i = 0; i < bEcoIndices.size(); i++){
-            bHigherEcos.add(ChessOpeningsAnalysis.getEcoCode(bEcoIndices.get(i)));
+    /**
+     * Converts the non-zero frequencies of a distribution to z-scores; empty ECO slots stay 0
+     */
+    private static double[] zScores(double[] freq, double mean, double SD) {
+        double[] z = new double[500];
+        for (int i = 0; i < freq.length; i++){
+            if (freq[i] != 0) {
+                z[i] = ChessOpeningsAnalysis.convertToZ(freq[i], mean, SD);
+            }
         }
+        return z;
+    }
 
-        System.out.println("For white, the opening variations that higher players tend to use more often are " + wHigherEcos);
-        System.out.println("For black, the opening variations that higher players tend to use more often are " + bHigherEcos);
-    }   
+    private static void println(StringBuilder out, String line) {
+        out.append(line).append(System.lineSeparator());
+    }
 
     /**
-     * Main method that runs all four analysis questions
+     * Main method that runs all four analysis questions.
+     * The questions are computed concurrently and printed in order.
      */
     public static void main(String[] args) throws FileNotFoundException{
+        Analyses analyses = new Analyses(new AnalysisScheduler());
+        analyses.questionOne.start();
+        analyses.questionTwo.start();
+        analyses.questionThree.start();
+        analyses.questionFour.start();
+
         System.out.println ("QUESTION ONE: Which openings by their ECO codes are considered \"good\"? For white (who has first-move advantage), a win rate above 50% is considered\n" + //
                 "    high, and 45% for black. ");
-        questionOne();
+        System.out.print(analyses.questionOne.get());
 
         System.out.println (" ");
         System.out.println ("QUESTION TWO: Do more developed openings correlate to higher win percentages? Does this differ significantly between white and black? Whether or not \n" + //
                 "    an opening is \"developed\" is dependent on its number of moves. ");
-        questionTwo();
+        System.out.print(analyses.questionTwo.get());
 
         System.out.println (" ");
         System.out.println ("QUESTION THREE: Is there a correlation between an opening's popularity (number of games played) and its success rate?");
-        questionThree();
+        System.out.print(analyses.questionThree.get());
 
         System.out.println (" ");
         System.out.println ("QUESTION FOUR: Are there specific groups of openings (same ECO code) most commonly used by higher-rated players (top 25%)? If so, what are they?");
-        questionFour();
+        System.out.print(analyses.questionFour.get());
     }
-}
\ No newline at end of file
+}
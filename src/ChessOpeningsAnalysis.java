@@ -1,7 +1,8 @@
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.BitSet;
+import java.util.List;
 
 /**
  * A utility class for analyzing chess openings data.
@@ -9,38 +10,52 @@ import java.util.Scanner;
  * player preferences, and correlations between various metrics.
  */
 public class ChessOpeningsAnalysis {
+    // Looked up once so the spans of these often-called methods skip the timer lookup
+    private static final OpeningsMetrics.Operation GET_OPENINGS_ARRAY = OpeningsMetrics.operation(OpeningsMetrics.Stage.LOAD, "ChessOpeningsAnalysis.getOpeningsArray");
+    private static final OpeningsMetrics.Operation GET_OPENINGS_ARRAY_PARALLEL = OpeningsMetrics.operation(OpeningsMetrics.Stage.LOAD, "ChessOpeningsAnalysis.getOpeningsArrayParallel");
+    private static final OpeningsMetrics.Operation FIND_SUFFICIENT_WIN_RATES = OpeningsMetrics.operation(OpeningsMetrics.Stage.FILTER, "ChessOpeningsAnalysis.findSufficientWinRates");
+    private static final OpeningsMetrics.Operation SPLIT_BY_COLOR = OpeningsMetrics.operation(OpeningsMetrics.Stage.FILTER, "ChessOpeningsAnalysis.splitByColor");
+    private static final OpeningsMetrics.Operation FIND_CORRELATION_COEFF = OpeningsMetrics.operation(OpeningsMetrics.Stage.STATISTICS, "ChessOpeningsAnalysis.findCorrelationCoeff");
+    private static final OpeningsMetrics.Operation GET_DEVELOPMENT_LEVEL = OpeningsMetrics.operation(OpeningsMetrics.Stage.AGGREGATION, "ChessOpeningsAnalysis.getDevelopmentLevel");
+    private static final OpeningsMetrics.Operation FISHER_TRANSFORMATION = OpeningsMetrics.operation(OpeningsMetrics.Stage.STATISTICS, "ChessOpeningsAnalysis.fisherTransformation");
+    private static final OpeningsMetrics.Operation COUNT_ECO = OpeningsMetrics.operation(OpeningsMetrics.Stage.AGGREGATION, "ChessOpeningsAnalysis.countEco");
+    private static final OpeningsMetrics.Operation FIND_OPENING_FREQ = OpeningsMetrics.operation(OpeningsMetrics.Stage.AGGREGATION, "ChessOpeningsAnalysis.findOpeningFreq");
+    private static final OpeningsMetrics.Operation FIND_MEAN = OpeningsMetrics.operation(OpeningsMetrics.Stage.STATISTICS, "ChessOpeningsAnalysis.findMean");
+    private static final OpeningsMetrics.Operation FIND_SD = OpeningsMetrics.operation(OpeningsMetrics.Stage.STATISTICS, "ChessOpeningsAnalysis.findSD");
+    private static final OpeningsMetrics.Operation FIND_TOP25_RATINGS = OpeningsMetrics.operation(OpeningsMetrics.Stage.FILTER, "ChessOpeningsAnalysis.findTop25Ratings");
+
     /**
-     * Reads chess openings data from a CSV file and creates ChessOpening objects.
+     * Returns the chess openings read from the CSV file.
      * Filters out invalid openings (those with dashes in ECO codes).
+     * The file is parsed once and shared through {@link OpeningsDataset}; each call
+     * returns a fresh list so callers may modify it without affecting other analyses.
      * 
      * @return ArrayList of valid ChessOpening objects
      * @throws FileNotFoundException if the openings.csv file is not found
      */
     public static ArrayList<ChessOpening> getOpeningsArray() throws FileNotFoundException {
-        ArrayList<ChessOpening> openingsArray = new ArrayList<>();
-        
-        try (Scanner fileScanner = new Scanner(new File("/Users/dvizcarra/Documents/GitHub/Chess Openings/openings.csv"))) {
-            // Skip the header line
-            if (fileScanner.hasNextLine()) {
-                fileScanner.nextLine();
-            }
+        try (OpeningsMetrics.Span span = GET_OPENINGS_ARRAY.start()) {
+            ArrayList<ChessOpening> openings = new ArrayList<>(OpeningsDataset.get().getOpenings());
+            span.rows(openings.size());
+            return openings;
+        }
+    }
 
-            // Read each openings line and create ChessOpening objects
-            while (fileScanner.hasNextLine()) {
-                String line = fileScanner.nextLine();
-                try (Scanner lineScanner = new Scanner(line)) {
-                    ChessOpening opening = new ChessOpening(lineScanner);
-                    
-                    // Filter out openings with invalid ECO codes (containing dashes)
-                    if (opening.getEco() != null && opening.getEco().contains("-")) {
-                        continue;
-                    }
-                    
-                    openingsArray.add(opening);
-                }
-            }
+    /**
+     * Reads chess openings data from a CSV export of any size, memory-mapping the file
+     * and parsing newline-aligned chunks of it on all available cores.
+     * Filters out invalid openings (those with dashes in ECO codes).
+     * 
+     * @param path location of an openings.csv-style file
+     * @return ArrayList of valid ChessOpening objects, in file order
+     * @throws FileNotFoundException if the file is not found
+     */
+    public static ArrayList<ChessOpening> getOpeningsArrayParallel(String path) throws FileNotFoundException {
+        try (OpeningsMetrics.Span span = GET_OPENINGS_ARRAY_PARALLEL.start()) {
+            ArrayList<ChessOpening> openings = ParallelOpeningsLoader.load(new File(path));
+            span.rows(openings.size());
+            return openings;
         }
-        return openingsArray;
     }
 
     /**
@@ -53,30 +68,46 @@ public class ChessOpeningsAnalysis {
      * @throws FileNotFoundException if the openings file cannot be read
      */
     public static ArrayList<ArrayList<ChessOpening>> findSufficientWinRates() throws FileNotFoundException {
-        ArrayList<ChessOpening> openingsArray = getOpeningsArray();
-        ArrayList<ArrayList<ChessOpening>> sufficientWinRates = new ArrayList<>();
-        ArrayList<ChessOpening> sufficientWinRatesWhite = new ArrayList<>();
-        ArrayList<ChessOpening> sufficientWinRatesBlack = new ArrayList<>();
-    
-        // Categorize openings based on color and win rate thresholds
-        for (int i = 0; i < openingsArray.size(); i++) {
-            ChessOpening opening = openingsArray.get(i);
-            
-            if (opening.getColor().equals("white")) {
-                if (opening.getPlayerWinPercent() >= 52.0) {
-                    sufficientWinRatesWhite.add(opening);
-                }
-            } else if (opening.getColor().equals("black")) {
-                if (opening.getPlayerWinPercent() >= 45.0) {
-                    sufficientWinRatesBlack.add(opening);
-                }
-            }
+        return findSufficientWinRates(OpeningsDataset.get());
+    }
+
+    /**
+     * Identifies openings with sufficient win rates in a given dataset snapshot,
+     * so that a cached result is tied to the version it was computed from
+     * 
+     * @param dataset Loaded openings dataset
+     * @return ArrayList containing two lists: successful white openings and successful black openings
+     */
+    static ArrayList<ArrayList<ChessOpening>> findSufficientWinRates(OpeningsDataset dataset) {
+        try (OpeningsMetrics.Span span = FIND_SUFFICIENT_WIN_RATES.start()) {
+            ArrayList<ArrayList<ChessOpening>> sufficientWinRates = new ArrayList<>();
+
+            // Categorize openings based on color and win rate thresholds
+            OpeningsFilter white = OpeningsFilter.and(OpeningsFilter.color(OpeningsTable.WHITE), OpeningsFilter.winPercentAtLeast(52.0));
+            OpeningsFilter black = OpeningsFilter.and(OpeningsFilter.color(OpeningsTable.BLACK), OpeningsFilter.winPercentAtLeast(45.0));
+
+            sufficientWinRates.add(toOpenings(dataset, white));
+            sufficientWinRates.add(toOpenings(dataset, black));
+            span.rows(dataset.size());
+
+            return sufficientWinRates;
         }
-        
-        sufficientWinRates.add(sufficientWinRatesWhite);
-        sufficientWinRates.add(sufficientWinRatesBlack);
-    
-        return sufficientWinRates;
+    }
+
+    /**
+     * Collects the dataset's openings matched by a filter over its table
+     * 
+     * @param dataset Loaded openings dataset
+     * @param filter Condition on the dataset's table
+     * @return Matching openings in file order
+     */
+    private static ArrayList<ChessOpening> toOpenings(OpeningsDataset dataset, OpeningsFilter filter) {
+        List<ChessOpening> openingsArray = dataset.getOpenings();
+        ArrayList<ChessOpening> matches = new ArrayList<>();
+        for (int row : filter.rows(dataset.getTable())) {
+            matches.add(openingsArray.get(row));
+        }
+        return matches;
     }
 
     /**
@@ -86,26 +117,30 @@ public class ChessOpeningsAnalysis {
      * @throws FileNotFoundException if the openings file cannot be read
      */
     public static ArrayList<ArrayList<ChessOpening>> splitByColor() throws FileNotFoundException {
-        ArrayList<ChessOpening> openingsArray = getOpeningsArray();
-        ArrayList<ArrayList<ChessOpening>> splitColorArr = new ArrayList<>();
+        try (OpeningsMetrics.Span span = SPLIT_BY_COLOR.start()) {
+            List<ChessOpening> openingsArray = OpeningsDataset.get().getOpenings();
+            ArrayList<ArrayList<ChessOpening>> splitColorArr = new ArrayList<>();
     
-        splitColorArr.add(new ArrayList<>());  // White openings
-        splitColorArr.add(new ArrayList<>());  // Black openings
+            splitColorArr.add(new ArrayList<>());  // White openings
+            splitColorArr.add(new ArrayList<>());  // Black openings
     
-        for (int i = 0; i < openingsArray.size(); i++) {
-            if (openingsArray.get(i).getColor().equals("white")) {
-                splitColorArr.get(0).add(openingsArray.get(i));
-            } else if (openingsArray.get(i).getColor().equals("black")) {
-                splitColorArr.get(1).add(openingsArray.get(i));
+            for (int i = 0; i < openingsArray.size(); i++) {
+                if (openingsArray.get(i).getColor().equals("white")) {
+                    splitColorArr.get(0).add(openingsArray.get(i));
+                } else if (openingsArray.get(i).getColor().equals("black")) {
+                    splitColorArr.get(1).add(openingsArray.get(i));
+                }
             }
-        }
+            span.rows(openingsArray.size());
     
-        return splitColorArr;
+            return splitColorArr;
+        }
     }
 
     /**
      * Calculates the Pearson correlation coefficient between two sets of data
-     * Uses the formula: r = Σ((x - x̄)(y - ȳ)) / √(Σ(x - x̄)² * Σ(y - ȳ)²)
+     * Uses the formula: r = Σ((x - x̄)(y - ȳ)) / √(Σ(x - x̄)² * Σ(y - ȳ)²),
+     * accumulated in a single pass by {@link CovarianceAccumulator}
      * Source: https://en.wikipedia.org/wiki/Pearson_correlation_coefficient
      * 
      * @param set1 First dataset
@@ -113,36 +148,84 @@ public class ChessOpeningsAnalysis {
      * @return correlation coefficient between -1 and 1
      */
     public static double findCorrelationCoeff(ArrayList<Double> set1, ArrayList<Double> set2) throws FileNotFoundException{
-        // Calculate means
-        double set1Sum = 0;
-        double set2Sum = 0;
- 
-        for (int i = 0; i < set1.size(); i++){
-             set1Sum += set1.get(i);
-             set2Sum += set2.get(i);
+        try (OpeningsMetrics.Span span = FIND_CORRELATION_COEFF.start()) {
+            CovarianceAccumulator accumulator = new CovarianceAccumulator();
+            for (int i = 0; i < set1.size(); i++){
+                accumulator.accept(set1.get(i), set2.get(i));
+            }
+            span.rows(set1.size());
+            return accumulator.correlation();
         }
- 
-        double set1Avg = set1Sum/set1.size();
-        double set2Avg = set2Sum/set2.size();
- 
-        // Calculate correlation numerator: Σ((x - x̄)(y - ȳ))
-        double numeratorSum = 0;
-        for (int i = 0; i < set1.size(); i++){
-             numeratorSum += (set1.get(i) - set1Avg)*(set2.get(i) - set2Avg);
+    }
+
+    /**
+     * Calculates the Pearson correlation coefficient between two primitive columns,
+     * such as those of an {@link OpeningsTable}, without boxing
+     * 
+     * @param set1 First dataset
+     * @param set2 Second dataset, of the same length
+     * @return correlation coefficient between -1 and 1
+     */
+    public static double findCorrelationCoeff(double[] set1, double[] set2) {
+        try (OpeningsMetrics.Span span = FIND_CORRELATION_COEFF.start()) {
+            CovarianceAccumulator accumulator = new CovarianceAccumulator();
+            accumulator.acceptAll(set1, set2);
+            span.rows(set1.length);
+            return accumulator.correlation();
         }
- 
-        // Calculate correlation denominator: √(Σ(x - x̄)² * Σ(y - ȳ)²)
-        double denominatorXSum = 0;
-        double denominatorYSum = 0;
-        for (int i = 0; i < set1.size(); i++){
-             denominatorXSum += Math.pow((set1.get(i) - set1Avg), 2);
-             denominatorYSum += Math.pow((set2.get(i) - set2Avg), 2);
+    }
+
+    /**
+     * @see #findCorrelationCoeff(double[], double[])
+     */
+    public static double findCorrelationCoeff(int[] set1, double[] set2) {
+        try (OpeningsMetrics.Span span = FIND_CORRELATION_COEFF.start()) {
+            CovarianceAccumulator accumulator = new CovarianceAccumulator();
+            for (int i = 0; i < set1.length; i++){
+                accumulator.accept(set1[i], set2[i]);
+            }
+            span.rows(set1.length);
+            return accumulator.correlation();
+        }
+    }
+
+    /**
+     * @see #findCorrelationCoeff(double[], double[])
+     */
+    public static double findCorrelationCoeff(short[] set1, double[] set2) {
+        try (OpeningsMetrics.Span span = FIND_CORRELATION_COEFF.start()) {
+            CovarianceAccumulator accumulator = new CovarianceAccumulator();
+            for (int i = 0; i < set1.length; i++){
+                accumulator.accept(set1[i], set2[i]);
+            }
+            span.rows(set1.length);
+            return accumulator.correlation();
+        }
+    }
+
+    /**
+     * Calculates the Pearson correlation coefficient between two columns over the rows of one color,
+     * reading the rows in place so it also runs against off-heap tables
+     * 
+     * @param table Openings of any storage
+     * @param color OpeningsTable.WHITE or BLACK
+     * @param x First column
+     * @param y Second column
+     * @return correlation coefficient between -1 and 1
+     */
+    public static double findCorrelationCoeff(OpeningsColumns table, byte color, OpeningsColumns.Measure x, OpeningsColumns.Measure y) {
+        try (OpeningsMetrics.Span span = FIND_CORRELATION_COEFF.start()) {
+            CovarianceAccumulator accumulator = new CovarianceAccumulator();
+            int size = table.size();
+            for (int row = 0; row < size; row++){
+                if (table.color(row) == color) {
+                    accumulator.accept(table.value(x, row), table.value(y, row));
+                }
+            }
+            span.rows(size);
+            return accumulator.correlation();
         }
- 
-        double denominator = Math.sqrt(denominatorXSum*denominatorYSum);
- 
-        return numeratorSum/denominator; 
-     }
+    }
 
     /**
      * Creates lists of development levels (number of moves) for white and black openings
@@ -151,18 +234,23 @@ public class ChessOpeningsAnalysis {
      * @return ArrayList containing two lists of development levels
      */
      public static ArrayList<ArrayList<Double>> getDevelopmentLevel(ArrayList<ArrayList<ChessOpening>> chessOpenings){
-        ArrayList<ArrayList<Double>> developmentLvlArr = new ArrayList<>();
+        try (OpeningsMetrics.Span span = GET_DEVELOPMENT_LEVEL.start()) {
+            ArrayList<ArrayList<Double>> developmentLvlArr = new ArrayList<>();
 
-        developmentLvlArr.add(new ArrayList<>());  // White development levels
-        developmentLvlArr.add(new ArrayList<>());  // Black development levels
+            developmentLvlArr.add(new ArrayList<>());  // White development levels
+            developmentLvlArr.add(new ArrayList<>());  // Black development levels
 
-        for (int i = 0; i < chessOpenings.size(); i++){
-            for (int j = 0; j < chessOpenings.get(i).size(); j++){
-                developmentLvlArr.get(i).add((double)(chessOpenings.get(i).get(j).getMovesList().length));
+            long rows = 0;
+            for (int i = 0; i < chessOpenings.size(); i++){
+                for (int j = 0; j < chessOpenings.get(i).size(); j++){
+                    developmentLvlArr.get(i).add((double)(chessOpenings.get(i).get(j).getMoveCount()));
+                }
+                rows += chessOpenings.get(i).size();
             }
-        }
+            span.rows(rows);
 
-        return developmentLvlArr;
+            return developmentLvlArr;
+        }
     }
 
     /**
@@ -175,7 +263,27 @@ public class ChessOpeningsAnalysis {
      * @return String interpretation of the statistical test
      */
     public static String fisherTransformation(double coeff1, double coeff2) throws FileNotFoundException{
-        ArrayList<ArrayList<ChessOpening>> sample = findSufficientWinRates();
+        try (OpeningsMetrics.Span span = FISHER_TRANSFORMATION.start()) {
+            return fisherTest(coeff1, coeff2, findSufficientWinRates(), span);
+        }
+    }
+
+    /**
+     * Performs the Fisher transformation test with an already computed sample,
+     * so callers that share the result of findSufficientWinRates do not recompute it
+     * 
+     * @param coeff1 First correlation coefficient
+     * @param coeff2 Second correlation coefficient
+     * @param sample Result of findSufficientWinRates
+     * @return String interpretation of the statistical test
+     */
+    public static String fisherTransformation(double coeff1, double coeff2, ArrayList<ArrayList<ChessOpening>> sample){
+        try (OpeningsMetrics.Span span = FISHER_TRANSFORMATION.start()) {
+            return fisherTest(coeff1, coeff2, sample, span);
+        }
+    }
+
+    private static String fisherTest(double coeff1, double coeff2, ArrayList<ArrayList<ChessOpening>> sample, OpeningsMetrics.Span span){
         String interpretation = "";
 
         // Calculate total sample size
@@ -190,6 +298,8 @@ public class ChessOpeningsAnalysis {
         double zWhite = Math.atan(coeff1);
         double zBlack = Math.atan(coeff1);
 
+        span.rows((long) size);
+
         // Calculate standard error: 1/√(N-3)
         double standardErr = 1/(Math.sqrt(size-3));
         
@@ -207,24 +317,103 @@ public class ChessOpeningsAnalysis {
     }
 
     /**
-     * Converts ECO codes to array indices and counts their frequency
+     * Converts ECO codes to array indices and counts their frequency in one pass over the list.
+     * Codes that are not a letter A-E followed by a number are not counted.
      * 
      * @param openingArray List of chess openings
      * @return Array of counts for each ECO code
      */
     public static int[] countEco (ArrayList<ChessOpening> openingArray){
+        try (OpeningsMetrics.Span span = COUNT_ECO.start()) {
+            span.rows(openingArray.size());
+            return ecoCounts(openingArray);
+        }
+    }
+
+    private static int[] ecoCounts (List<ChessOpening> openingArray){
         int[] ecoCounter = new int[500];
         for (int i = 0; i < openingArray.size(); i++){
-            String eco = openingArray.get(i).getEco();  
-            char letter = eco.charAt(0);               // Get the letter part (A-E)
-            int number = Integer.parseInt(eco.substring(1));  // Get the number part
-            int index = ((letter - 'A') * 100) + number;  // Convert to array index
-            ecoCounter[index]++;            
+            int slot = OpeningsTable.ecoSlot(openingArray.get(i).getEco());
+            if (slot >= 0) {
+                ecoCounter[slot]++;
+            }
         }
-        
         return ecoCounter;
     }
 
+    /**
+     * Counts the frequency of each ECO code, served from the table's {@link EcoIndex} if it has
+     * already been built (as for the dataset's cached table), and otherwise counted in one pass
+     * rather than building an index for a table that may only be counted once
+     * 
+     * @param table Table of chess openings
+     * @return Array of counts for each ECO code
+     */
+    public static int[] countEco (OpeningsTable table){
+        try (OpeningsMetrics.Span span = COUNT_ECO.start()) {
+            span.rows(table.size());
+            // Codes that are not a letter A-E followed by a number are not counted
+            EcoIndex index = table.builtEcoIndex();
+            if (index != null) {
+                return index.counts();
+            }
+            int[] ecoCounter = new int[500];
+            int size = table.size();
+            for (int row = 0; row < size; row++){
+                int slot = table.ecoSlot(row);
+                if (slot >= 0) {
+                    ecoCounter[slot]++;
+                }
+            }
+            return ecoCounter;
+        }
+    }
+
+    /**
+     * Counts the frequency of each ECO code among the rows of one color
+     * 
+     * @param table Openings of any storage
+     * @param color OpeningsTable.WHITE or BLACK
+     * @return Array of counts for each ECO code
+     */
+    public static int[] countEco (OpeningsColumns table, byte color){
+        try (OpeningsMetrics.Span span = COUNT_ECO.start()) {
+            int[] ecoCounter = new int[500];
+            int size = table.size();
+            for (int row = 0; row < size; row++){
+                int slot = table.ecoSlot(row);
+                if (table.color(row) == color && slot >= 0) {
+                    ecoCounter[slot]++;
+                }
+            }
+            span.rows(size);
+            return ecoCounter;
+        }
+    }
+
+    /**
+     * Counts the frequency of each ECO code among some rows, e.g. those from {@link #findTop25Ratings(OpeningsColumns, byte)}
+     * 
+     * @param table Openings of any storage
+     * @param rows Rows to count
+     * @return Array of counts for each ECO code
+     */
+    public static int[] countEco (OpeningsColumns table, BitSet rows){
+        try (OpeningsMetrics.Span span = COUNT_ECO.start()) {
+            int[] ecoCounter = new int[500];
+            long counted = 0;
+            for (int row = rows.nextSetBit(0); row >= 0 && row < table.size(); row = rows.nextSetBit(row + 1)){
+                int slot = table.ecoSlot(row);
+                if (slot >= 0) {
+                    ecoCounter[slot]++;
+                }
+                counted++;
+            }
+            span.rows(counted);
+            return ecoCounter;
+        }
+    }
+
     /**
      * Converts an array index back to ECO code format (e.g., "A00")
      * 
@@ -247,22 +436,41 @@ public class ChessOpeningsAnalysis {
     }
 
     /**
-     * Calculates the frequency of each opening in the dataset
+     * Calculates the frequency of each opening in the dataset, counting the codes in one pass over the list.
      * 
      * @param openingArray List of chess openings
      * @return Array of frequencies for each ECO code
      */
     public static double[] findOpeningFreq (ArrayList<ChessOpening> openingArray) throws FileNotFoundException{
-        int[] ecoCounter = countEco(openingArray);
+        try (OpeningsMetrics.Span span = FIND_OPENING_FREQ.start()) {
+            span.rows(openingArray.size());
+            return toFrequencies(ecoCounts(openingArray));
+        }
+    }   
+
+    /**
+     * Calculates the frequency of each opening in a table
+     * 
+     * @param table Table of chess openings
+     * @return Array of frequencies for each ECO code
+     */
+    public static double[] findOpeningFreq (OpeningsTable table){
+        try (OpeningsMetrics.Span span = FIND_OPENING_FREQ.start()) {
+            span.rows(table.size());
+            return toFrequencies(countEco(table));
+        }
+    }
+
+    private static double[] toFrequencies (int[] ecoCounter){
         double[] freqArray = new double[500];
-        
+
         // Convert counts to frequencies
         for (int i = 0; i < ecoCounter.length; i++){
             freqArray[i] = ((double)ecoCounter[i])/500.0;
         }
 
         return freqArray;
-    }   
+    }
 
     /**
      * Calculates the mean of non-zero values in the dataset
@@ -271,22 +479,10 @@ public class ChessOpeningsAnalysis {
      * @return Mean of non-zero values (Because ECO codes of frequency 0 means that code is not in the dataset)
      */
     public static double findMean (double[] data){
-        double sum = 0.0;
-        
-        // Count non-zero values
-        double n = 0.0;
-        for (int i = 0; i < data.length; i++){
-            if (data[i]!= 0){
-                n += 1.0;
-            }
+        try (OpeningsMetrics.Span span = FIND_MEAN.start()) {
+            span.rows(data.length);
+            return nonZeroStats(data).mean();
         }
-
-        // Calculate sum
-        for (int i = 0; i < data.length; i++){
-            sum += (double)(data[i]);
-        }
-
-        return sum/n;
     }
 
     /**
@@ -296,23 +492,32 @@ public class ChessOpeningsAnalysis {
      * @return Standard deviation of non-zero values
      */
     public static double findSD (double[] data){
-        double sum = 0.0;
-        double mean = findMean(data);
+        try (OpeningsMetrics.Span span = FIND_SD.start()) {
+            span.rows(data.length);
+            StatsAccumulator stats = nonZeroStats(data);
+            double mean = stats.mean();
+
+            // The zero slots also count toward the sum of squared differences, each adding (0 - mean)²,
+            // while only the non-zero values count toward n
+            double zeros = data.length - stats.count();
+            return Math.sqrt((stats.sumOfSquares() + zeros*mean*mean)/stats.count());
+        }
+    }
 
-        // Count non-zero values
-        double n = 0.0;
+    /**
+     * Accumulates the non-zero values of an array in a single pass
+     * 
+     * @param data Array of values
+     * @return Accumulator holding the count, mean and variance of the non-zero values
+     */
+    public static StatsAccumulator nonZeroStats (double[] data){
+        StatsAccumulator stats = new StatsAccumulator();
         for (int i = 0; i < data.length; i++){
-            if (data[i]!= 0){
-                n += 1.0;
+            if (data[i] != 0){
+                stats.accept(data[i]);
             }
         }
-
-        // Calculate sum of squared differences from mean
-        for (int i = 0; i < data.length; i++) {
-            sum += Math.pow(data[i]-mean,2);
-        }
-
-        return Math.sqrt(sum/n);
+        return stats;
     }
 
     /**
@@ -323,42 +528,104 @@ public class ChessOpeningsAnalysis {
     }
 
     /**
-     * Identifies the openings used by the top 25% of players by rating
+     * Identifies the openings used by the top 25% of players by rating.
+     * Uses a selection instead of a full sort; ties at the cutoff go to the earlier openings
      * 
      * @param openingsArray List of chess openings
-     * @return List of openings used by top-rated players
+     * @return List of openings used by top-rated players, in their original order
      */
     public static ArrayList<ChessOpening> findTop25Ratings (ArrayList<ChessOpening> openingsArray){
-        ArrayList<ChessOpening> openingsList = new ArrayList<>();
-        ArrayList<Integer> ratingsList = new ArrayList<>();
+        try (OpeningsMetrics.Span span = FIND_TOP25_RATINGS.start()) {
+            int[] ratings = new int[openingsArray.size()];
+            for (int i = 0; i < ratings.length; i++) {
+                ratings[i] = openingsArray.get(i).getAvgRating();
+            }
 
-        // Create parallel lists of openings and their ratings
-        for (ChessOpening opening : openingsArray) {
-            openingsList.add(opening);
-            ratingsList.add(opening.getAvgRating());
-        }
+            // Select the top 25% of openings by rating without sorting the whole list
+            int[] rows = Quantiles.topPercent(ratings, 25);
 
-        // Create list of indices for sorting
-        ArrayList<Integer> sortedIndexes = new ArrayList<>();
-        for (int i = 0; i < ratingsList.size(); i++) {
-            sortedIndexes.add(i);
-        }
+            ArrayList<ChessOpening> top25 = new ArrayList<>(rows.length);
+            for (int row : rows) {
+                top25.add(openingsArray.get(row));
+            }
+            span.rows(ratings.length);
 
-        // Sort indices based on ratings (descending order)
-        sortedIndexes.sort((i1, i2) -> Integer.compare(ratingsList.get(i2), ratingsList.get(i1))); // This line is not entirely coded by me-I found it online but cannot find where, sorry
+            return top25;
+        }
+    }
 
-        // Calculate cutoff for top 25%
-        int cutoffIndex = (int) Math.floor(0.25 * sortedIndexes.size());
+    /**
+     * Identifies the rows of a table used by the top 25% of players by rating.
+     * Uses the same selection as {@link #findTop25Ratings(ArrayList)}, so both return the same rows
+     * 
+     * @param table Table of chess openings
+     * @return Table of the openings used by top-rated players, in their original order
+     */
+    public static OpeningsTable findTop25Ratings (OpeningsTable table){
+        try (OpeningsMetrics.Span span = FIND_TOP25_RATINGS.start()) {
+            span.rows(table.size());
+            return table.select(Quantiles.topPercent(table.avgRating(), 25));
+        }
+    }
 
-        ArrayList<ChessOpening> top25 = new ArrayList<>();
+    /**
+     * Identifies the rows of one color used by the top 25% of that color's players by rating, selecting
+     * the same rows as {@link #findTop25Ratings(OpeningsTable)} on that color's table. The cutoff is found
+     * from a histogram of the ratings, so nothing proportional to the number of rows is copied to the heap
+     * except the result bitmap
+     * 
+     * @param table Openings of any storage
+     * @param color OpeningsTable.WHITE or BLACK
+     * @return Bitmap of the rows of openings used by top-rated players
+     */
+    public static BitSet findTop25Ratings (OpeningsColumns table, byte color){
+        try (OpeningsMetrics.Span span = FIND_TOP25_RATINGS.start()) {
+            int size = table.size();
+            int count = 0;
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int row = 0; row < size; row++){
+                if (table.color(row) == color) {
+                    int rating = table.avgRating(row);
+                    min = Math.min(min, rating);
+                    max = Math.max(max, rating);
+                    count++;
+                }
+            }
+            BitSet top = new BitSet(size);
+            int k = (int) Math.floor(25 / 100.0 * count);
+            if (k == 0) {
+                return top;
+            }
+            if ((long) max - min >= 1 << 24) {
+                throw new IllegalArgumentException("Ratings span too wide a range: " + min + " to " + max);
+            }
 
-        // Select top 25% of openings by rating
-        for (int i = 0; i < cutoffIndex; i++) {
-            int index = sortedIndexes.get(i);
-            top25.add(openingsList.get(index));
+            // Highest rating whose count, with all higher ratings, reaches k; ties at the cutoff go to the lowest rows
+            int[] histogram = new int[max - min + 1];
+            for (int row = 0; row < size; row++){
+                if (table.color(row) == color) {
+                    histogram[table.avgRating(row) - min]++;
+                }
+            }
+            int cutoff = histogram.length - 1;
+            int above = 0;
+            while (above + histogram[cutoff] < k) {
+                above += histogram[cutoff];
+                cutoff--;
+            }
+            int tiesLeft = k - above;
+            for (int row = 0; row < size; row++){
+                if (table.color(row) == color) {
+                    int rating = table.avgRating(row) - min;
+                    if (rating > cutoff || (rating == cutoff && tiesLeft-- > 0)) {
+                        top.set(row);
+                    }
+                }
+            }
+            span.rows(size);
+            return top;
         }
-
-        return top25;
     }
 
     /**
@@ -0,0 +1,102 @@
+/**
+ * Single-pass accumulator for the means, variances, covariance and Pearson correlation
+ * of a stream of (x, y) pairs, using the bivariate form of Welford's update.
+ * Source: https://en.wikipedia.org/wiki/Algorithms_for_calculating_variance#Covariance
+ *
+ * Accumulators built over separate partitions of the data (for example on different
+ * threads) can be combined with {@link #merge(CovarianceAccumulator)}.
+ * Instances are not thread-safe; use one per thread and merge them.
+ */
+public final class CovarianceAccumulator {
+    private long count;
+    private double meanX;
+    private double meanY;
+    private double m2X; // Σ(x - x̄)²
+    private double m2Y; // Σ(y - ȳ)²
+    private double cXY; // Σ(x - x̄)(y - ȳ)
+
+    /**
+     * Adds a pair of values.
+     *
+     * @param x first value
+     * @param y second value
+     */
+    public void accept(double x, double y) {
+        count++;
+        double dx = x - meanX;
+        meanX += dx / count;
+        double dy = y - meanY;
+        meanY += dy / count;
+        m2X += dx * (x - meanX);
+        m2Y += dy * (y - meanY);
+        cXY += dx * (y - meanY);
+    }
+
+    /**
+     * Adds the pairs (x[i], y[i]) of two arrays of the same length.
+     *
+     * @param x first values
+     * @param y second values
+     */
+    public void acceptAll(double[] x, double[] y) {
+        for (int i = 0; i < x.length; i++) {
+            accept(x[i], y[i]);
+        }
+    }
+
+    /**
+     * Combines another accumulator's pairs into this one (Chan et al. parallel update).
+     *
+     * @param other accumulator over a separate set of pairs
+     * @return this accumulator
+     */
+    public CovarianceAccumulator merge(CovarianceAccumulator other) {
+        if (other.count == 0) {
+            return this;
+        }
+        if (count == 0) {
+            count = other.count;
+            meanX = other.meanX;
+            meanY = other.meanY;
+            m2X = other.m2X;
+            m2Y = other.m2Y;
+            cXY = other.cXY;
+            return this;
+        }
+
+        long total = count + other.count;
+        double dx = other.meanX - meanX;
+        double dy = other.meanY - meanY;
+        double weight = (double) count * other.count / total;
+        meanX += dx * other.count / total;
+        meanY += dy * other.count / total;
+        m2X += other.m2X + dx * dx * weight;
+        m2Y += other.m2Y + dy * dy * weight;
+        cXY += other.cXY + dx * dy * weight;
+        count = total;
+        return this;
+    }
+
+    /**
+     * @return number of pairs added
+     */
+    public long count() { return count; }
+
+    // Means, or NaN if there are no pairs
+    public double meanX() { return count == 0 ? Double.NaN : meanX; }
+    public double meanY() { return count == 0 ? Double.NaN : meanY; }
+
+    // Population variances and covariance
+    public double varianceX() { return count == 0 ? Double.NaN : m2X / count; }
+    public double varianceY() { return count == 0 ? Double.NaN : m2Y / count; }
+    public double covariance() { return count == 0 ? Double.NaN : cXY / count; }
+
+    /**
+     * Pearson correlation coefficient: Σ((x - x̄)(y - ȳ)) / √(Σ(x - x̄)² * Σ(y - ȳ)²)
+     *
+     * @return correlation between -1 and 1, or NaN if either variable is constant
+     */
+    public double correlation() {
+        return cXY / Math.sqrt(m2X * m2Y);
+    }
+}
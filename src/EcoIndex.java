@@ -0,0 +1,156 @@
+import java.util.Arrays;
+
+/**
+ * Secondary index of an {@link OpeningsTable} by ECO code.
+ *
+ * Rows are bucketed by their ECO slot (letter A-E times 100 plus the number, as in countEco):
+ * the row ids of each code are stored contiguously and in ascending order, and prefix sums
+ * of the opening count, games and games-weighted wins over the 500 slots let any single
+ * code or code range (for example B20-B99, the Sicilian) be answered in constant time.
+ * Rows whose ECO code is not a letter A-E followed by a number are not indexed.
+ */
+public final class EcoIndex {
+    /** Number of ECO slots, A00 to E99. */
+    public static final int SLOTS = 500;
+
+    // Row ids of slot s are rows[slotStart[s]] to rows[slotStart[s + 1] - 1]
+    private final int[] slotStart;
+    private final int[] rows;
+    // Sums over slots 0 to s - 1 are at index s
+    private final long[] gamesPrefix;
+    private final double[] winsPrefix; // Σ(games * win % / 100)
+
+    private EcoIndex(int[] slotStart, int[] rows, long[] gamesPrefix, double[] winsPrefix) {
+        this.slotStart = slotStart;
+        this.rows = rows;
+        this.gamesPrefix = gamesPrefix;
+        this.winsPrefix = winsPrefix;
+    }
+
+    /**
+     * Builds the index with a counting sort over the ECO column, in O(rows + slots).
+     *
+     * @param table openings to index
+     * @return index of the table's rows by ECO code
+     */
+    public static EcoIndex build(OpeningsTable table) {
+        try (OpeningsMetrics.Span span = OpeningsMetrics.start(OpeningsMetrics.Stage.AGGREGATION, "EcoIndex.build")) {
+            int[] slotStart = new int[SLOTS + 1];
+            for (int row = 0; row < table.size(); row++) {
+                int slot = table.ecoSlot(row);
+                if (slot >= 0) {
+                    slotStart[slot + 1]++;
+                }
+            }
+            for (int slot = 0; slot < SLOTS; slot++) {
+                slotStart[slot + 1] += slotStart[slot];
+            }
+
+            // Rows are visited in ascending order, so every posting list comes out sorted
+            int[] rows = new int[slotStart[SLOTS]];
+            int[] next = Arrays.copyOf(slotStart, SLOTS);
+            long[] gamesPrefix = new long[SLOTS + 1];
+            double[] winsPrefix = new double[SLOTS + 1];
+            int[] numGames = table.numGames();
+            double[] winPercent = table.winPercent();
+            for (int row = 0; row < table.size(); row++) {
+                int slot = table.ecoSlot(row);
+                if (slot >= 0) {
+                    rows[next[slot]++] = row;
+                    gamesPrefix[slot + 1] += numGames[row];
+                    winsPrefix[slot + 1] += numGames[row] * winPercent[row] / 100.0;
+                }
+            }
+            for (int slot = 0; slot < SLOTS; slot++) {
+                gamesPrefix[slot + 1] += gamesPrefix[slot];
+                winsPrefix[slot + 1] += winsPrefix[slot];
+            }
+
+            span.rows(table.size());
+            return new EcoIndex(slotStart, rows, gamesPrefix, winsPrefix);
+        }
+    }
+
+    /**
+     * @param eco ECO code such as "B20"
+     * @return number of openings with that code
+     */
+    public int count(String eco) {
+        return count(eco, eco);
+    }
+
+    /**
+     * @param from first ECO code of the range, e.g. "B20"
+     * @param to last ECO code of the range (inclusive), e.g. "B99"
+     * @return number of openings in the range
+     */
+    public int count(String from, String to) {
+        int[] range = range(from, to);
+        return slotStart[range[1]] - slotStart[range[0]];
+    }
+
+    /**
+     * @param from first ECO code of the range
+     * @param to last ECO code of the range (inclusive)
+     * @return total games played with openings in the range
+     */
+    public long games(String from, String to) {
+        int[] range = range(from, to);
+        return gamesPrefix[range[1]] - gamesPrefix[range[0]];
+    }
+
+    /**
+     * @param from first ECO code of the range
+     * @param to last ECO code of the range (inclusive)
+     * @return win percentage over all games of the range, or NaN if it has no games
+     */
+    public double weightedWinPercent(String from, String to) {
+        int[] range = range(from, to);
+        long games = gamesPrefix[range[1]] - gamesPrefix[range[0]];
+        return games == 0 ? Double.NaN : 100.0 * (winsPrefix[range[1]] - winsPrefix[range[0]]) / games;
+    }
+
+    /**
+     * @param eco ECO code such as "B20"
+     * @return table row ids of the openings with that code, in ascending order
+     */
+    public int[] rows(String eco) {
+        return rows(eco, eco);
+    }
+
+    /**
+     * @param from first ECO code of the range
+     * @param to last ECO code of the range (inclusive)
+     * @return table row ids of the openings in the range, ordered by ECO code and then by row
+     */
+    public int[] rows(String from, String to) {
+        int[] range = range(from, to);
+        return Arrays.copyOfRange(rows, slotStart[range[0]], slotStart[range[1]]);
+    }
+
+    /**
+     * @return number of openings for each of the 500 ECO slots, as returned by countEco
+     */
+    public int[] counts() {
+        int[] counts = new int[SLOTS];
+        for (int slot = 0; slot < SLOTS; slot++) {
+            counts[slot] = slotStart[slot + 1] - slotStart[slot];
+        }
+        return counts;
+    }
+
+    /**
+     * Converts an inclusive code range to a half-open range of slots.
+     */
+    private static int[] range(String from, String to) {
+        int first = OpeningsTable.ecoSlot(from);
+        int last = OpeningsTable.ecoSlot(to);
+        if (first < 0 || last < 0) {
+            throw new IllegalArgumentException("Invalid ECO range " + from + "-" + to);
+        }
+        if (first > last) {
+            return new int[] {first, first};
+        }
+        return new int[] {first, last + 1};
+    }
+}
@@ -0,0 +1,431 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An openings dataset that grows as rows are appended, keeping its aggregates up to date
+ * instead of recomputing them: the per-color ECO counts, the color split, the correlation
+ * accumulators of questions two and three, and a rating histogram per color that answers
+ * the top-25% rating cutoff.
+ *
+ * Rows arrive either as batches through {@link #append(Collection)} or by tailing a CSV
+ * file that is only ever appended to ({@link #poll()}, {@link #tail(long)}). Readers take a
+ * {@link Snapshot}, which never changes: each batch builds the next snapshot from the
+ * previous one and publishes it with a single volatile write. The openings themselves are
+ * stored in an append-only array shared by all snapshots, and the aggregates are small and
+ * of fixed size, so the cost of a batch depends on its number of rows, not on the dataset size.
+ */
+public final class IncrementalOpenings {
+    /** Ratings are bucketed into this many single-point buckets; higher ratings share the last one. */
+    public static final int MAX_RATING = 4095;
+
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    private final File file;
+    private volatile Snapshot current = new Snapshot();
+
+    // Append-only storage shared by all snapshots; only the writer touches positions at or past the current size
+    private ChessOpening[] rows = new ChessOpening[1024];
+
+    // Tailing state: bytes of the file consumed so far, ending at a record boundary
+    private long fileOffset;
+    private ScheduledExecutorService tailer;
+
+    /**
+     * Creates an empty dataset fed through {@link #append(Collection)}.
+     */
+    public IncrementalOpenings() {
+        this(null);
+    }
+
+    /**
+     * Creates an empty dataset that reads the given CSV file on each {@link #poll()}.
+     *
+     * @param file openings.csv-style file that is appended to
+     */
+    public IncrementalOpenings(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the latest consistent state of the dataset
+     */
+    public Snapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * Adds a batch of openings and publishes a new snapshot. Invalid openings
+     * (those with dashes in ECO codes) are skipped, as when loading the file.
+     *
+     * @param openings openings to add, in order
+     * @return the snapshot including the batch
+     */
+    public synchronized Snapshot append(Collection<ChessOpening> openings) {
+        Snapshot previous = current;
+        if (openings.isEmpty()) {
+            return previous;
+        }
+        Snapshot next = new Snapshot(previous);
+
+        if (rows.length - previous.size < openings.size()) {
+            rows = Arrays.copyOf(rows, Math.max(rows.length * 2, previous.size + openings.size()));
+        }
+        int size = previous.size;
+        for (ChessOpening opening : openings) {
+            if (opening.getEco().indexOf('-') >= 0) {
+                continue;
+            }
+            rows[size++] = opening;
+            next.add(opening);
+        }
+        next.rows = rows;
+        next.size = size;
+        next.version = previous.version + 1;
+
+        current = next;
+        return next;
+    }
+
+    /**
+     * Reads the rows appended to the file since the last poll. A trailing record that is not
+     * yet terminated by a line break is left for the next poll. If the file has become
+     * shorter than what was already read, it is assumed to have been replaced and is read
+     * again from the start into an empty dataset, with a higher version than the old one.
+     *
+     * @return number of openings added
+     * @throws FileNotFoundException if the file is not found
+     */
+    public synchronized int poll() throws FileNotFoundException {
+        if (file == null) {
+            throw new IllegalStateException("No file to tail");
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            FileChannel channel = in.getChannel();
+            long length = channel.size();
+            if (length < fileOffset) {
+                // Older snapshots still read the old row array, so start a new one; its version
+                // continues from the old snapshot's so that versions never repeat
+                fileOffset = 0;
+                rows = new ChessOpening[1024];
+                Snapshot restart = new Snapshot();
+                restart.version = current.version + 1;
+                current = restart;
+            }
+            if (length == fileOffset) {
+                return 0;
+            }
+
+            long end = lastRecordEnd(channel, fileOffset, length);
+            if (end == fileOffset) {
+                return 0;
+            }
+
+            ArrayList<ChessOpening> batch = new ArrayList<>();
+            channel.position(fileOffset);
+            InputStreamReader text = new InputStreamReader(new BoundedInputStream(Channels.newInputStream(channel), end - fileOffset), StandardCharsets.UTF_8);
+            try (OpeningsCsvReader reader = new OpeningsCsvReader(text)) {
+                // The header line is only at the start of the file
+                if (fileOffset == 0) {
+                    reader.nextRecord();
+                }
+                reader.readOpenings(batch);
+            }
+            OpeningsMetrics.add(OpeningsMetrics.Counter.BYTES_READ, end - fileOffset);
+            fileOffset = end;
+
+            int before = current.size;
+            return append(batch).size - before;
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + file, e);
+        }
+    }
+
+    /**
+     * Polls the file on a background thread at a fixed interval until {@link #stopTailing()}.
+     * Read errors are reported on standard error and retried at the next interval.
+     *
+     * @param periodMillis milliseconds between polls
+     * @return handle of the scheduled polling
+     */
+    public synchronized ScheduledFuture<?> tail(long periodMillis) {
+        if (tailer == null) {
+            tailer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "openings-tail");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return tailer.scheduleWithFixedDelay(() -> {
+            try {
+                poll();
+            } catch (FileNotFoundException | UncheckedIOException e) {
+                System.err.println("Could not read " + file + ": " + e.getMessage());
+            }
+        }, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background polling started by {@link #tail(long)}.
+     */
+    public synchronized void stopTailing() {
+        if (tailer != null) {
+            tailer.shutdownNow();
+            tailer = null;
+        }
+    }
+
+    /**
+     * Finds the end of the last complete record in [from, length): the offset just past
+     * the last line break that is not inside quotes.
+     */
+    private static long lastRecordEnd(FileChannel channel, long from, long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        boolean inQuotes = false;
+        long end = from;
+        long position = from;
+        while (position < length) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '"') {
+                    inQuotes = !inQuotes;
+                } else if (b == '\n' && !inQuotes) {
+                    end = position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return end;
+    }
+
+    /**
+     * An immutable view of the dataset after some number of batches.
+     */
+    public static final class Snapshot {
+        private ChessOpening[] rows = new ChessOpening[0];
+        private int size;
+        private long version;
+
+        // Per color (OpeningsTable.WHITE, BLACK, OTHER_COLOR)
+        private final int[] colorCounts;
+        private final int[][] ecoCounts;
+        private final CovarianceAccumulator[] movesVsWin;
+        private final CovarianceAccumulator[] gamesVsWin;
+        // Fenwick trees over ratings stored in reverse, so prefix sums count openings rated at least r
+        private final int[][] ratingTrees;
+
+        private Snapshot() {
+            colorCounts = new int[3];
+            ecoCounts = new int[3][EcoIndex.SLOTS];
+            movesVsWin = new CovarianceAccumulator[3];
+            gamesVsWin = new CovarianceAccumulator[3];
+            ratingTrees = new int[3][MAX_RATING + 2];
+            for (int color = 0; color < 3; color++) {
+                movesVsWin[color] = new CovarianceAccumulator();
+                gamesVsWin[color] = new CovarianceAccumulator();
+            }
+        }
+
+        // Copies the aggregates of the previous snapshot; each copy has a fixed size
+        private Snapshot(Snapshot previous) {
+            colorCounts = previous.colorCounts.clone();
+            ecoCounts = new int[3][];
+            movesVsWin = new CovarianceAccumulator[3];
+            gamesVsWin = new CovarianceAccumulator[3];
+            ratingTrees = new int[3][];
+            for (int color = 0; color < 3; color++) {
+                ecoCounts[color] = previous.ecoCounts[color].clone();
+                movesVsWin[color] = new CovarianceAccumulator().merge(previous.movesVsWin[color]);
+                gamesVsWin[color] = new CovarianceAccumulator().merge(previous.gamesVsWin[color]);
+                ratingTrees[color] = previous.ratingTrees[color].clone();
+            }
+        }
+
+        private void add(ChessOpening opening) {
+            int color = OpeningsTable.encodeColor(opening.getColor());
+            colorCounts[color]++;
+            int slot = OpeningsTable.ecoSlot(opening.getEco());
+            if (slot >= 0) {
+                ecoCounts[color][slot]++;
+            }
+            movesVsWin[color].accept(opening.getMoveCount(), opening.getPlayerWinPercent());
+            gamesVsWin[color].accept(opening.getNumGames(), opening.getPlayerWinPercent());
+
+            int[] tree = ratingTrees[color];
+            for (int i = ratingIndex(opening.getAvgRating()); i < tree.length; i += i & -i) {
+                tree[i]++;
+            }
+        }
+
+        /**
+         * @return number of openings
+         */
+        public int size() { return size; }
+
+        /**
+         * @return number of batches applied; grows by one with every non-empty batch and when
+         *         a replaced file is read again from the start, so it never repeats
+         */
+        public long version() { return version; }
+
+        /**
+         * @return read-only view of the openings, in the order they were added
+         */
+        public List<ChessOpening> getOpenings() {
+            return new OpeningsView(rows, size);
+        }
+
+        /**
+         * @param color OpeningsTable.WHITE, BLACK or OTHER_COLOR
+         * @return number of openings of that color
+         */
+        public int count(byte color) { return colorCounts[color]; }
+
+        /**
+         * @param color OpeningsTable.WHITE, BLACK or OTHER_COLOR
+         * @return number of openings of that color for each of the 500 ECO slots, as returned by countEco
+         */
+        public int[] countEco(byte color) { return ecoCounts[color].clone(); }
+
+        /**
+         * @param color OpeningsTable.WHITE, BLACK or OTHER_COLOR
+         * @return the ECO frequencies of the openings of that color, as returned by findOpeningFreq
+         */
+        public double[] findOpeningFreq(byte color) {
+            double[] freq = new double[EcoIndex.SLOTS];
+            for (int slot = 0; slot < freq.length; slot++) {
+                freq[slot] = ecoCounts[color][slot] / 500.0;
+            }
+            return freq;
+        }
+
+        /**
+         * @param color OpeningsTable.WHITE, BLACK or OTHER_COLOR
+         * @return correlation between the number of moves and the win percentage (question two)
+         */
+        public double movesWinCorrelation(byte color) { return movesVsWin[color].correlation(); }
+
+        /**
+         * @param color OpeningsTable.WHITE, BLACK or OTHER_COLOR
+         * @return correlation between the number of games and the win percentage (question three)
+         */
+        public double gamesWinCorrelation(byte color) { return gamesVsWin[color].correlation(); }
+
+        /**
+         * Returns the lowest rating among the top 25% of openings of a color by rating, as selected by
+         * findTop25Ratings, in O(log MAX_RATING).
+         *
+         * @param color OpeningsTable.WHITE, BLACK or OTHER_COLOR
+         * @return rating of the last opening in the top 25%, or -1 if the top 25% is empty
+         */
+        public int top25Cutoff(byte color) {
+            int k = (int) Math.floor(0.25 * colorCounts[color]);
+            if (k == 0) {
+                return -1;
+            }
+
+            // Find the smallest index whose prefix count reaches k by descending the tree
+            int[] tree = ratingTrees[color];
+            int index = 0;
+            for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+                if (index + step < tree.length && tree[index + step] < k) {
+                    index += step;
+                    k -= tree[index];
+                }
+            }
+            return MAX_RATING - index;
+        }
+
+        // Rating r is stored at index MAX_RATING - r + 1, so higher ratings come first
+        private static int ratingIndex(int rating) {
+            return MAX_RATING - Math.max(0, Math.min(MAX_RATING, rating)) + 1;
+        }
+    }
+
+    /**
+     * Read-only list over the first size entries of the shared row array. Entries below
+     * size are never written again, and the snapshot holding the view was published after they were.
+     */
+    private static final class OpeningsView extends AbstractList<ChessOpening> implements RandomAccess {
+        private final ChessOpening[] rows;
+        private final int size;
+
+        OpeningsView(ChessOpening[] rows, int size) {
+            this.rows = rows;
+            this.size = size;
+        }
+
+        @Override
+        public ChessOpening get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+            }
+            return rows[index];
+        }
+
+        @Override
+        public int size() { return size; }
+    }
+
+    /**
+     * Limits a stream to the bytes of complete records.
+     */
+    private static final class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+    }
+}
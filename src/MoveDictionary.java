@@ -0,0 +1,99 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide dictionary that maps each distinct move, in standard algebraic notation
+ * without a move number (e.g. "Nf3"), to a small int code. Codes fit in 16 bits so move
+ * lines can be stored as packed short arrays (see {@link MoveLines}).
+ * Codes are assigned in order of first use and never change, so reloading a dataset reuses
+ * the codes it already has instead of growing the dictionary. Safe for concurrent use.
+ */
+public final class MoveDictionary {
+    /** Largest number of distinct moves the 16-bit codes can represent. */
+    public static final int MAX_MOVES = 1 << 16;
+
+    private static final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+    private static volatile String[] moves = new String[256];
+    private static int size;
+
+    private MoveDictionary() {}
+
+    /**
+     * Returns the code of a move, assigning a new one if the move has not been seen before.
+     *
+     * @param san move without a move number, see {@link #normalize(String)}
+     * @return code between 0 and MAX_MOVES - 1
+     * @throws IllegalStateException if the dictionary is full
+     */
+    public static int code(String san) {
+        Integer code = codes.get(san);
+        if (code != null) {
+            return code;
+        }
+        synchronized (MoveDictionary.class) {
+            code = codes.get(san);
+            if (code == null) {
+                if (size == MAX_MOVES) {
+                    throw new IllegalStateException("More than " + MAX_MOVES + " distinct moves");
+                }
+                String[] current = moves;
+                if (size == current.length) {
+                    current = Arrays.copyOf(current, current.length * 2);
+                }
+                current[size] = san;
+                // Publish the array before the code so readers of the code always find the move
+                moves = current;
+                code = size++;
+                codes.put(san, code);
+            }
+            return code;
+        }
+    }
+
+    /**
+     * Returns the code of a move without assigning one.
+     *
+     * @param san move without a move number
+     * @return the move's code, or -1 if it has never been seen
+     */
+    public static int find(String san) {
+        Integer code = codes.get(san);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * @param code code returned by {@link #code(String)}
+     * @return the move the code stands for
+     */
+    public static String move(int code) {
+        return moves[code];
+    }
+
+    /**
+     * Removes a leading move number such as "12." or "12..." from a move.
+     *
+     * @param san move in standard algebraic notation, possibly numbered
+     * @return the move without its number
+     */
+    public static String normalize(String san) {
+        int i = 0;
+        while (i < san.length() && Character.isDigit(san.charAt(i))) {
+            i++;
+        }
+        // Only digits followed by a dot are a move number; "0-0" style castling is left alone
+        if (i == 0 || i == san.length() || san.charAt(i) != '.') {
+            return san;
+        }
+        while (i < san.length() && san.charAt(i) == '.') {
+            i++;
+        }
+        return san.substring(i);
+    }
+
+    /**
+     * @return number of distinct moves seen so far
+     */
+    public static int size() {
+        return codes.size();
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only buffer of move lines. Every line is a slice of one short array of
+ * {@link MoveDictionary} codes, so an opening only needs the buffer, an offset and a
+ * length to describe its moves instead of an array of Strings.
+ *
+ * Each load fills its own buffer (each chunk of a parallel load fills one, and they are
+ * stitched together with {@link #concat(List, int[])}), and the openings it creates refer to it,
+ * so the buffer is released with them when the dataset is replaced.
+ *
+ * Appends are not synchronized: a buffer is filled by one thread and only read once
+ * its openings have been handed over.
+ */
+public final class MoveLines {
+    private short[] codes;
+    private int size;
+
+    /**
+     * Creates an empty buffer.
+     */
+    public MoveLines() {
+        this(64);
+    }
+
+    private MoveLines(int capacity) {
+        codes = new short[capacity];
+    }
+
+    /**
+     * Creates a buffer holding a single line, for an opening created on its own.
+     *
+     * @param sans moves without move numbers
+     * @return buffer whose line starts at offset 0
+     */
+    static MoveLines of(String[] sans) {
+        MoveLines lines = new MoveLines(sans.length);
+        lines.append(sans);
+        return lines;
+    }
+
+    /**
+     * Encodes and stores a line of moves.
+     *
+     * @param sans moves without move numbers
+     * @return offset of the line's first move in the buffer
+     */
+    public int append(String[] sans) {
+        if ((long) size + sans.length > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Move line buffer is full");
+        }
+        if (size + sans.length > codes.length) {
+            codes = Arrays.copyOf(codes, (int) Math.min(Integer.MAX_VALUE - 8, Math.max((long) codes.length * 2, (long) size + sans.length)));
+        }
+        int offset = size;
+        for (String san : sans) {
+            codes[size++] = (short) MoveDictionary.code(san);
+        }
+        return offset;
+    }
+
+    /**
+     * Copies several buffers into one, in order.
+     *
+     * @param parts buffers to join
+     * @param offsets receives, for each part, the offset its first move has in the result
+     * @return the joined buffer
+     */
+    static MoveLines concat(List<MoveLines> parts, int[] offsets) {
+        long total = 0;
+        for (MoveLines part : parts) {
+            total += part.size;
+        }
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Move line buffer is full");
+        }
+        MoveLines joined = new MoveLines((int) total);
+        for (int i = 0; i < parts.size(); i++) {
+            MoveLines part = parts.get(i);
+            offsets[i] = joined.size;
+            System.arraycopy(part.codes, 0, joined.codes, joined.size, part.size);
+            joined.size += part.size;
+        }
+        return joined;
+    }
+
+    /**
+     * @param index offset of a move in the buffer
+     * @return that move's dictionary code
+     */
+    public int codeAt(int index) {
+        return codes[index] & 0xFFFF;
+    }
+
+    /**
+     * @return number of moves stored, across all lines
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,296 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A prefix tree over the openings' move lists. Every node stands for a sequence of moves
+ * from the starting position and holds statistics rolled up over all openings whose
+ * move list starts with that sequence, separately for white and black rows.
+ *
+ * Moves are identified by their {@link MoveDictionary} codes, which ignore move numbers
+ * ("2.Nf3" and "Nf3" are the same move), and the nodes are stored in parallel primitive arrays.
+ * Prefix and continuation queries only walk the moves of the prefix, so their cost
+ * does not depend on the number of openings.
+ */
+public final class MoveTrie {
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    // Tree structure: children of a node form a linked list through nextSibling
+    private int nodeCount;
+    private int[] move = new int[64];
+    private int[] firstChild = new int[64];
+    private int[] nextSibling = new int[64];
+    // Openings whose move list ends exactly at a node, linked through terminalNext
+    private int[] terminalHead = new int[64];
+    private int[] terminalNext;
+
+    // Statistics per node and color, at index node * 2 + color
+    private int[] count = new int[128];
+    private long[] games = new long[128];
+    private double[] winSum = new double[128];    // Σ(games * win %)
+    private double[] drawSum = new double[128];   // Σ(games * draw %)
+    private double[] lossSum = new double[128];   // Σ(games * opponent win %)
+    private double[] ratingSum = new double[128]; // Σ(games * avg rating)
+
+    private MoveTrie() {
+        newNode(NONE);
+    }
+
+    /**
+     * Builds the trie from a list of openings. Openings of a color other than white or black
+     * only count toward the tree structure, not the statistics.
+     *
+     * @param openings openings to index; their list positions are the row ids returned by {@link #openingsAt(String)}
+     * @return trie over the openings' move lists
+     */
+    public static MoveTrie build(List<ChessOpening> openings) {
+        try (OpeningsMetrics.Span span = OpeningsMetrics.start(OpeningsMetrics.Stage.AGGREGATION, "MoveTrie.build")) {
+            MoveTrie trie = new MoveTrie();
+            trie.terminalNext = new int[openings.size()];
+
+            for (int row = 0; row < openings.size(); row++) {
+                ChessOpening opening = openings.get(row);
+                int color = OpeningsTable.encodeColor(opening.getColor());
+
+                // Walk down the tree, creating missing nodes and adding the opening to every node on its path
+                int node = ROOT;
+                trie.add(node, color, opening);
+                for (int i = 0; i < opening.getMoveCount(); i++) {
+                    node = trie.childOrCreate(node, opening.getMoveCode(i));
+                    trie.add(node, color, opening);
+                }
+                trie.terminalNext[row] = trie.terminalHead[node];
+                trie.terminalHead[node] = row;
+            }
+            span.rows(openings.size());
+            return trie;
+        }
+    }
+
+    /**
+     * Splits a move sequence such as "1.e4 c5 2.Nf3" into its moves. Commas, brackets
+     * and quotes are ignored, so a moves_list value like "['1.e4', 'c5']" works too.
+     *
+     * @param line moves separated by spaces
+     * @return the moves, with their move numbers removed
+     */
+    public static String[] splitMoves(String line) {
+        ArrayList<String> moves = new ArrayList<>();
+        for (String part : line.split("[\\s,\\[\\]'\"]+")) {
+            String san = MoveDictionary.normalize(part);
+            if (!san.isEmpty()) {
+                moves.add(san);
+            }
+        }
+        return moves.toArray(new String[0]);
+    }
+
+    /**
+     * Returns the statistics of all openings that start with a sequence of moves.
+     *
+     * @param prefix moves such as "1.e4 c5 2.Nf3"; an empty prefix matches every opening
+     * @return statistics for the prefix, or null if no opening starts with it
+     */
+    public Stats stats(String prefix) {
+        int node = find(splitMoves(prefix));
+        return node == NONE ? null : new Stats(this, node);
+    }
+
+    /**
+     * Returns the most played next moves after a sequence of moves.
+     *
+     * @param prefix moves such as "1.e4 c5"
+     * @param limit maximum number of continuations to return
+     * @return continuations ordered by total games played, most played first; empty if no opening starts with the prefix
+     */
+    public List<Continuation> continuations(String prefix, int limit) {
+        ArrayList<Continuation> result = new ArrayList<>();
+        int node = find(splitMoves(prefix));
+        if (node == NONE) {
+            return result;
+        }
+
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            result.add(new Continuation(MoveDictionary.move(move[child]), new Stats(this, child)));
+        }
+        result.sort((a, b) -> Long.compare(b.getStats().getTotalGames(), a.getStats().getTotalGames()));
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * Returns the openings whose move list is exactly the given sequence.
+     *
+     * @param line moves such as "1.e4 c5 2.Nf3"
+     * @return positions of the openings in the list the trie was built from, in ascending order
+     */
+    public int[] openingsAt(String line) {
+        int node = find(splitMoves(line));
+        if (node == NONE) {
+            return new int[0];
+        }
+        int found = 0;
+        for (int row = terminalHead[node]; row != NONE; row = terminalNext[row]) {
+            found++;
+        }
+        int[] rows = new int[found];
+        for (int row = terminalHead[node]; row != NONE; row = terminalNext[row]) {
+            rows[--found] = row;
+        }
+        return rows;
+    }
+
+    /**
+     * @return number of nodes, including the root
+     */
+    public int nodeCount() { return nodeCount; }
+
+    // Node-level navigation for streaming matchers such as PgnIngest and for PositionIndex; NONE (-1) marks the end of a list
+    int rootNode() { return ROOT; }
+    int firstChildOf(int node) { return firstChild[node]; }
+    int nextSiblingOf(int node) { return nextSibling[node]; }
+    int moveCodeOf(int node) { return move[node]; }
+    int firstOpeningAt(int node) { return terminalHead[node]; }
+    int nextOpeningAt(int row) { return terminalNext[row]; }
+    Stats statsAt(int node) { return new Stats(this, node); }
+
+    private int find(String[] moves) {
+        int node = ROOT;
+        for (String san : moves) {
+            int token = MoveDictionary.find(san);
+            if (token < 0) {
+                return NONE;
+            }
+            node = child(node, token);
+            if (node == NONE) {
+                return NONE;
+            }
+        }
+        return node;
+    }
+
+    private int child(int node, int token) {
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            if (move[child] == token) {
+                return child;
+            }
+        }
+        return NONE;
+    }
+
+    private int childOrCreate(int node, int token) {
+        int child = child(node, token);
+        if (child != NONE) {
+            return child;
+        }
+        child = newNode(token);
+        nextSibling[child] = firstChild[node];
+        firstChild[node] = child;
+        return child;
+    }
+
+    private int newNode(int token) {
+        if (nodeCount == move.length) {
+            int capacity = move.length * 2;
+            move = Arrays.copyOf(move, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            terminalHead = Arrays.copyOf(terminalHead, capacity);
+            count = Arrays.copyOf(count, capacity * 2);
+            games = Arrays.copyOf(games, capacity * 2);
+            winSum = Arrays.copyOf(winSum, capacity * 2);
+            drawSum = Arrays.copyOf(drawSum, capacity * 2);
+            lossSum = Arrays.copyOf(lossSum, capacity * 2);
+            ratingSum = Arrays.copyOf(ratingSum, capacity * 2);
+        }
+        int node = nodeCount++;
+        move[node] = token;
+        firstChild[node] = NONE;
+        nextSibling[node] = NONE;
+        terminalHead[node] = NONE;
+        return node;
+    }
+
+    private void add(int node, int color, ChessOpening opening) {
+        if (color != OpeningsTable.WHITE && color != OpeningsTable.BLACK) {
+            return;
+        }
+        int i = node * 2 + color;
+        double n = opening.getNumGames();
+        count[i]++;
+        games[i] += opening.getNumGames();
+        winSum[i] += n * opening.getPlayerWinPercent();
+        drawSum[i] += n * opening.getDrawPercent();
+        lossSum[i] += n * opening.getOpponentWinPercent();
+        ratingSum[i] += n * opening.getAvgRating();
+    }
+
+    /**
+     * Rolled-up statistics of the openings below one node, for white and black rows.
+     * Percentages and ratings are weighted by the number of games.
+     */
+    public static final class Stats {
+        private final MoveTrie trie;
+        private final int node;
+
+        private Stats(MoveTrie trie, int node) {
+            this.trie = trie;
+            this.node = node;
+        }
+
+        /**
+         * @param color OpeningsTable.WHITE or OpeningsTable.BLACK
+         * @return number of openings of that color
+         */
+        public int getCount(byte color) { return trie.count[node * 2 + color]; }
+
+        /**
+         * @param color OpeningsTable.WHITE or OpeningsTable.BLACK
+         * @return games played with openings of that color
+         */
+        public long getGames(byte color) { return trie.games[node * 2 + color]; }
+
+        /**
+         * @return games played with openings of either color
+         */
+        public long getTotalGames() { return trie.games[node * 2] + trie.games[node * 2 + 1]; }
+
+        // Games-weighted percentages and rating for one color, NaN if it has no games
+        public double getWinPercent(byte color) { return weighted(trie.winSum, color); }
+        public double getDrawPercent(byte color) { return weighted(trie.drawSum, color); }
+        public double getLossPercent(byte color) { return weighted(trie.lossSum, color); }
+        public double getAvgRating(byte color) { return weighted(trie.ratingSum, color); }
+
+        private double weighted(double[] sums, byte color) {
+            long n = getGames(color);
+            return n == 0 ? Double.NaN : sums[node * 2 + color] / n;
+        }
+
+        @Override
+        public String toString() {
+            return "white: " + getCount(OpeningsTable.WHITE) + " openings, " + getGames(OpeningsTable.WHITE) + " games, win% " + getWinPercent(OpeningsTable.WHITE)
+                    + "; black: " + getCount(OpeningsTable.BLACK) + " openings, " + getGames(OpeningsTable.BLACK) + " games, win% " + getWinPercent(OpeningsTable.BLACK);
+        }
+    }
+
+    /**
+     * A possible next move after a prefix, with the statistics of the openings that play it.
+     */
+    public static final class Continuation {
+        private final String move;
+        private final Stats stats;
+
+        private Continuation(String move, Stats stats) {
+            this.move = move;
+            this.stats = stats;
+        }
+
+        public String getMove() { return move; }
+        public Stats getStats() { return stats; }
+
+        @Override
+        public String toString() {
+            return move + " (" + stats.getTotalGames() + " games)";
+        }
+    }
+}
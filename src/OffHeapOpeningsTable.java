@@ -0,0 +1,503 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Column storage for very large openings datasets kept outside the Java heap, either in direct
+ * buffers or memory-mapped from a column file, so the heap and garbage collection cost stay the
+ * same however many rows there are.
+ *
+ * Each column is split into pages of 65,536 rows (2^20 for the move codes); a value is read with
+ * a shift and a mask and an absolute buffer read. The columns are games, rating, win %, color,
+ * ECO slot, and the start of each row's slice of the move codes (see {@link MoveDictionary}),
+ * with one extra entry so the slice of row i is [start(i), start(i + 1)).
+ *
+ * Column file layout (little-endian): magic, format version, row count, move code count, then each
+ * column's values back to back in the order above, the move codes, and the moves the codes stand
+ * for (count, then each as a length-prefixed UTF-8 string). Move codes are only meaningful within
+ * one process, so a mapped file's codes are translated to this process's codes as they are read.
+ *
+ * Direct buffers are released by the garbage collector once the table is unreachable, and mapped
+ * files when their mappings are; tables are immutable and safe to share between threads.
+ */
+public final class OffHeapOpeningsTable implements OpeningsColumns {
+    private static final int MAGIC = 0x4F434F4C; // "OCOL"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 20;
+
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+    private static final int MOVE_PAGE_SHIFT = 20;
+    private static final int MOVE_PAGE_MASK = (1 << MOVE_PAGE_SHIFT) - 1;
+    // Column files are mapped in regions of at most this many bytes, then sliced into pages
+    private static final long MAX_REGION_BYTES = 1L << 30;
+
+    // Columns read when loading straight from a CSV file
+    private static final EnumSet<OpeningsColumn> CSV_COLUMNS = EnumSet.of(OpeningsColumn.COLOUR, OpeningsColumn.NUM_GAMES,
+        OpeningsColumn.ECO, OpeningsColumn.AVG_PLAYER, OpeningsColumn.PLAYER_WIN, OpeningsColumn.MOVES);
+
+    private final int size;
+    private final long moveCodeCount;
+    private final ByteBuffer[] numGames;
+    private final ByteBuffer[] avgRating;
+    private final ByteBuffer[] winPercent;
+    private final ByteBuffer[] color;
+    private final ByteBuffer[] ecoSlot;
+    private final ByteBuffer[] moveStart;
+    private final ByteBuffer[] moveCodes;
+    // Moves of the stored codes and their codes in this process, for tables mapped from a file; null otherwise
+    private final String[] fileMoves;
+    private final int[] moveCodeMap;
+
+    private OffHeapOpeningsTable(int size, long moveCodeCount, ByteBuffer[] numGames, ByteBuffer[] avgRating, ByteBuffer[] winPercent,
+                                 ByteBuffer[] color, ByteBuffer[] ecoSlot, ByteBuffer[] moveStart, ByteBuffer[] moveCodes,
+                                 String[] fileMoves) {
+        this.size = size;
+        this.moveCodeCount = moveCodeCount;
+        this.numGames = numGames;
+        this.avgRating = avgRating;
+        this.winPercent = winPercent;
+        this.color = color;
+        this.ecoSlot = ecoSlot;
+        this.moveStart = moveStart;
+        this.moveCodes = moveCodes;
+        this.fileMoves = fileMoves;
+        if (fileMoves == null) {
+            moveCodeMap = null;
+        } else {
+            moveCodeMap = new int[fileMoves.length];
+            for (int i = 0; i < fileMoves.length; i++) {
+                moveCodeMap[i] = MoveDictionary.code(fileMoves[i]);
+            }
+        }
+    }
+
+    /**
+     * Copies openings into direct buffers.
+     *
+     * @param openings openings to store
+     * @return table whose row i is openings.get(i)
+     */
+    public static OffHeapOpeningsTable from(List<ChessOpening> openings) {
+        Builder builder = new Builder();
+        for (ChessOpening opening : openings) {
+            builder.add(opening);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Streams an openings file into direct buffers without creating an object per row.
+     * Filters out invalid openings (those with dashes in ECO codes) like the other loaders.
+     *
+     * @param csvFile openings.csv-style file
+     * @return table of the valid openings, in file order
+     * @throws FileNotFoundException if the file is not found
+     */
+    public static OffHeapOpeningsTable load(File csvFile) throws FileNotFoundException {
+        try (OpeningsMetrics.Span span = OpeningsMetrics.start(OpeningsMetrics.Stage.LOAD, "OffHeapOpeningsTable.load");
+             OpeningsCsvReader reader = OpeningsCsvReader.open(csvFile)) {
+            reader.project(CSV_COLUMNS);
+            // Skip the header line
+            reader.nextRecord();
+            Builder builder = new Builder();
+            builder.addRecords(reader);
+            OpeningsMetrics.add(OpeningsMetrics.Counter.BYTES_READ, csvFile.length());
+            span.rows(builder.size);
+            return builder.build();
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + csvFile, e);
+        }
+    }
+
+    /**
+     * Maps a column file written by {@link #save(File)}. Nothing is read into the heap;
+     * pages are loaded by the operating system as they are touched.
+     *
+     * @param file column file
+     * @return table backed by the file
+     * @throws FileNotFoundException if the file is not found
+     * @throws IllegalArgumentException if the file is not a column file of this version
+     */
+    public static OffHeapOpeningsTable map(File file) throws FileNotFoundException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+                // Keep reading until the header is complete or the file ends
+            }
+            header.flip();
+            if (header.limit() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IllegalArgumentException(file + " is not an openings column file of version " + VERSION);
+            }
+            int size = header.getInt();
+            long moveCodeCount = header.getLong();
+            long columnsEnd = HEADER_BYTES + (long) size * (2 * Integer.BYTES + Double.BYTES + Byte.BYTES + Short.BYTES)
+                              + (size + 1L) * Long.BYTES + moveCodeCount * Integer.BYTES;
+            if (size < 0 || moveCodeCount < 0 || columnsEnd > channel.size()) {
+                throw new IllegalArgumentException(file + " is truncated");
+            }
+            String[] moves = readMoves(channel, columnsEnd);
+
+            long offset = HEADER_BYTES;
+            ByteBuffer[] numGames = mapColumn(channel, offset, size, Integer.BYTES, PAGE_SHIFT);
+            offset += (long) size * Integer.BYTES;
+            ByteBuffer[] avgRating = mapColumn(channel, offset, size, Integer.BYTES, PAGE_SHIFT);
+            offset += (long) size * Integer.BYTES;
+            ByteBuffer[] winPercent = mapColumn(channel, offset, size, Double.BYTES, PAGE_SHIFT);
+            offset += (long) size * Double.BYTES;
+            ByteBuffer[] color = mapColumn(channel, offset, size, Byte.BYTES, PAGE_SHIFT);
+            offset += size;
+            ByteBuffer[] ecoSlot = mapColumn(channel, offset, size, Short.BYTES, PAGE_SHIFT);
+            offset += (long) size * Short.BYTES;
+            ByteBuffer[] moveStart = mapColumn(channel, offset, size + 1L, Long.BYTES, PAGE_SHIFT);
+            offset += (size + 1L) * Long.BYTES;
+            ByteBuffer[] moveCodes = mapColumn(channel, offset, moveCodeCount, Integer.BYTES, MOVE_PAGE_SHIFT);
+            return new OffHeapOpeningsTable(size, moveCodeCount, numGames, avgRating, winPercent, color, ecoSlot, moveStart, moveCodes, moves);
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(file.getPath());
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IllegalArgumentException(file + " has a corrupt move dictionary", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map " + file, e);
+        }
+    }
+
+    /**
+     * Writes the table to a column file that {@link #map(File)} can open. The file is written
+     * to a temporary name and then moved into place, so readers never see a partial file.
+     *
+     * @param file file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(size).putLong(moveCodeCount).flip();
+            writeFully(out, header);
+            writeColumn(out, numGames, size, Integer.BYTES, PAGE_SHIFT);
+            writeColumn(out, avgRating, size, Integer.BYTES, PAGE_SHIFT);
+            writeColumn(out, winPercent, size, Double.BYTES, PAGE_SHIFT);
+            writeColumn(out, color, size, Byte.BYTES, PAGE_SHIFT);
+            writeColumn(out, ecoSlot, size, Short.BYTES, PAGE_SHIFT);
+            writeColumn(out, moveStart, size + 1L, Long.BYTES, PAGE_SHIFT);
+            writeColumn(out, moveCodes, moveCodeCount, Integer.BYTES, MOVE_PAGE_SHIFT);
+            writeMoves(out);
+        }
+
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public int size() { return size; }
+
+    /**
+     * @return total number of move codes over all rows
+     */
+    public long moveCodeCount() { return moveCodeCount; }
+
+    @Override
+    public byte color(int row) {
+        return color[page(row)].get(row & PAGE_MASK);
+    }
+
+    @Override
+    public int numGames(int row) {
+        return numGames[page(row)].getInt((row & PAGE_MASK) * Integer.BYTES);
+    }
+
+    @Override
+    public int avgRating(int row) {
+        return avgRating[page(row)].getInt((row & PAGE_MASK) * Integer.BYTES);
+    }
+
+    @Override
+    public double winPercent(int row) {
+        return winPercent[page(row)].getDouble((row & PAGE_MASK) * Double.BYTES);
+    }
+
+    @Override
+    public int ecoSlot(int row) {
+        return ecoSlot[page(row)].getShort((row & PAGE_MASK) * Short.BYTES);
+    }
+
+    @Override
+    public int moveCount(int row) {
+        page(row);
+        return (int) (moveStart(row + 1) - moveStart(row));
+    }
+
+    /**
+     * @param row row position
+     * @param index position of a move in the row's move list
+     * @return the move's MoveDictionary code
+     */
+    public int moveCode(int row, int index) {
+        long start = moveStart(row);
+        long end = moveStart(row + 1);
+        if (index < 0 || index >= end - start) {
+            throw new IndexOutOfBoundsException("Move " + index + " out of bounds for length " + (end - start));
+        }
+        long position = start + index;
+        int code = moveCodes[(int) (position >>> MOVE_PAGE_SHIFT)].getInt((int) (position & MOVE_PAGE_MASK) * Integer.BYTES);
+        return moveCodeMap == null ? code : moveCodeMap[code];
+    }
+
+    private long moveStart(int row) {
+        return moveStart[row >>> PAGE_SHIFT].getLong((row & PAGE_MASK) * Long.BYTES);
+    }
+
+    private int page(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of bounds for size " + size);
+        }
+        return row >>> PAGE_SHIFT;
+    }
+
+    /**
+     * Maps a column stored at an offset of the file and splits it into pages.
+     */
+    private static ByteBuffer[] mapColumn(FileChannel channel, long offset, long count, int width, int pageShift) throws IOException {
+        long pageBytes = (long) width << pageShift;
+        int pages = (int) ((count + (1L << pageShift) - 1) >>> pageShift);
+        ByteBuffer[] column = new ByteBuffer[pages];
+        long bytes = count * width;
+        long pagesPerRegion = Math.max(1, MAX_REGION_BYTES / pageBytes);
+
+        for (int first = 0; first < pages; first += (int) pagesPerRegion) {
+            long regionStart = first * pageBytes;
+            long regionLength = Math.min(bytes - regionStart, pagesPerRegion * pageBytes);
+            ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, offset + regionStart, regionLength);
+            for (int page = first; page < pages && page < first + pagesPerRegion; page++) {
+                int start = (int) ((page - first) * pageBytes);
+                int length = (int) Math.min(pageBytes, regionLength - start);
+                column[page] = region.slice(start, length).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        return column;
+    }
+
+    /**
+     * Writes the moves the stored codes stand for: the file's own moves for a mapped table,
+     * and this process's dictionary otherwise.
+     */
+    private void writeMoves(FileChannel out) throws IOException {
+        String[] moves = fileMoves;
+        if (moves == null) {
+            moves = new String[MoveDictionary.size()];
+            for (int i = 0; i < moves.length; i++) {
+                moves[i] = MoveDictionary.move(i);
+            }
+        }
+        int bytes = Integer.BYTES;
+        byte[][] encoded = new byte[moves.length][];
+        for (int i = 0; i < moves.length; i++) {
+            encoded[i] = moves[i].getBytes(StandardCharsets.UTF_8);
+            bytes += Integer.BYTES + encoded[i].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(moves.length);
+        for (byte[] move : encoded) {
+            buffer.putInt(move.length).put(move);
+        }
+        buffer.flip();
+        writeFully(out, buffer);
+    }
+
+    private static String[] readMoves(FileChannel channel, long offset) throws IOException {
+        long length = channel.size() - offset;
+        if (length < Integer.BYTES || length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid move dictionary");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) > 0) {
+            // Keep reading until the dictionary is complete
+        }
+        buffer.flip();
+        String[] moves = new String[buffer.getInt()];
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < moves.length; i++) {
+            int moveLength = buffer.getInt();
+            if (moveLength > bytes.length) {
+                bytes = new byte[moveLength];
+            }
+            buffer.get(bytes, 0, moveLength);
+            moves[i] = new String(bytes, 0, moveLength, StandardCharsets.UTF_8);
+        }
+        return moves;
+    }
+
+    private static void writeColumn(FileChannel out, ByteBuffer[] column, long count, int width, int pageShift) throws IOException {
+        long remaining = count * width;
+        long pageBytes = (long) width << pageShift;
+        for (ByteBuffer page : column) {
+            ByteBuffer data = page.duplicate();
+            data.position(0).limit((int) Math.min(remaining, pageBytes));
+            remaining -= data.remaining();
+            writeFully(out, data);
+        }
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            out.write(data);
+        }
+    }
+
+    /**
+     * Appends rows into direct buffers, allocating a page at a time as the columns grow.
+     * Not thread-safe.
+     */
+    public static final class Builder {
+        private final ArrayList<ByteBuffer> numGames = new ArrayList<>();
+        private final ArrayList<ByteBuffer> avgRating = new ArrayList<>();
+        private final ArrayList<ByteBuffer> winPercent = new ArrayList<>();
+        private final ArrayList<ByteBuffer> color = new ArrayList<>();
+        private final ArrayList<ByteBuffer> ecoSlot = new ArrayList<>();
+        private final ArrayList<ByteBuffer> moveStart = new ArrayList<>();
+        private final ArrayList<ByteBuffer> moveCodes = new ArrayList<>();
+        private int size;
+        private long moveCodeCount;
+        private boolean built;
+
+        public Builder() {
+            putLong(moveStart, 0, 0);
+        }
+
+        /**
+         * Appends an opening.
+         *
+         * @param opening opening to add
+         * @return this builder
+         */
+        public Builder add(ChessOpening opening) {
+            startRow(OpeningsTable.encodeColor(opening.getColor()), opening.getNumGames(), opening.getAvgRating(),
+                     opening.getPlayerWinPercent(), OpeningsTable.ecoSlot(opening.getEco()));
+            for (int i = 0; i < opening.getMoveCount(); i++) {
+                addMoveCode(opening.getMoveCode(i));
+            }
+            return endRow();
+        }
+
+        /**
+         * Reads every remaining record of a tokenizer, as {@link OpeningsCsvReader#readOpenings(List)}
+         * does but without creating openings.
+         */
+        void addRecords(OpeningsCsvReader reader) throws IOException {
+            long read = 0;
+            long rejected = 0;
+            long errors = 0;
+            while (reader.nextRecord()) {
+                if (reader.fieldCount() == 1 && reader.getString(0).isEmpty()) {
+                    continue;
+                }
+                read++;
+                if (reader.fieldCount() <= OpeningsCsvReader.MOVES_LIST) {
+                    errors++;
+                    continue;
+                }
+                if (reader.fieldContains(OpeningsCsvReader.ECO, '-')) {
+                    rejected++;
+                    continue;
+                }
+
+                // Parse all numbers before writing, so a malformed record leaves nothing behind
+                byte colorValue;
+                int games;
+                int rating;
+                double win;
+                try {
+                    colorValue = OpeningsTable.encodeColor(reader.getColor(OpeningsCsvReader.COLOUR));
+                    games = reader.getInt(OpeningsCsvReader.NUM_GAMES);
+                    rating = reader.getInt(OpeningsCsvReader.AVG_PLAYER);
+                    win = reader.getDouble(OpeningsCsvReader.PLAYER_WIN);
+                } catch (NumberFormatException e) {
+                    errors++;
+                    continue;
+                }
+                startRow(colorValue, games, rating, win, OpeningsTable.ecoSlot(reader.getString(OpeningsCsvReader.ECO)));
+                for (String move : reader.getMoves(OpeningsCsvReader.MOVES_LIST)) {
+                    addMoveCode(MoveDictionary.code(MoveDictionary.normalize(move)));
+                }
+                endRow();
+            }
+            OpeningsMetrics.add(OpeningsMetrics.Counter.ROWS_READ, read);
+            OpeningsMetrics.add(OpeningsMetrics.Counter.ROWS_REJECTED, rejected);
+            OpeningsMetrics.add(OpeningsMetrics.Counter.PARSE_ERRORS, errors);
+        }
+
+        /**
+         * @return the table of the rows added; the builder cannot be used afterwards
+         */
+        public OffHeapOpeningsTable build() {
+            if (built) {
+                throw new IllegalStateException("Table already built");
+            }
+            built = true;
+            ByteBuffer[] none = new ByteBuffer[0];
+            return new OffHeapOpeningsTable(size, moveCodeCount, numGames.toArray(none), avgRating.toArray(none),
+                                            winPercent.toArray(none), color.toArray(none), ecoSlot.toArray(none),
+                                            moveStart.toArray(none), moveCodes.toArray(none), null);
+        }
+
+        private void startRow(byte colorValue, int games, int rating, double win, int slot) {
+            if (built) {
+                throw new IllegalStateException("Table already built");
+            }
+            if (size == Integer.MAX_VALUE - 1) {
+                throw new IllegalStateException("Too many rows");
+            }
+            int page = size >>> PAGE_SHIFT;
+            int offset = size & PAGE_MASK;
+            page(numGames, page, Integer.BYTES, PAGE_SHIFT).putInt(offset * Integer.BYTES, games);
+            page(avgRating, page, Integer.BYTES, PAGE_SHIFT).putInt(offset * Integer.BYTES, rating);
+            page(winPercent, page, Double.BYTES, PAGE_SHIFT).putDouble(offset * Double.BYTES, win);
+            page(color, page, Byte.BYTES, PAGE_SHIFT).put(offset, colorValue);
+            page(ecoSlot, page, Short.BYTES, PAGE_SHIFT).putShort(offset * Short.BYTES, (short) slot);
+        }
+
+        private void addMoveCode(int code) {
+            page(moveCodes, (int) (moveCodeCount >>> MOVE_PAGE_SHIFT), Integer.BYTES, MOVE_PAGE_SHIFT)
+                .putInt((int) (moveCodeCount & MOVE_PAGE_MASK) * Integer.BYTES, code);
+            moveCodeCount++;
+        }
+
+        private Builder endRow() {
+            size++;
+            putLong(moveStart, size, moveCodeCount);
+            return this;
+        }
+
+        private static void putLong(ArrayList<ByteBuffer> column, int index, long value) {
+            page(column, index >>> PAGE_SHIFT, Long.BYTES, PAGE_SHIFT).putLong((index & PAGE_MASK) * Long.BYTES, value);
+        }
+
+        private static ByteBuffer page(ArrayList<ByteBuffer> column, int page, int width, int pageShift) {
+            while (column.size() <= page) {
+                column.add(ByteBuffer.allocateDirect(width << pageShift).order(ByteOrder.LITTLE_ENDIAN));
+            }
+            return column.get(page);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Columns of openings.csv that a {@link ChessOpening} can be loaded with.
+ *
+ * A projected load ({@link OpeningsDataset#loadProjected(java.io.File, Set)}) only decodes the
+ * columns it is given; the fields of the others keep their defaults (null or 0). The tokenizer
+ * does not copy the text of unused columns at all, and MOVES is kept as its raw text until the
+ * moves are first read.
+ */
+public enum OpeningsColumn {
+    OPENING(OpeningsCsvReader.OPENING),
+    COLOUR(OpeningsCsvReader.COLOUR),
+    NUM_GAMES(OpeningsCsvReader.NUM_GAMES),
+    ECO(OpeningsCsvReader.ECO),
+    LAST_PLAYED(OpeningsCsvReader.LAST_PLAYED),
+    AVG_PLAYER(OpeningsCsvReader.AVG_PLAYER),
+    PLAYER_WIN(OpeningsCsvReader.PLAYER_WIN),
+    DRAW(OpeningsCsvReader.DRAW),
+    OPPONENT_WIN(OpeningsCsvReader.OPPONENT_WIN),
+    MOVES(OpeningsCsvReader.MOVES_LIST);
+
+    private final int csvIndex;
+
+    OpeningsColumn(int csvIndex) {
+        this.csvIndex = csvIndex;
+    }
+
+    /**
+     * @return position of the column in an openings.csv record
+     */
+    public int csvIndex() { return csvIndex; }
+
+    /**
+     * @return every column, i.e. a full load
+     */
+    public static EnumSet<OpeningsColumn> all() {
+        return EnumSet.allOf(OpeningsColumn.class);
+    }
+}
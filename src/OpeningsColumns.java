@@ -0,0 +1,56 @@
+/**
+ * Row-by-row read access to the columns the analyses use, shared by the on-heap
+ * {@link OpeningsTable} and the off-heap {@link OffHeapOpeningsTable}, so the
+ * {@link ChessOpeningsAnalysis} methods taking an OpeningsColumns run against either.
+ */
+public interface OpeningsColumns {
+    /**
+     * Numeric columns that can be correlated.
+     */
+    enum Measure {
+        NUM_GAMES, AVG_RATING, WIN_PERCENT, MOVE_COUNT
+    }
+
+    /**
+     * @return number of rows
+     */
+    int size();
+
+    /**
+     * @param row row position
+     * @return OpeningsTable.WHITE, BLACK or OTHER_COLOR
+     */
+    byte color(int row);
+
+    int numGames(int row);
+
+    int avgRating(int row);
+
+    double winPercent(int row);
+
+    int moveCount(int row);
+
+    /**
+     * @param row row position
+     * @return the row's ECO code as a 500-slot array index, or -1 if it is not a valid code
+     */
+    int ecoSlot(int row);
+
+    /**
+     * @param measure column to read
+     * @param row row position
+     * @return the row's value of the column
+     */
+    default double value(Measure measure, int row) {
+        switch (measure) {
+            case NUM_GAMES:
+                return numGames(row);
+            case AVG_RATING:
+                return avgRating(row);
+            case WIN_PERCENT:
+                return winPercent(row);
+            default:
+                return moveCount(row);
+        }
+    }
+}
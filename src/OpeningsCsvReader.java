@@ -0,0 +1,511 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A single-pass, quote-aware tokenizer for openings.csv-style files.
+ * Records are copied once from a reusable char buffer into a reusable record buffer
+ * (with the CSV quoting removed), and fields are addressed by their offsets in it.
+ * Numbers are parsed straight from the record buffer without creating Strings.
+ * With a projection ({@link #project(Set)}) only the text of the projected columns is copied.
+ *
+ * A tokenizer from {@link #forLines()} reads no stream: each {@link #parseLine(String)} tokenizes
+ * one String in place, reusing the tokenizer's buffers from line to line.
+ */
+public final class OpeningsCsvReader implements Closeable {
+    // CSV column positions
+    public static final int OPENING = 1;
+    public static final int COLOUR = 2;
+    public static final int NUM_GAMES = 3;
+    public static final int ECO = 4;
+    public static final int LAST_PLAYED = 5;
+    public static final int AVG_PLAYER = 7;
+    public static final int PLAYER_WIN = 8;
+    public static final int DRAW = 9;
+    public static final int OPPONENT_WIN = 10;
+    public static final int MOVES_LIST = 12;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Powers of ten that are exactly representable as doubles
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Null for a tokenizer of single lines
+    private final Reader in;
+    private char[] buffer;
+    private int position;
+    private int limit;
+
+    // The current record, unquoted, and the [start, end) offsets of each of its fields
+    private char[] record = new char[512];
+    private int recordLength;
+    private int[] fieldStart = new int[32];
+    private int[] fieldEnd = new int[32];
+    private int fieldCount;
+
+    // Columns whose text is copied into the record, by position; null copies them all
+    private boolean[] keep;
+    private EnumSet<OpeningsColumn> projection;
+
+    // Buffer the moves of the openings read by this tokenizer are stored in; null for a tokenizer
+    // of single lines, whose openings each get a buffer of their own since they outlive the line
+    private final MoveLines moveLines;
+
+    /**
+     * Creates a tokenizer reading from the given character stream.
+     *
+     * @param in stream of CSV text
+     */
+    public OpeningsCsvReader(Reader in) {
+        this.in = in;
+        this.buffer = new char[BUFFER_SIZE];
+        this.moveLines = new MoveLines();
+    }
+
+    private OpeningsCsvReader(int lineLength) {
+        this.in = null;
+        this.buffer = new char[lineLength];
+        this.record = new char[Math.max(16, lineLength)];
+        this.fieldStart = new int[MOVES_LIST + 4];
+        this.fieldEnd = new int[MOVES_LIST + 4];
+        this.moveLines = null;
+    }
+
+    /**
+     * Opens a CSV file for tokenizing. The file is decoded as UTF-8.
+     *
+     * @param file CSV file to read
+     * @return tokenizer positioned before the first record
+     * @throws FileNotFoundException if the file cannot be opened
+     */
+    public static OpeningsCsvReader open(File file) throws FileNotFoundException {
+        return new OpeningsCsvReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates a tokenizer positioned on the single record contained in a line of text.
+     *
+     * @param line one CSV line
+     * @return tokenizer whose current record is the parsed line
+     */
+    public static OpeningsCsvReader forLine(String line) {
+        OpeningsCsvReader reader = new OpeningsCsvReader(line.length());
+        reader.parseLine(line);
+        return reader;
+    }
+
+    /**
+     * Creates a tokenizer of single lines, to be reused with {@link #parseLine(String)}.
+     *
+     * @return tokenizer without a current record
+     */
+    public static OpeningsCsvReader forLines() {
+        return new OpeningsCsvReader(256);
+    }
+
+    /**
+     * Makes a line of text the current record, growing the buffers only if the line is longer
+     * than any before it. Only for tokenizers from {@link #forLine(String)} or {@link #forLines()}.
+     *
+     * @param line one CSV line
+     */
+    public void parseLine(String line) {
+        if (in != null) {
+            throw new IllegalStateException("The tokenizer reads a stream");
+        }
+        int length = line.length();
+        if (length > buffer.length) {
+            buffer = new char[length];
+        }
+        if (length > record.length) {
+            // The unquoted record is never longer than the line
+            record = new char[length];
+        }
+        line.getChars(0, length, buffer, 0);
+        position = 0;
+        limit = length;
+        try {
+            nextRecord();
+        } catch (IOException e) {
+            throw new IllegalStateException("Reading from a String cannot fail", e);
+        }
+    }
+
+    /**
+     * @return buffer holding the moves of the openings this tokenizer has read, or null if
+     *         each opening has a buffer of its own
+     */
+    MoveLines moveLines() {
+        return moveLines;
+    }
+
+    /**
+     * Restricts the tokenizer to some columns: the text of the others is skipped rather than
+     * copied, so they read as empty, and {@link #readOpenings(List)} creates openings with only
+     * these columns set. The ECO column is always kept so invalid openings can still be rejected.
+     *
+     * @param columns columns to keep
+     */
+    public void project(Set<OpeningsColumn> columns) {
+        projection = EnumSet.noneOf(OpeningsColumn.class);
+        projection.addAll(columns);
+        keep = new boolean[MOVES_LIST + 1];
+        keep[ECO] = true;
+        for (OpeningsColumn column : projection) {
+            keep[column.csvIndex()] = true;
+        }
+    }
+
+    /**
+     * Advances to the next record. Commas and line breaks inside quoted fields
+     * are kept as part of the field, and doubled quotes are unescaped.
+     *
+     * @return false if the end of the input was reached before another record
+     * @throws IOException if the underlying stream cannot be read
+     */
+    public boolean nextRecord() throws IOException {
+        recordLength = 0;
+        fieldCount = 0;
+        int start = 0;
+        boolean inQuotes = false;
+        boolean afterQuote = false;
+        boolean readAny = false;
+        boolean keepField = keeps(0);
+
+        while (true) {
+            if (position == limit && !fill()) {
+                if (!readAny) {
+                    return false;
+                }
+                break;
+            }
+            readAny = true;
+            char c = buffer[position++];
+
+            if (inQuotes) {
+                if (c == '"') {
+                    inQuotes = false;
+                    afterQuote = true;
+                } else if (keepField) {
+                    append(c);
+                }
+                continue;
+            }
+
+            if (c == '"') {
+                // A quote straight after a closing quote is an escaped quote character
+                if (afterQuote && keepField) {
+                    append('"');
+                }
+                inQuotes = true;
+            } else if (c == ',') {
+                endField(start);
+                start = recordLength;
+                keepField = keeps(fieldCount);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r' && keepField) {
+                append(c);
+            }
+            afterQuote = false;
+        }
+
+        endField(start);
+        return true;
+    }
+
+    /**
+     * Reads every remaining record as a ChessOpening.
+     * Filters out invalid openings (those with dashes in ECO codes) and skips blank lines and
+     * records that are truncated or have malformed numbers, counting each in {@link OpeningsMetrics}.
+     *
+     * @param openings list the valid openings are appended to, in file order
+     * @throws IOException if the underlying stream cannot be read
+     */
+    public void readOpenings(List<ChessOpening> openings) throws IOException {
+        // Counted locally and published once, so the loop does not touch shared counters
+        long read = 0;
+        long rejected = 0;
+        long errors = 0;
+        while (nextRecord()) {
+            if (recordLength == 0 && fieldCount == 1) {
+                continue;
+            }
+            read++;
+            if (fieldCount <= MOVES_LIST) {
+                errors++;
+                continue;
+            }
+            if (fieldContains(ECO, '-')) {
+                rejected++;
+                continue;
+            }
+            try {
+                openings.add(projection == null ? new ChessOpening(this) : new ChessOpening(this, projection));
+            } catch (NumberFormatException e) {
+                errors++;
+            }
+        }
+        OpeningsMetrics.add(OpeningsMetrics.Counter.ROWS_READ, read);
+        OpeningsMetrics.add(OpeningsMetrics.Counter.ROWS_REJECTED, rejected);
+        OpeningsMetrics.add(OpeningsMetrics.Counter.PARSE_ERRORS, errors);
+    }
+
+    /**
+     * @return number of fields in the current record
+     */
+    public int fieldCount() { return fieldCount; }
+
+    /**
+     * @param column field position in the current record
+     * @return the field's text, without CSV quoting
+     */
+    public String getString(int column) {
+        checkColumn(column);
+        return new String(record, fieldStart[column], fieldEnd[column] - fieldStart[column]);
+    }
+
+    /**
+     * Returns "white" or "black" for the colour field (in any case) without allocating,
+     * or the lower-cased field text for any other value.
+     *
+     * @param column field position in the current record
+     * @return lower-case colour name
+     */
+    public String getColor(int column) {
+        if (fieldEquals(column, "white")) {
+            return "white";
+        } else if (fieldEquals(column, "black")) {
+            return "black";
+        }
+        return getString(column).toLowerCase();
+    }
+
+    /**
+     * Parses a decimal integer directly from the record buffer.
+     *
+     * @param column field position in the current record
+     * @return the field's integer value
+     * @throws NumberFormatException if the field is not a valid int
+     */
+    public int getInt(int column) {
+        checkColumn(column);
+        int i = fieldStart[column];
+        int end = fieldEnd[column];
+        boolean negative = i < end && record[i] == '-';
+        if (negative || (i < end && record[i] == '+')) {
+            i++;
+        }
+        if (i == end) {
+            throw new NumberFormatException("For input string: \"" + getString(column) + "\"");
+        }
+
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = record[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("For input string: \"" + getString(column) + "\"");
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException("For input string: \"" + getString(column) + "\"");
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("For input string: \"" + getString(column) + "\"");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses a plain decimal number such as "40.8" directly from the record buffer.
+     * Values with exponents or too many digits to convert exactly fall back to
+     * {@link Double#parseDouble(String)}, so the result is always correctly rounded.
+     *
+     * @param column field position in the current record
+     * @return the field's double value
+     * @throws NumberFormatException if the field is not a valid number
+     */
+    public double getDouble(int column) {
+        checkColumn(column);
+        int i = fieldStart[column];
+        int end = fieldEnd[column];
+        boolean negative = i < end && record[i] == '-';
+        if (negative || (i < end && record[i] == '+')) {
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            char c = record[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (seenPoint) {
+                    scale++;
+                }
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+
+        // Only the simple case is handled here: m / 10^s is exact when m < 2^53 and s <= 22
+        if (i != end || digits == 0 || digits > 15 || scale >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(getString(column));
+        }
+        double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    /**
+     * @param column field position in the current record
+     * @param c character to look for
+     * @return true if the field contains the character
+     */
+    public boolean fieldContains(int column, char c) {
+        checkColumn(column);
+        for (int i = fieldStart[column]; i < fieldEnd[column]; i++) {
+            if (record[i] == c) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits a Python-style list field such as "['1.e4', 'Nf6', '2.e5']" into its
+     * move tokens, creating one String per move and nothing else.
+     *
+     * @param column field position in the current record
+     * @return the moves in the list
+     */
+    public String[] getMoves(int column) {
+        checkColumn(column);
+        return splitMoves(record, fieldStart[column], fieldEnd[column]);
+    }
+
+    /**
+     * Splits the text of a moves_list field, as {@link #getMoves(int)} does.
+     *
+     * @param field text of the field, without CSV quoting
+     * @return the moves in the list
+     */
+    static String[] splitMoves(String field) {
+        return splitMoves(field.toCharArray(), 0, field.length());
+    }
+
+    private static String[] splitMoves(char[] record, int start, int end) {
+        // First pass counts the tokens so the array is allocated at its final size
+        int count = 0;
+        boolean inToken = false;
+        for (int i = start; i < end; i++) {
+            boolean tokenChar = isMoveChar(record[i]);
+            if (tokenChar && !inToken) {
+                count++;
+            }
+            inToken = tokenChar;
+        }
+
+        String[] moves = new String[count];
+        int index = 0;
+        int tokenStart = -1;
+        for (int i = start; i <= end; i++) {
+            boolean tokenChar = i < end && isMoveChar(record[i]);
+            if (tokenChar && tokenStart < 0) {
+                tokenStart = i;
+            } else if (!tokenChar && tokenStart >= 0) {
+                moves[index++] = new String(record, tokenStart, i - tokenStart);
+                tokenStart = -1;
+            }
+        }
+        return moves;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+        }
+    }
+
+    private boolean keeps(int column) {
+        return keep == null || (column < keep.length && keep[column]);
+    }
+
+    private static boolean isMoveChar(char c) {
+        return c != '[' && c != ']' && c != '\'' && c != ',' && c != ' ';
+    }
+
+    private boolean fieldEquals(int column, String value) {
+        checkColumn(column);
+        int length = fieldEnd[column] - fieldStart[column];
+        if (length != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (Character.toLowerCase(record[fieldStart[column] + i]) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkColumn(int column) {
+        if (column < 0 || column >= fieldCount) {
+            throw new IndexOutOfBoundsException("Column " + column + " out of bounds for record with " + fieldCount + " fields");
+        }
+    }
+
+    private boolean fill() throws IOException {
+        // A line's characters are all in the buffer already
+        int read = in == null ? 0 : in.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            position = 0;
+            limit = 0;
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    private void append(char c) {
+        if (recordLength == record.length) {
+            char[] grown = new char[record.length * 2];
+            System.arraycopy(record, 0, grown, 0, recordLength);
+            record = grown;
+        }
+        record[recordLength++] = c;
+    }
+
+    private void endField(int start) {
+        if (fieldCount == fieldStart.length) {
+            int[] grownStart = new int[fieldCount * 2];
+            int[] grownEnd = new int[fieldCount * 2];
+            System.arraycopy(fieldStart, 0, grownStart, 0, fieldCount);
+            System.arraycopy(fieldEnd, 0, grownEnd, 0, fieldCount);
+            fieldStart = grownStart;
+            fieldEnd = grownEnd;
+        }
+        fieldStart[fieldCount] = start;
+        fieldEnd[fieldCount] = recordLength;
+        fieldCount++;
+    }
+}
@@ -0,0 +1,505 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A precomputed aggregation cube over color × ECO code × rating band × move-count bucket.
+ *
+ * Each non-empty cell holds the number of openings in it and, for every
+ * {@link OpeningsColumns.Measure}, the mean and the sum of squared deviations of its values and
+ * its co-moments with the other measures, updated with Welford's method as rows are added and
+ * combined with Chan's update as cells are merged, like {@link CovarianceAccumulator}. Any slice or roll-up (e.g. the ECO frequencies of black
+ * openings rated 2200 or more, or the correlation of move count and win % for white) is then
+ * summed from the cells it covers, whose number is bounded by the distinct combinations present
+ * rather than by the number of rows.
+ *
+ * Cells are sparse: they are stored in parallel primitive arrays in the order they were first
+ * filled, and found by their packed coordinates through an open-addressing table while building.
+ * The cube is built in parallel over row ranges on a fork-join pool, each range filling its own
+ * cube, and the partial cubes are merged. Statistics are per opening (row), like the analyses'
+ * correlations, not weighted by games.
+ */
+public final class OpeningsCube {
+    /** Default width of a rating band, in rating points. */
+    public static final int DEFAULT_RATING_BAND = 100;
+    /** Default width of a move-count bucket, in plies. */
+    public static final int DEFAULT_MOVE_BUCKET = 2;
+    /** ECO coordinate of openings without a valid code, left out of ECO slices and counts. */
+    private static final int UNKNOWN_ECO = 500;
+    private static final int MAX_BAND = (1 << 10) - 1;
+    private static final int MAX_BUCKET = (1 << 8) - 1;
+    // Rows per task of a parallel build
+    private static final int BUILD_GRAIN = 1 << 14;
+
+    private static final OpeningsColumns.Measure[] MEASURES = OpeningsColumns.Measure.values();
+    private static final int M = MEASURES.length;
+    // Per cell: the means, the sums of squared deviations Σ(x - x̄)², and the co-moments
+    // Σ(x - x̄)(y - ȳ) of each pair i < j
+    private static final int PAIRS = M * (M - 1) / 2;
+    private static final int STRIDE = 2 * M + PAIRS;
+
+    private final int ratingBand;
+    private final int moveBucket;
+
+    private int cells;
+    private int[] keys = new int[64];
+    private long[] count = new long[64];
+    private double[] moments = new double[64 * STRIDE];
+    // Cell index of each packed key, -1 for a free slot
+    private int[] table = newTable(128);
+
+    private OpeningsCube(int ratingBand, int moveBucket) {
+        this.ratingBand = ratingBand;
+        this.moveBucket = moveBucket;
+    }
+
+    /**
+     * Builds the cube with the default band and bucket widths on the common fork-join pool.
+     *
+     * @param columns openings of any storage
+     * @return the cube
+     */
+    public static OpeningsCube build(OpeningsColumns columns) {
+        return build(columns, DEFAULT_RATING_BAND, DEFAULT_MOVE_BUCKET, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Builds the cube in parallel.
+     *
+     * @param columns openings of any storage
+     * @param ratingBand width of a rating band; slices on rating must start and end on multiples of it
+     * @param moveBucket width of a move-count bucket; slices on move count must start and end on multiples of it
+     * @param pool pool the row ranges are aggregated on
+     * @return the cube
+     * @throws IllegalArgumentException if a width is not positive, or so narrow that the highest rating
+     *                                  needs more than 1024 bands or the longest line more than 256 buckets
+     */
+    public static OpeningsCube build(OpeningsColumns columns, int ratingBand, int moveBucket, ForkJoinPool pool) {
+        if (ratingBand < 1 || moveBucket < 1) {
+            throw new IllegalArgumentException("Band and bucket widths must be positive: " + ratingBand + ", " + moveBucket);
+        }
+        int maxRating = 0;
+        int maxMoves = 0;
+        for (int row = 0; row < columns.size(); row++) {
+            maxRating = Math.max(maxRating, columns.avgRating(row));
+            maxMoves = Math.max(maxMoves, columns.moveCount(row));
+        }
+        if (maxRating / ratingBand > MAX_BAND) {
+            throw new IllegalArgumentException("Rating band " + ratingBand + " is too narrow for ratings up to " + maxRating);
+        }
+        if (maxMoves / moveBucket > MAX_BUCKET) {
+            throw new IllegalArgumentException("Move bucket " + moveBucket + " is too narrow for lines of up to " + maxMoves + " moves");
+        }
+        try (OpeningsMetrics.Span span = OpeningsMetrics.start(OpeningsMetrics.Stage.AGGREGATION, "OpeningsCube.build")) {
+            OpeningsCube cube = pool.invoke(new BuildTask(columns, ratingBand, moveBucket, 0, columns.size()));
+            span.rows(columns.size());
+            return cube;
+        }
+    }
+
+    /**
+     * Aggregates a range of rows, splitting it in half while it is larger than BUILD_GRAIN.
+     */
+    @SuppressWarnings("serial")
+    private static final class BuildTask extends RecursiveTask<OpeningsCube> {
+        private final OpeningsColumns columns;
+        private final int ratingBand;
+        private final int moveBucket;
+        private final int from;
+        private final int to;
+
+        BuildTask(OpeningsColumns columns, int ratingBand, int moveBucket, int from, int to) {
+            this.columns = columns;
+            this.ratingBand = ratingBand;
+            this.moveBucket = moveBucket;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected OpeningsCube compute() {
+            if (to - from > BUILD_GRAIN) {
+                int mid = (from + to) >>> 1;
+                BuildTask right = new BuildTask(columns, ratingBand, moveBucket, mid, to);
+                right.fork();
+                OpeningsCube left = new BuildTask(columns, ratingBand, moveBucket, from, mid).compute();
+                left.merge(right.join());
+                return left;
+            }
+
+            OpeningsCube cube = new OpeningsCube(ratingBand, moveBucket);
+            double[] values = new double[M];
+            double[] deltas = new double[M];
+            for (int row = from; row < to; row++) {
+                for (int m = 0; m < M; m++) {
+                    values[m] = columns.value(MEASURES[m], row);
+                }
+                int eco = columns.ecoSlot(row);
+                int cell = cube.cell(cube.key(columns.color(row), eco < 0 ? UNKNOWN_ECO : eco,
+                                              columns.avgRating(row), columns.moveCount(row)));
+                cube.add(cell, values, deltas);
+            }
+            return cube;
+        }
+    }
+
+    /**
+     * Adds a row's values to a cell (Welford's update).
+     *
+     * @param deltas scratch array of length M
+     */
+    private void add(int cell, double[] values, double[] deltas) {
+        long n = ++count[cell];
+        int base = cell * STRIDE;
+        for (int i = 0; i < M; i++) {
+            deltas[i] = values[i] - moments[base + i];
+            moments[base + i] += deltas[i] / n;
+        }
+        int pair = base + 2 * M;
+        for (int i = 0; i < M; i++) {
+            moments[base + M + i] += deltas[i] * (values[i] - moments[base + i]);
+            for (int j = i + 1; j < M; j++) {
+                moments[pair++] += deltas[i] * (values[j] - moments[base + j]);
+            }
+        }
+    }
+
+    private void merge(OpeningsCube other) {
+        for (int c = 0; c < other.cells; c++) {
+            int cell = cell(other.keys[c]);
+            combine(moments, cell * STRIDE, count[cell], other.moments, c * STRIDE, other.count[c]);
+            count[cell] += other.count[c];
+        }
+    }
+
+    /**
+     * Combines the moments of a set of n values into those of a set of count values
+     * (Chan et al. parallel update, as {@link CovarianceAccumulator#merge}).
+     */
+    private static void combine(double[] into, int base, long count, double[] from, int fromBase, long n) {
+        if (n == 0) {
+            return;
+        }
+        if (count == 0) {
+            System.arraycopy(from, fromBase, into, base, STRIDE);
+            return;
+        }
+        long total = count + n;
+        double weight = (double) count * n / total;
+        int pair = base + 2 * M;
+        int fromPair = fromBase + 2 * M;
+        for (int i = 0; i < M; i++) {
+            double di = from[fromBase + i] - into[base + i];
+            into[base + M + i] += from[fromBase + M + i] + di * di * weight;
+            for (int j = i + 1; j < M; j++) {
+                double dj = from[fromBase + j] - into[base + j];
+                into[pair++] += from[fromPair++] + di * dj * weight;
+            }
+        }
+        // The means last, since the deviations above use the old ones
+        for (int i = 0; i < M; i++) {
+            into[base + i] += (from[fromBase + i] - into[base + i]) * n / total;
+        }
+    }
+
+    /**
+     * Packs a cell's coordinates: color in bits 27-28, ECO slot in 18-26, rating band in 8-17, move bucket in 0-7.
+     * build() has checked that the band and bucket fit their bits.
+     */
+    private int key(byte color, int eco, int rating, int moves) {
+        int band = Math.max(0, rating) / ratingBand;
+        int bucket = moves / moveBucket;
+        return (color << 27) | (eco << 18) | (band << 8) | bucket;
+    }
+
+    private static int colorOf(int key) { return key >>> 27; }
+    private static int ecoOf(int key) { return (key >>> 18) & 0x1FF; }
+    private static int bandOf(int key) { return (key >>> 8) & 0x3FF; }
+    private static int bucketOf(int key) { return key & 0xFF; }
+
+    /**
+     * @return index of the cell with the key, added empty if there is none
+     */
+    private int cell(int key) {
+        int mask = table.length - 1;
+        int slot = (key * 0x9E3779B9) >>> 7 & mask;
+        while (table[slot] >= 0) {
+            if (keys[table[slot]] == key) {
+                return table[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (cells == keys.length) {
+            keys = Arrays.copyOf(keys, cells * 2);
+            count = Arrays.copyOf(count, cells * 2);
+            moments = Arrays.copyOf(moments, cells * 2 * STRIDE);
+        }
+        keys[cells] = key;
+        table[slot] = cells;
+        if (++cells * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return cells - 1;
+    }
+
+    private void rehash(int capacity) {
+        table = newTable(capacity);
+        int mask = capacity - 1;
+        for (int c = 0; c < cells; c++) {
+            int slot = (keys[c] * 0x9E3779B9) >>> 7 & mask;
+            while (table[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = c;
+        }
+    }
+
+    private static int[] newTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, -1);
+        return table;
+    }
+
+    /**
+     * @return number of non-empty cells
+     */
+    public int cellCount() { return cells; }
+
+    public int getRatingBand() { return ratingBand; }
+    public int getMoveBucket() { return moveBucket; }
+
+    /**
+     * @return a slice covering the whole cube, to be narrowed with its methods
+     */
+    public Slice slice() {
+        return new Slice(this);
+    }
+
+    /**
+     * @return totals over every opening
+     */
+    public Aggregate rollUp() {
+        return slice().aggregate();
+    }
+
+    /**
+     * A selection of cells by ranges of their coordinates. Each method narrows the selection
+     * and returns the slice itself, e.g. {@code cube.slice().color(BLACK).ratingAtLeast(2200).ecoCounts()}.
+     */
+    public static final class Slice {
+        private final OpeningsCube cube;
+        private int color = -1;
+        private int ecoFrom = 0;
+        private int ecoTo = UNKNOWN_ECO; // inclusive
+        private int bandFrom = 0;
+        private int bandTo = MAX_BAND;
+        private int bucketFrom = 0;
+        private int bucketTo = MAX_BUCKET;
+
+        private Slice(OpeningsCube cube) {
+            this.cube = cube;
+        }
+
+        /**
+         * @param color OpeningsTable.WHITE, BLACK or OTHER_COLOR
+         * @return this slice, limited to the color
+         */
+        public Slice color(byte color) {
+            this.color = color;
+            return this;
+        }
+
+        /**
+         * @param from first ECO code, e.g. "B20"
+         * @param to last ECO code, inclusive
+         * @return this slice, limited to the codes in the range; openings without a valid code are left out
+         * @throws IllegalArgumentException if a code is not valid
+         */
+        public Slice eco(String from, String to) {
+            int first = OpeningsTable.ecoSlot(from);
+            int last = OpeningsTable.ecoSlot(to);
+            if (first < 0 || last < 0) {
+                throw new IllegalArgumentException("Invalid ECO range " + from + " to " + to);
+            }
+            ecoFrom = Math.max(ecoFrom, first);
+            ecoTo = Math.min(ecoTo, last);
+            return this;
+        }
+
+        /**
+         * @param rating lowest average rating, a multiple of the cube's rating band
+         * @return this slice, limited to openings rated at least that
+         * @throws IllegalArgumentException if the rating falls inside a band
+         */
+        public Slice ratingAtLeast(int rating) {
+            bandFrom = Math.max(bandFrom, boundary(rating, cube.ratingBand, "Rating"));
+            return this;
+        }
+
+        /**
+         * @param rating rating bound, a multiple of the cube's rating band
+         * @return this slice, limited to openings rated below that
+         * @throws IllegalArgumentException if the rating falls inside a band
+         */
+        public Slice ratingBelow(int rating) {
+            bandTo = Math.min(bandTo, boundary(rating, cube.ratingBand, "Rating") - 1);
+            return this;
+        }
+
+        /**
+         * @param moves lowest number of moves, a multiple of the cube's move bucket
+         * @return this slice, limited to openings at least that long
+         * @throws IllegalArgumentException if the count falls inside a bucket
+         */
+        public Slice movesAtLeast(int moves) {
+            bucketFrom = Math.max(bucketFrom, boundary(moves, cube.moveBucket, "Move count"));
+            return this;
+        }
+
+        /**
+         * @param moves move count bound, a multiple of the cube's move bucket
+         * @return this slice, limited to openings shorter than that
+         * @throws IllegalArgumentException if the count falls inside a bucket
+         */
+        public Slice movesBelow(int moves) {
+            bucketTo = Math.min(bucketTo, boundary(moves, cube.moveBucket, "Move count") - 1);
+            return this;
+        }
+
+        private static int boundary(int value, int width, String what) {
+            if (value < 0 || value % width != 0) {
+                throw new IllegalArgumentException(what + " bound " + value + " is not a multiple of the cube's width " + width);
+            }
+            return value / width;
+        }
+
+        private boolean contains(int key) {
+            int eco = ecoOf(key);
+            int band = bandOf(key);
+            int bucket = bucketOf(key);
+            return (color < 0 || colorOf(key) == color)
+                && eco >= ecoFrom && eco <= ecoTo
+                && band >= bandFrom && band <= bandTo
+                && bucket >= bucketFrom && bucket <= bucketTo;
+        }
+
+        /**
+         * @return totals over the openings in the slice
+         */
+        public Aggregate aggregate() {
+            Aggregate total = new Aggregate();
+            for (int c = 0; c < cube.cells; c++) {
+                if (contains(cube.keys[c])) {
+                    combine(total.moments, 0, total.count, cube.moments, c * STRIDE, cube.count[c]);
+                    total.count += cube.count[c];
+                }
+            }
+            return total;
+        }
+
+        /**
+         * @return number of openings in the slice per ECO slot, as {@link ChessOpeningsAnalysis#countEco(OpeningsTable)}
+         */
+        public int[] ecoCounts() {
+            int[] counts = new int[UNKNOWN_ECO];
+            for (int c = 0; c < cube.cells; c++) {
+                int key = cube.keys[c];
+                if (ecoOf(key) != UNKNOWN_ECO && contains(key)) {
+                    counts[ecoOf(key)] += (int) cube.count[c];
+                }
+            }
+            return counts;
+        }
+
+        /**
+         * @return ECO frequencies of the openings in the slice, as {@link ChessOpeningsAnalysis#findOpeningFreq(OpeningsTable)}
+         */
+        public double[] ecoFrequencies() {
+            int[] counts = ecoCounts();
+            double[] frequencies = new double[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                frequencies[i] = counts[i] / 500.0;
+            }
+            return frequencies;
+        }
+    }
+
+    /**
+     * Moments of a set of cells, from which counts, means, variances and correlations are derived.
+     */
+    public static final class Aggregate {
+        private long count;
+        private final double[] moments = new double[STRIDE];
+
+        private Aggregate() {}
+
+        /**
+         * @return number of openings
+         */
+        public long getCount() { return count; }
+
+        /**
+         * @return games played with the openings
+         */
+        public long getTotalGames() {
+            return Math.round(sum(OpeningsColumns.Measure.NUM_GAMES));
+        }
+
+        /**
+         * @param measure column
+         * @return sum of the measure over the openings
+         */
+        public double sum(OpeningsColumns.Measure measure) {
+            return count == 0 ? 0 : moments[measure.ordinal()] * count;
+        }
+
+        /**
+         * @param measure column
+         * @return mean of the measure, NaN if there are no openings
+         */
+        public double mean(OpeningsColumns.Measure measure) {
+            return count == 0 ? Double.NaN : moments[measure.ordinal()];
+        }
+
+        /**
+         * @param measure column
+         * @return sample variance of the measure, NaN with fewer than two openings
+         */
+        public double variance(OpeningsColumns.Measure measure) {
+            return count < 2 ? Double.NaN : moments[M + measure.ordinal()] / (count - 1);
+        }
+
+        /**
+         * @param x first column
+         * @param y second column
+         * @return Pearson correlation of the two measures over the openings, NaN if either is constant
+         */
+        public double correlation(OpeningsColumns.Measure x, OpeningsColumns.Measure y) {
+            int i = x.ordinal();
+            int j = y.ordinal();
+            double sxx = moments[M + i];
+            double syy = moments[M + j];
+            return sxx <= 0 || syy <= 0 ? Double.NaN : coMoment(i, j) / Math.sqrt(sxx * syy);
+        }
+
+        /**
+         * @return Σ(x - x̄)(y - ȳ) for measures i and j
+         */
+        private double coMoment(int i, int j) {
+            if (i == j) {
+                return moments[M + i];
+            }
+            int a = Math.min(i, j);
+            int b = Math.max(i, j);
+            // Pairs are stored row by row: (0,1), (0,2), ..., (1,2), ...
+            return moments[2 * M + a * (2 * M - a - 1) / 2 + (b - a - 1)];
+        }
+
+        @Override
+        public String toString() {
+            return count + " openings, " + getTotalGames() + " games, win% " + mean(OpeningsColumns.Measure.WIN_PERCENT)
+                    + ", rating " + mean(OpeningsColumns.Measure.AVG_RATING);
+        }
+    }
+}
@@ -0,0 +1,382 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An immutable snapshot of the chess openings loaded from the CSV file.
+ * The snapshot is parsed once and shared by every analysis method; it is only
+ * reloaded when the size or last-modified time of the source file changes.
+ * The path may also name a directory or glob of CSV shards, which are loaded
+ * and merged by {@link ShardedIngest}. A .pgn file of raw games is aggregated
+ * into openings by {@link PgnIngest}.
+ * Apart from the time their shards were last checked, instances never change after construction,
+ * so they can be shared freely between threads.
+ */
+public final class OpeningsDataset {
+    /** System property that overrides the location of the openings file. */
+    public static final String PATH_PROPERTY = "chess.openings.csv";
+    private static final String DEFAULT_PATH = "data/openings.csv";
+    /** System property that turns the binary snapshot cache off when set to false. */
+    public static final String SNAPSHOT_PROPERTY = "chess.openings.snapshot";
+    private static final boolean SNAPSHOTS_ENABLED = !"false".equalsIgnoreCase(System.getProperty(SNAPSHOT_PROPERTY));
+    /** System property with the minimum time in milliseconds between two checks of a directory or glob for changed shards. */
+    public static final String SHARD_CHECK_PROPERTY = "chess.openings.shardCheckMillis";
+    private static final long SHARD_CHECK_NANOS = Long.getLong(SHARD_CHECK_PROPERTY, 1000) * 1_000_000;
+    // Files at least this large are parsed in parallel chunks
+    private static final long PARALLEL_LOAD_THRESHOLD = 16L << 20;
+
+    private static volatile String openingsPath = System.getProperty(PATH_PROPERTY, DEFAULT_PATH);
+
+    // Most recently loaded snapshot, replaced as a whole when the file changes
+    private static volatile OpeningsDataset current;
+    // Number of snapshots loaded so far, used as their version
+    private static final AtomicLong loads = new AtomicLong();
+
+    private final String path;
+    private final long version;
+    private final long fileSize;
+    private final long lastModified;
+    // Paths, sizes and modification times of the shards of a sharded dataset, or of the lines
+    // file a PGN file was matched against; null for a single CSV file
+    private final ShardedIngest.SourceState shardState;
+    // Row objects stay the primary storage because the move trie, the HTTP server and the
+    // snapshot writer read the move lists; the table adds about 27 bytes per row to their 224
+    private final List<ChessOpening> openings;
+    // Columnar copy of the openings, built on first use
+    private volatile OpeningsTable table;
+    // Move-prefix index of the openings, built on first use
+    private volatile MoveTrie moveTrie;
+    private volatile PositionIndex positionIndex;
+    private volatile OpeningsCube cube;
+    // System.nanoTime() when the shards were last found unchanged
+    private volatile long shardsCheckedAt;
+
+    private OpeningsDataset(String path, long fileSize, long lastModified, ShardedIngest.SourceState shardState,
+                            List<ChessOpening> openings) {
+        this.path = path;
+        this.version = loads.incrementAndGet();
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.shardState = shardState;
+        this.openings = Collections.unmodifiableList(openings);
+        this.shardsCheckedAt = System.nanoTime();
+    }
+
+    /**
+     * Returns the shared snapshot of the openings file, loading it on first use
+     * and reloading it only if the file's size or modification time has changed.
+     *
+     * @return the current dataset snapshot
+     * @throws FileNotFoundException if the openings.csv file is not found
+     */
+    public static OpeningsDataset get() throws FileNotFoundException {
+        String path = openingsPath;
+        OpeningsDataset dataset = current;
+        if (dataset != null && dataset.isCurrent(path)) {
+            return dataset;
+        }
+
+        synchronized (OpeningsDataset.class) {
+            // Another thread may have reloaded the file while we were waiting
+            dataset = current;
+            if (dataset == null || !dataset.isCurrent(path)) {
+                dataset = ShardedIngest.isSharded(path) ? loadShards(path) : load(new File(path));
+                current = dataset;
+            }
+            return dataset;
+        }
+    }
+
+    /**
+     * Loads a single openings file.
+     */
+    private static OpeningsDataset load(File file) throws FileNotFoundException {
+        try (OpeningsMetrics.Span span = OpeningsMetrics.start(OpeningsMetrics.Stage.LOAD, "OpeningsDataset.load")) {
+            // Record the file's state before reading so a concurrent write triggers another reload
+            long fileSize = file.length();
+            long lastModified = file.lastModified();
+            ShardedIngest.SourceState linesState = linesState(file);
+            List<ChessOpening> openings = readFile(file, fileSize, lastModified);
+            span.rows(openings.size());
+            return new OpeningsDataset(file.getPath(), fileSize, lastModified, linesState, openings);
+        }
+    }
+
+    /**
+     * Loads and merges the shards a directory or glob refers to.
+     */
+    private static OpeningsDataset loadShards(String path) throws FileNotFoundException {
+        List<File> shards = ShardedIngest.resolve(path);
+        ShardedIngest.SourceState state = ShardedIngest.sourceState(shards);
+        ArrayList<ChessOpening> openings = ShardedIngest.load(shards, ForkJoinPool.commonPool());
+        openings.trimToSize();
+        return new OpeningsDataset(new File(path).getPath(), state.size(), state.lastModified(), state, openings);
+    }
+
+    /**
+     * Reads the openings of one file, as {@link #readFile(File, long, long)} with its current size and modification time.
+     *
+     * @param file openings.csv-style file
+     * @return valid openings in file order
+     * @throws FileNotFoundException if the file is not found
+     */
+    static List<ChessOpening> readFile(File file) throws FileNotFoundException {
+        return readFile(file, file.length(), file.lastModified());
+    }
+
+    /**
+     * Reads the openings from the file's binary snapshot when it is up to date, and otherwise
+     * parses the openings file (in parallel chunks when it is large, or as games when it is a .pgn file)
+     * and rewrites the snapshot.
+     * Filters out invalid openings (those with dashes in ECO codes).
+     */
+    private static List<ChessOpening> readFile(File file, long fileSize, long lastModified) throws FileNotFoundException {
+        if (!file.isFile()) {
+            throw new FileNotFoundException(file.getPath());
+        }
+
+        File snapshot = OpeningsSnapshot.snapshotFile(file);
+        // A PGN file's openings also depend on the lines its games are matched against
+        File lines = file.getName().endsWith(".pgn") ? PgnIngest.linesFile() : null;
+        long linesSize = lines == null ? 0 : lines.length();
+        long linesLastModified = lines == null ? 0 : lines.lastModified();
+        if (SNAPSHOTS_ENABLED) {
+            List<ChessOpening> cached = OpeningsSnapshot.read(snapshot, fileSize, lastModified, lines);
+            if (cached != null) {
+                OpeningsMetrics.add(OpeningsMetrics.Counter.BYTES_READ, snapshot.length());
+                return cached;
+            }
+        }
+
+        List<ChessOpening> openings = parse(file, fileSize);
+        OpeningsMetrics.add(OpeningsMetrics.Counter.BYTES_READ, fileSize);
+
+        // Not written if the lines file changed while it was read, as the snapshot would record its new state
+        if (SNAPSHOTS_ENABLED && (lines == null || (lines.length() == linesSize && lines.lastModified() == linesLastModified))) {
+            try {
+                OpeningsSnapshot.write(snapshot, openings, fileSize, lastModified, lines);
+            } catch (IOException e) {
+                // The snapshot only speeds up later runs; without it they parse the CSV again
+            }
+        }
+        return openings;
+    }
+
+    /**
+     * Parses the openings file, in parallel chunks when it is large.
+     */
+    private static ArrayList<ChessOpening> parse(File file, long fileSize) throws FileNotFoundException {
+        try (OpeningsMetrics.Span span = OpeningsMetrics.start(OpeningsMetrics.Stage.PARSE, "OpeningsDataset.parse")) {
+            ArrayList<ChessOpening> openings;
+
+            if (file.getName().endsWith(".pgn")) {
+                openings = PgnIngest.load(file);
+            } else if (fileSize >= PARALLEL_LOAD_THRESHOLD) {
+                openings = ParallelOpeningsLoader.load(file);
+            } else {
+                openings = new ArrayList<>();
+                try (OpeningsCsvReader reader = OpeningsCsvReader.open(file)) {
+                    // Skip the header line
+                    reader.nextRecord();
+
+                    // Read each openings record and create ChessOpening objects
+                    reader.readOpenings(openings);
+                } catch (FileNotFoundException e) {
+                    throw e;
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not read " + file, e);
+                }
+            }
+            openings.trimToSize();
+            span.rows(openings.size());
+            return openings;
+        }
+    }
+
+    /**
+     * Loads only some columns of an openings file, for queries that need few of them: the other
+     * columns are skipped by the tokenizer, and the moves (when requested) are decoded on first use.
+     * The result is not shared or cached, and no snapshot is read or written.
+     *
+     * @param file openings.csv-style file
+     * @param columns columns to load; the other fields of each opening are left null or 0
+     * @return valid openings in file order
+     * @throws FileNotFoundException if the file is not found
+     */
+    public static ArrayList<ChessOpening> loadProjected(File file, Set<OpeningsColumn> columns) throws FileNotFoundException {
+        try (OpeningsMetrics.Span span = OpeningsMetrics.start(OpeningsMetrics.Stage.PARSE, "OpeningsDataset.loadProjected")) {
+            ArrayList<ChessOpening> openings;
+            if (file.length() >= PARALLEL_LOAD_THRESHOLD) {
+                openings = ParallelOpeningsLoader.load(file, ForkJoinPool.commonPool(), columns);
+            } else {
+                openings = new ArrayList<>();
+                try (OpeningsCsvReader reader = OpeningsCsvReader.open(file)) {
+                    reader.project(columns);
+                    reader.nextRecord();
+                    reader.readOpenings(openings);
+                } catch (FileNotFoundException e) {
+                    throw e;
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not read " + file, e);
+                }
+            }
+            OpeningsMetrics.add(OpeningsMetrics.Counter.BYTES_READ, file.length());
+            openings.trimToSize();
+            span.rows(openings.size());
+            return openings;
+        }
+    }
+
+    /**
+     * Changes the openings file used by {@link #get()}. The new file is loaded on the next call.
+     *
+     * @param path location of an openings.csv-style file, or a directory or glob of them
+     */
+    public static void setPath(String path) {
+        openingsPath = path;
+    }
+
+    /**
+     * Drops the shared snapshot so the next {@link #get()} loads the file again,
+     * e.g. to time a full load in a benchmark.
+     */
+    static void invalidate() {
+        current = null;
+    }
+
+    /**
+     * @return location of the openings file used by {@link #get()}
+     */
+    public static String getConfiguredPath() {
+        return openingsPath;
+    }
+
+    /**
+     * @return state of the lines file a PGN file is matched against, or null for a CSV file
+     */
+    private static ShardedIngest.SourceState linesState(File file) {
+        return file.getName().endsWith(".pgn") ? ShardedIngest.sourceState(List.of(PgnIngest.linesFile())) : null;
+    }
+
+    private boolean isCurrent(String path) {
+        if (!new File(path).getPath().equals(this.path)) {
+            return false;
+        }
+        if (!ShardedIngest.isSharded(path)) {
+            File file = new File(path);
+            return file.length() == fileSize && file.lastModified() == lastModified
+                    && Objects.equals(linesState(file), shardState);
+        }
+        // Listing and stating every shard is too slow to repeat on each get(), so it is
+        // done at most once per SHARD_CHECK_NANOS
+        long now = System.nanoTime();
+        if (now - shardsCheckedAt < SHARD_CHECK_NANOS) {
+            return true;
+        }
+        try {
+            if (!ShardedIngest.sourceState(ShardedIngest.resolve(path)).equals(shardState)) {
+                return false;
+            }
+            shardsCheckedAt = now;
+            return true;
+        } catch (FileNotFoundException e) {
+            // Let the reload report the missing shards
+            return false;
+        }
+    }
+
+    // Getters
+    public String getPath() { return path; }
+    public long getFileSize() { return fileSize; }
+    public long getLastModified() { return lastModified; }
+    public int size() { return openings.size(); }
+
+    /**
+     * @return number identifying this snapshot; every reload gets a higher version
+     */
+    public long getVersion() { return version; }
+
+    /**
+     * @return read-only view of the valid openings, in file order
+     */
+    public List<ChessOpening> getOpenings() { return openings; }
+
+    /**
+     * Returns the openings in columnar form. Row i of the table is getOpenings().get(i).
+     * The table is a copy kept next to the openings rather than a replacement for them, so it
+     * speeds up scans without lowering the dataset's heap use; on-heap, the columns take about
+     * an eighth of the memory of the row objects.
+     *
+     * @return the dataset's table, built on first use
+     */
+    public OpeningsTable getTable() {
+        OpeningsTable result = table;
+        if (result == null) {
+            // Building twice under a race is harmless: both tables hold the same data
+            result = OpeningsTable.from(openings);
+            table = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return index of the openings by ECO code; its row ids are positions in getOpenings()
+     */
+    public EcoIndex getEcoIndex() {
+        return getTable().getEcoIndex();
+    }
+
+    /**
+     * Returns a prefix tree over the openings' move lists for prefix and continuation queries.
+     *
+     * @return the dataset's move trie, built on first use
+     */
+    public MoveTrie getMoveTrie() {
+        MoveTrie result = moveTrie;
+        if (result == null) {
+            result = MoveTrie.build(openings);
+            moveTrie = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns an index of the positions the openings' move lists reach, for statistics that
+     * merge transpositions and for finding the openings that reach a position.
+     *
+     * @return the dataset's position index, built on first use
+     */
+    public PositionIndex getPositionIndex() {
+        PositionIndex result = positionIndex;
+        if (result == null) {
+            result = PositionIndex.build(getMoveTrie());
+            positionIndex = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the openings aggregated by color, ECO code, rating band and move-count bucket,
+     * for slices and roll-ups that do not need to scan the rows. Like the table and the indexes,
+     * the cube is built on first use rather than with the dataset, so loads whose callers never
+     * slice it do not pay for the aggregation.
+     *
+     * @return the dataset's cube, built on first use
+     */
+    public OpeningsCube getCube() {
+        OpeningsCube result = cube;
+        if (result == null) {
+            result = OpeningsCube.build(getTable());
+            cube = result;
+        }
+        return result;
+    }
+}
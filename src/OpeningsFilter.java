@@ -0,0 +1,267 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+
+/**
+ * A composable condition on the rows of an {@link OpeningsTable}.
+ *
+ * Each condition is evaluated a column at a time into a bitmap over the table's row ids,
+ * written a 64-bit word at a time, and AND/OR/NOT combinations are word-wise operations
+ * on those bitmaps. Every filter has a canonical key (AND and OR ignore the order of their
+ * operands), and a table caches the bitmaps of recently evaluated keys, up to 256 bitmaps or
+ * 16 MB per table, so repeated and overlapping filters over the same table reuse earlier work.
+ *
+ * Filters are immutable and can be shared between threads.
+ */
+public final class OpeningsFilter {
+    private static final OpeningsFilter ALL = new OpeningsFilter("all", table -> {
+        BitSet bits = new BitSet(table.size());
+        bits.set(0, table.size());
+        return bits;
+    });
+
+    private final String key;
+    private final Function<OpeningsTable, BitSet> evaluator;
+
+    private OpeningsFilter(String key, Function<OpeningsTable, BitSet> evaluator) {
+        this.key = key;
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * @return filter matching every row
+     */
+    public static OpeningsFilter all() {
+        return ALL;
+    }
+
+    /**
+     * @param color OpeningsTable.WHITE, BLACK or OTHER_COLOR
+     * @return filter matching rows of that color
+     */
+    public static OpeningsFilter color(byte color) {
+        return new OpeningsFilter("color=" + color, table -> {
+            byte[] column = table.color();
+            return scan(table.size(), row -> column[row] == color);
+        });
+    }
+
+    /**
+     * @param min lowest win percentage (inclusive)
+     * @param max highest win percentage (inclusive)
+     * @return filter matching rows whose player win percentage is in the range
+     */
+    public static OpeningsFilter winPercent(double min, double max) {
+        return new OpeningsFilter("win=[" + min + "," + max + "]", table -> {
+            double[] column = table.winPercent();
+            return scan(table.size(), row -> column[row] >= min && column[row] <= max);
+        });
+    }
+
+    /**
+     * @param min lowest win percentage (inclusive)
+     * @return filter matching rows whose player win percentage is at least min
+     */
+    public static OpeningsFilter winPercentAtLeast(double min) {
+        return winPercent(min, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * @param min lowest average rating (inclusive)
+     * @param max highest average rating (inclusive)
+     * @return filter matching rows whose average player rating is in the range
+     */
+    public static OpeningsFilter rating(int min, int max) {
+        return new OpeningsFilter("rating=[" + min + "," + max + "]", table -> {
+            int[] column = table.avgRating();
+            return scan(table.size(), row -> column[row] >= min && column[row] <= max);
+        });
+    }
+
+    /**
+     * @param min lowest number of games (inclusive)
+     * @return filter matching rows played in at least min games
+     */
+    public static OpeningsFilter minGames(int min) {
+        return new OpeningsFilter("games>=" + min, table -> {
+            int[] column = table.numGames();
+            return scan(table.size(), row -> column[row] >= min);
+        });
+    }
+
+    /**
+     * @param min lowest number of moves (inclusive)
+     * @param max highest number of moves (inclusive)
+     * @return filter matching rows whose move list length is in the range
+     */
+    public static OpeningsFilter moveCount(int min, int max) {
+        return new OpeningsFilter("moves=[" + min + "," + max + "]", table -> {
+            short[] column = table.moveCount();
+            return scan(table.size(), row -> column[row] >= min && column[row] <= max);
+        });
+    }
+
+    /**
+     * Matches a range of ECO codes using the table's {@link EcoIndex}, so only
+     * the matching rows are visited.
+     *
+     * @param from first ECO code of the range, e.g. "B20"
+     * @param to last ECO code of the range (inclusive), e.g. "B99"
+     * @return filter matching rows whose ECO code is in the range
+     * @throws IllegalArgumentException if either code is not a letter A-E followed by a number below 100
+     */
+    public static OpeningsFilter eco(String from, String to) {
+        if (OpeningsTable.ecoSlot(from) < 0 || OpeningsTable.ecoSlot(to) < 0) {
+            throw new IllegalArgumentException("Invalid ECO range " + from + "-" + to);
+        }
+        return new OpeningsFilter("eco=[" + from + "," + to + "]", table -> {
+            BitSet bits = new BitSet(table.size());
+            for (int row : table.getEcoIndex().rows(from, to)) {
+                bits.set(row);
+            }
+            return bits;
+        });
+    }
+
+    /**
+     * @param filters conditions that must all hold
+     * @return filter matching rows that match every operand; all() if there are none
+     */
+    public static OpeningsFilter and(OpeningsFilter... filters) {
+        if (filters.length == 0) {
+            return ALL;
+        }
+        return new OpeningsFilter(combinedKey("and", filters), table -> {
+            BitSet bits = (BitSet) filters[0].bitmap(table).clone();
+            for (int i = 1; i < filters.length && !bits.isEmpty(); i++) {
+                bits.and(filters[i].bitmap(table));
+            }
+            return bits;
+        });
+    }
+
+    /**
+     * @param filters alternative conditions
+     * @return filter matching rows that match any operand; matches nothing if there are none
+     */
+    public static OpeningsFilter or(OpeningsFilter... filters) {
+        return new OpeningsFilter(combinedKey("or", filters), table -> {
+            BitSet bits = new BitSet(table.size());
+            for (OpeningsFilter filter : filters) {
+                bits.or(filter.bitmap(table));
+            }
+            return bits;
+        });
+    }
+
+    /**
+     * @param filter condition to negate
+     * @return filter matching the rows the operand does not match
+     */
+    public static OpeningsFilter not(OpeningsFilter filter) {
+        return new OpeningsFilter("not(" + filter.key + ")", table -> {
+            BitSet bits = (BitSet) filter.bitmap(table).clone();
+            bits.flip(0, table.size());
+            return bits;
+        });
+    }
+
+    /**
+     * @return not(this)
+     */
+    public OpeningsFilter negate() {
+        return not(this);
+    }
+
+    /**
+     * @param table table to evaluate the filter on
+     * @return bitmap with a bit set for each matching row id; a copy the caller may modify
+     */
+    public BitSet evaluate(OpeningsTable table) {
+        return (BitSet) bitmap(table).clone();
+    }
+
+    /**
+     * @param table table to evaluate the filter on
+     * @return number of matching rows
+     */
+    public int count(OpeningsTable table) {
+        return bitmap(table).cardinality();
+    }
+
+    /**
+     * @param table table to evaluate the filter on
+     * @return matching row ids, in ascending order
+     */
+    public int[] rows(OpeningsTable table) {
+        return bitmap(table).stream().toArray();
+    }
+
+    /**
+     * @param table table to evaluate the filter on
+     * @return new table holding the matching rows, in their original order
+     */
+    public OpeningsTable select(OpeningsTable table) {
+        return table.select(rows(table));
+    }
+
+    /**
+     * @return canonical form of the filter, equal for filters that match the same conditions
+     */
+    public String key() { return key; }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof OpeningsFilter && key.equals(((OpeningsFilter) other).key);
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return key;
+    }
+
+    // The cached bitmap of this filter, shared and never modified
+    private BitSet bitmap(OpeningsTable table) {
+        return table.filterBitmap(key, () -> {
+            try (OpeningsMetrics.Span span = OpeningsMetrics.start(OpeningsMetrics.Stage.FILTER, "OpeningsFilter.evaluate")) {
+                span.rows(table.size());
+                return evaluator.apply(table);
+            }
+        });
+    }
+
+    /**
+     * Builds a bitmap a 64-row word at a time from a test on each row id.
+     */
+    private static BitSet scan(int size, IntPredicate test) {
+        long[] words = new long[(size + 63) >>> 6];
+        for (int w = 0; w < words.length; w++) {
+            int base = w << 6;
+            int end = Math.min(64, size - base);
+            long word = 0;
+            for (int bit = 0; bit < end; bit++) {
+                if (test.test(base + bit)) {
+                    word |= 1L << bit;
+                }
+            }
+            words[w] = word;
+        }
+        return BitSet.valueOf(words);
+    }
+
+    // AND and OR are commutative, so their operand keys are sorted to make equal filters share a key
+    private static String combinedKey(String operator, OpeningsFilter[] filters) {
+        String[] keys = new String[filters.length];
+        for (int i = 0; i < filters.length; i++) {
+            keys[i] = filters[i].key;
+        }
+        Arrays.sort(keys);
+        return operator + "(" + String.join(",", keys) + ")";
+    }
+}
@@ -0,0 +1,438 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the analyses over HTTP as JSON, using the JDK's built-in HttpServer and the shared
+ * in-memory {@link OpeningsDataset}.
+ *
+ * Endpoints (all GET):
+ * <pre>
+ *   /openings     openings matching color, minWin, maxWin, eco (e.g. B20-B99), minRating, maxRating,
+ *                 minGames, minMoves and maxMoves; at most limit rows (default 100)
+ *   /eco          count, games and games-weighted win % of an ECO range (from, to), with per-code counts
+ *   /correlation  Pearson correlation of win % with x=moves or x=games, for one color
+ *   /top          the top percent (default 25) of a color's openings by rating, highest first
+ *   /             dataset version and size
+ * </pre>
+ *
+ * Responses are cached in an {@link AnalysisCache} by dataset version, path and sorted query
+ * parameters, and carry an ETag that is a digest of the body, so repeated queries skip both the
+ * computation and, with If-None-Match, the body, and a client's ETag stays valid across restarts
+ * exactly as long as the answer does. Concurrent requests for the same uncached key wait for a
+ * single computation instead of each running it; a reload of the dataset drops the responses of
+ * the old version, and otherwise rarely requested responses are evicted before popular ones. Requests run on virtual threads when the JVM has them
+ * (Java 21 and later) and on a fixed thread pool otherwise.
+ *
+ * Usage: java [-Dchess.openings.port=8080] OpeningsHttpServer
+ */
+public final class OpeningsHttpServer {
+    /** System property with the port to listen on. */
+    public static final String PORT_PROPERTY = "chess.openings.port";
+    private static final int DEFAULT_PORT = 8080;
+    private static final int MAX_CACHED_RESPONSES = 1024;
+    private static final int DEFAULT_LIMIT = 100;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    // Successful responses by dataset version, path and parameters
+    private final AnalysisCache responses = new AnalysisCache(MAX_CACHED_RESPONSES);
+
+    /**
+     * Creates a server listening on the given port. It does not accept requests until {@link #start()}.
+     *
+     * @param port port to listen on, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public OpeningsHttpServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        executor = newExecutor();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public static void main(String[] args) throws IOException {
+        OpeningsHttpServer server = new OpeningsHttpServer(Integer.getInteger(PORT_PROPERTY, DEFAULT_PORT));
+        server.start();
+        System.out.println("Serving " + OpeningsDataset.getConfiguredPath() + " on port " + server.getPort());
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server, waiting up to the given time for requests in progress.
+     *
+     * @param delaySeconds seconds to wait
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    /**
+     * @return port the server listens on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Uses Executors.newVirtualThreadPerTaskExecutor when the runtime has it; it is looked up
+     * reflectively so the server also builds and runs on Java 17.
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            int threads = Math.max(8, Runtime.getRuntime().availableProcessors() * 4);
+            return Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "openings-http");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                send(exchange, new Response(405, error("Method not allowed"), null));
+                return;
+            }
+
+            Response response;
+            try {
+                OpeningsDataset dataset = OpeningsDataset.get();
+                String path = exchange.getRequestURI().getPath();
+                TreeMap<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+                if (isEndpoint(path)) {
+                    // Failed computations throw, so only successful responses are cached
+                    response = responses.get(dataset, "response", () -> compute(dataset, path, params), path, params);
+                } else {
+                    response = new Response(404, error("Unknown endpoint " + path), null);
+                }
+            } catch (IllegalArgumentException e) {
+                response = new Response(400, error(e.getMessage()), null);
+            } catch (FileNotFoundException e) {
+                response = new Response(503, error("Openings file not found: " + e.getMessage()), null);
+            } catch (RuntimeException e) {
+                response = new Response(500, error(String.valueOf(e)), null);
+            }
+
+            if (response.etag != null) {
+                exchange.getResponseHeaders().set("ETag", response.etag);
+                String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+                if (response.etag.equals(ifNoneMatch)) {
+                    exchange.sendResponseHeaders(304, -1);
+                    return;
+                }
+            }
+            send(exchange, response);
+        }
+    }
+
+    private static boolean isEndpoint(String path) {
+        switch (path) {
+            case "/":
+            case "/openings":
+            case "/eco":
+            case "/correlation":
+            case "/top":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static Response compute(OpeningsDataset dataset, String path, Map<String, String> params) {
+        String body;
+        switch (path) {
+            case "/":
+                body = "{\"path\": " + quote(dataset.getPath()) + ", \"version\": " + dataset.getVersion() + ", \"rows\": " + dataset.size() + "}";
+                break;
+            case "/openings":
+                body = openings(dataset, params);
+                break;
+            case "/eco":
+                body = eco(dataset, params);
+                break;
+            case "/correlation":
+                body = correlation(dataset, params);
+                break;
+            case "/top":
+                body = top(dataset, params);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown endpoint " + path);
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        return new Response(200, bytes, etag(bytes));
+    }
+
+    /**
+     * @return quoted hex of the first 16 bytes of the body's SHA-256 digest
+     */
+    private static String etag(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            StringBuilder etag = new StringBuilder(34).append('"');
+            for (int i = 0; i < 16; i++) {
+                etag.append(Character.forDigit((digest[i] >> 4) & 0xF, 16)).append(Character.forDigit(digest[i] & 0xF, 16));
+            }
+            return etag.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String openings(OpeningsDataset dataset, Map<String, String> params) {
+        OpeningsTable table = dataset.getTable();
+        int[] rows = filter(params).rows(table);
+        int limit = intParam(params, "limit", DEFAULT_LIMIT);
+
+        StringBuilder json = new StringBuilder("{\"count\": ").append(rows.length).append(", \"openings\": [");
+        for (int i = 0; i < Math.min(limit, rows.length); i++) {
+            if (i > 0) {
+                json.append(", ");
+            }
+            appendOpening(json, dataset.getOpenings().get(table.sourceRow()[rows[i]]));
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String eco(OpeningsDataset dataset, Map<String, String> params) {
+        String from = params.getOrDefault("from", "A00");
+        String to = params.getOrDefault("to", "E99");
+        checkEco(from);
+        checkEco(to);
+        EcoIndex index = dataset.getEcoIndex();
+
+        StringBuilder json = new StringBuilder("{\"from\": ").append(quote(from)).append(", \"to\": ").append(quote(to))
+            .append(", \"count\": ").append(index.count(from, to))
+            .append(", \"games\": ").append(index.games(from, to))
+            .append(", \"winPercent\": ").append(number(index.weightedWinPercent(from, to)))
+            .append(", \"codes\": {");
+        int[] counts = index.counts();
+        String separator = "";
+        for (int slot = OpeningsTable.ecoSlot(from); slot <= OpeningsTable.ecoSlot(to); slot++) {
+            if (counts[slot] > 0) {
+                json.append(separator).append(quote(ChessOpeningsAnalysis.getEcoCode(slot))).append(": ").append(counts[slot]);
+                separator = ", ";
+            }
+        }
+        return json.append("}}").toString();
+    }
+
+    private static String correlation(OpeningsDataset dataset, Map<String, String> params) {
+        byte color = colorParam(params);
+        OpeningsTable table = OpeningsFilter.color(color).select(dataset.getTable());
+        String x = params.getOrDefault("x", "moves");
+        double r;
+        if ("moves".equals(x)) {
+            r = ChessOpeningsAnalysis.findCorrelationCoeff(table.moveCount(), table.winPercent());
+        } else if ("games".equals(x)) {
+            r = ChessOpeningsAnalysis.findCorrelationCoeff(table.numGames(), table.winPercent());
+        } else {
+            throw new IllegalArgumentException("x must be moves or games");
+        }
+        return "{\"color\": " + quote(params.get("color")) + ", \"x\": " + quote(x) + ", \"n\": " + table.size() + ", \"r\": " + number(r) + "}";
+    }
+
+    private static String top(OpeningsDataset dataset, Map<String, String> params) {
+        byte color = colorParam(params);
+        double percent = doubleParam(params, "percent", 25);
+        if (!(percent >= 0 && percent <= 100)) {
+            throw new IllegalArgumentException("percent must be between 0 and 100");
+        }
+        OpeningsTable table = OpeningsFilter.color(color).select(dataset.getTable());
+        int[] rows = Quantiles.topPercent(table.avgRating(), percent);
+
+        // Highest rating first; rows with equal ratings keep their file order
+        int[] ratings = table.avgRating();
+        long[] keys = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            keys[i] = ((long) ~ratings[rows[i]] << 32) | rows[i];
+        }
+        java.util.Arrays.sort(keys);
+
+        int limit = intParam(params, "limit", DEFAULT_LIMIT);
+        StringBuilder json = new StringBuilder("{\"count\": ").append(rows.length).append(", \"openings\": [");
+        for (int i = 0; i < Math.min(limit, keys.length); i++) {
+            if (i > 0) {
+                json.append(", ");
+            }
+            appendOpening(json, dataset.getOpenings().get(table.sourceRow()[(int) keys[i]]));
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Builds the filter described by the /openings query parameters.
+     */
+    private static OpeningsFilter filter(Map<String, String> params) {
+        List<OpeningsFilter> filters = new ArrayList<>();
+        if (params.containsKey("color")) {
+            filters.add(OpeningsFilter.color(colorParam(params)));
+        }
+        if (params.containsKey("minWin") || params.containsKey("maxWin")) {
+            filters.add(OpeningsFilter.winPercent(doubleParam(params, "minWin", Double.NEGATIVE_INFINITY),
+                                                  doubleParam(params, "maxWin", Double.POSITIVE_INFINITY)));
+        }
+        if (params.containsKey("eco")) {
+            String[] range = params.get("eco").split("-", 2);
+            filters.add(OpeningsFilter.eco(range[0], range.length > 1 ? range[1] : range[0]));
+        }
+        if (params.containsKey("minRating") || params.containsKey("maxRating")) {
+            filters.add(OpeningsFilter.rating(intParam(params, "minRating", Integer.MIN_VALUE), intParam(params, "maxRating", Integer.MAX_VALUE)));
+        }
+        if (params.containsKey("minGames")) {
+            filters.add(OpeningsFilter.minGames(intParam(params, "minGames", 0)));
+        }
+        if (params.containsKey("minMoves") || params.containsKey("maxMoves")) {
+            filters.add(OpeningsFilter.moveCount(intParam(params, "minMoves", 0), intParam(params, "maxMoves", Integer.MAX_VALUE)));
+        }
+        return OpeningsFilter.and(filters.toArray(new OpeningsFilter[0]));
+    }
+
+    private static void appendOpening(StringBuilder json, ChessOpening opening) {
+        json.append("{\"opening\": ").append(quote(opening.getOpening()))
+            .append(", \"color\": ").append(quote(opening.getColor()))
+            .append(", \"eco\": ").append(quote(opening.getEco()))
+            .append(", \"numGames\": ").append(opening.getNumGames())
+            .append(", \"avgRating\": ").append(opening.getAvgRating())
+            .append(", \"winPercent\": ").append(number(opening.getPlayerWinPercent()))
+            .append(", \"drawPercent\": ").append(number(opening.getDrawPercent()))
+            .append(", \"opponentWinPercent\": ").append(number(opening.getOpponentWinPercent()))
+            .append(", \"moves\": [");
+        String[] moves = opening.getMovesList();
+        for (int i = 0; i < moves.length; i++) {
+            json.append(i > 0 ? ", " : "").append(quote(moves[i]));
+        }
+        json.append("]}");
+    }
+
+    private static TreeMap<String, String> parseQuery(String query) {
+        TreeMap<String, String> params = new TreeMap<>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int equals = pair.indexOf('=');
+            String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+            String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            params.put(name, value);
+        }
+        return params;
+    }
+
+    private static byte colorParam(Map<String, String> params) {
+        String color = params.get("color");
+        if ("white".equals(color)) {
+            return OpeningsTable.WHITE;
+        } else if ("black".equals(color)) {
+            return OpeningsTable.BLACK;
+        }
+        throw new IllegalArgumentException("color must be white or black");
+    }
+
+    private static int intParam(Map<String, String> params, String name, int defaultValue) {
+        String value = params.get(name);
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be an integer");
+        }
+    }
+
+    private static double doubleParam(Map<String, String> params, String name, double defaultValue) {
+        String value = params.get(name);
+        try {
+            return value == null ? defaultValue : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number");
+        }
+    }
+
+    private static void checkEco(String eco) {
+        if (OpeningsTable.ecoSlot(eco) < 0) {
+            throw new IllegalArgumentException("Invalid ECO code " + eco);
+        }
+    }
+
+    private static String number(double value) {
+        return Double.isFinite(value) ? Double.toString(value) : "null";
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static byte[] error(String message) {
+        return ("{\"error\": " + quote(message) + "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        boolean head = "HEAD".equals(exchange.getRequestMethod());
+        exchange.sendResponseHeaders(response.status, head ? -1 : response.body.length);
+        if (!head) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response.body);
+            }
+        }
+    }
+
+    /**
+     * A computed response; cached ones are shared between requests and never modified.
+     */
+    private static final class Response {
+        final int status;
+        final byte[] body;
+        final String etag;
+
+        Response(int status, byte[] body, String etag) {
+            this.status = status;
+            this.body = body;
+            this.etag = etag;
+        }
+    }
+}
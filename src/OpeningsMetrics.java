@@ -0,0 +1,306 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Counters and timers for the load and analysis path, so a slow run shows where its
+ * time went without attaching a profiler.
+ *
+ * Counters are {@link LongAdder}s and each timed operation is a {@link Span}, used with
+ * try-with-resources: it adds its duration to the totals of its stage and of its own name,
+ * and is committed as a "chess.openings.Span" JDK Flight Recorder event, which is only created
+ * while a recording has the event enabled. Stage totals include nested spans
+ * (a question's time includes the statistics it computes). Methods called often can look their
+ * {@link Operation} up once and start spans from it, skipping the lookup of its timer.
+ *
+ * Setting the {@value #DUMP_PROPERTY} system property to a file name writes a JSON summary
+ * to that file when the JVM exits; "-" writes it to standard error.
+ */
+public final class OpeningsMetrics {
+    /** System property naming the file the JSON summary is written to at exit. */
+    public static final String DUMP_PROPERTY = "chess.openings.metrics";
+
+    /** Counted quantities. */
+    public enum Counter {
+        /** Records read from a CSV file, including rejected ones. */
+        ROWS_READ,
+        /** Records skipped because their ECO code contains a dash. */
+        ROWS_REJECTED,
+        /** Records skipped because they are truncated or have malformed numbers. */
+        PARSE_ERRORS,
+        /** Bytes of CSV or snapshot data loaded. */
+        BYTES_READ
+    }
+
+    /** Phases of a run that spans are grouped under. */
+    public enum Stage {
+        LOAD, PARSE, FILTER, AGGREGATION, STATISTICS, QUESTION
+    }
+
+    private static final EnumMap<Counter, LongAdder> COUNTERS = new EnumMap<>(Counter.class);
+    private static final EnumMap<Stage, Timer> STAGES = new EnumMap<>(Stage.class);
+    private static final ConcurrentHashMap<String, Timer> OPERATIONS = new ConcurrentHashMap<>();
+    private static final EventType SPAN_EVENT = EventType.getEventType(SpanEvent.class);
+
+    static {
+        for (Counter counter : Counter.values()) {
+            COUNTERS.put(counter, new LongAdder());
+        }
+        for (Stage stage : Stage.values()) {
+            STAGES.put(stage, new Timer());
+        }
+
+        String dump = System.getProperty(DUMP_PROPERTY);
+        if (dump != null && !dump.isEmpty()) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> dump(dump), "openings-metrics-dump"));
+        }
+    }
+
+    private OpeningsMetrics() {}
+
+    /**
+     * @param counter quantity to increase
+     * @param amount amount to add
+     */
+    public static void add(Counter counter, long amount) {
+        COUNTERS.get(counter).add(amount);
+    }
+
+    /**
+     * @param counter quantity to read
+     * @return total added since start-up or the last reset
+     */
+    public static long get(Counter counter) {
+        return COUNTERS.get(counter).sum();
+    }
+
+    /**
+     * Starts timing an operation.
+     *
+     * @param stage phase the operation belongs to
+     * @param operation name of the operation, e.g. "ChessOpeningsAnalysis.findMean"
+     * @return span to close when the operation ends
+     */
+    public static Span start(Stage stage, String operation) {
+        return new Span(stage, operation, timer(operation));
+    }
+
+    /**
+     * Looks up an operation once, for spans started from it with {@link Operation#start()}.
+     *
+     * @param stage phase the operation belongs to
+     * @param operation name of the operation, e.g. "ChessOpeningsAnalysis.findMean"
+     * @return the operation
+     */
+    public static Operation operation(Stage stage, String operation) {
+        return new Operation(stage, operation, timer(operation));
+    }
+
+    private static Timer timer(String operation) {
+        Timer timer = OPERATIONS.get(operation);
+        return timer != null ? timer : OPERATIONS.computeIfAbsent(operation, name -> new Timer());
+    }
+
+    /**
+     * @param stage phase to read
+     * @return total nanoseconds spent in spans of the stage
+     */
+    public static long stageNanos(Stage stage) {
+        return STAGES.get(stage).nanos.sum();
+    }
+
+    /**
+     * Clears every counter and timer.
+     */
+    public static void reset() {
+        COUNTERS.values().forEach(LongAdder::reset);
+        STAGES.values().forEach(Timer::reset);
+        // Kept, as operations looked up with operation() hold on to their timers
+        OPERATIONS.values().forEach(Timer::reset);
+    }
+
+    /**
+     * @return the counters, stage totals and per-operation totals as a JSON object
+     */
+    public static String toJson() {
+        StringBuilder json = new StringBuilder("{\n  \"counters\": {");
+        String separator = "\n";
+        for (Map.Entry<Counter, LongAdder> entry : COUNTERS.entrySet()) {
+            json.append(separator).append("    \"").append(entry.getKey().name().toLowerCase(Locale.ROOT)).append("\": ").append(entry.getValue().sum());
+            separator = ",\n";
+        }
+
+        json.append("\n  },\n  \"stages\": {");
+        separator = "\n";
+        for (Map.Entry<Stage, Timer> entry : STAGES.entrySet()) {
+            json.append(separator).append("    \"").append(entry.getKey().name().toLowerCase(Locale.ROOT)).append("\": ");
+            entry.getValue().appendJson(json);
+            separator = ",\n";
+        }
+
+        json.append("\n  },\n  \"operations\": {");
+        separator = "\n";
+        for (Map.Entry<String, Timer> entry : new TreeMap<>(OPERATIONS).entrySet()) {
+            if (entry.getValue().count.sum() == 0) {
+                continue;
+            }
+            json.append(separator).append("    \"").append(entry.getKey().replace("\\", "\\\\").replace("\"", "\\\"")).append("\": ");
+            entry.getValue().appendJson(json);
+            separator = ",\n";
+        }
+        return json.append("\n  }\n}\n").toString();
+    }
+
+    private static void dump(String target) {
+        String json = toJson();
+        if ("-".equals(target)) {
+            System.err.print(json);
+            System.err.flush();
+            return;
+        }
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(target), StandardCharsets.UTF_8)) {
+            out.write(json);
+        } catch (IOException e) {
+            System.err.println("Could not write metrics to " + target + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * A named operation in a stage, with its timer looked up once.
+     */
+    public static final class Operation {
+        private final Stage stage;
+        private final String name;
+        private final Timer timer;
+
+        private Operation(Stage stage, String name, Timer timer) {
+            this.stage = stage;
+            this.name = name;
+            this.timer = timer;
+        }
+
+        /**
+         * Starts timing the operation.
+         *
+         * @return span to close when the operation ends
+         */
+        public Span start() {
+            return new Span(stage, name, timer);
+        }
+    }
+
+    /**
+     * A timed operation. Closing it records its duration; closing it again has no effect.
+     */
+    public static final class Span implements AutoCloseable {
+        private final Stage stage;
+        private final String operation;
+        private final Timer timer;
+        private final long start;
+        private final SpanEvent event;
+        private long rows = -1;
+        private boolean closed;
+
+        private Span(Stage stage, String operation, Timer timer) {
+            this.stage = stage;
+            this.operation = operation;
+            this.timer = timer;
+            if (SPAN_EVENT.isEnabled()) {
+                event = new SpanEvent();
+                event.begin();
+            } else {
+                event = null;
+            }
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * @param rows number of rows the operation processed, recorded in its JFR event
+         * @return this span
+         */
+        public Span rows(long rows) {
+            this.rows = rows;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            long nanos = System.nanoTime() - start;
+            STAGES.get(stage).record(nanos);
+            timer.record(nanos);
+
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.stage = stage.name();
+                    event.operation = operation;
+                    event.rows = rows;
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    /**
+     * Call count, total and maximum duration of a stage or operation.
+     */
+    private static final class Timer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(long duration) {
+            count.increment();
+            nanos.add(duration);
+            maxNanos.accumulate(duration);
+        }
+
+        void reset() {
+            count.reset();
+            nanos.reset();
+            maxNanos.reset();
+        }
+
+        void appendJson(StringBuilder json) {
+            json.append(String.format(Locale.ROOT, "{\"count\": %d, \"totalMillis\": %.3f, \"maxMillis\": %.3f}",
+                                      count.sum(), nanos.sum() / 1e6, maxNanos.get() / 1e6));
+        }
+    }
+
+    @Name("chess.openings.Span")
+    @Label("Openings Operation")
+    @Description("A timed load or analysis operation")
+    @Category({"Chess Openings"})
+    @StackTrace(false)
+    static final class SpanEvent extends Event {
+        @Label("Stage")
+        String stage;
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Rows")
+        @Description("Rows processed, or -1 if not recorded")
+        long rows;
+    }
+}
@@ -0,0 +1,305 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Reads and writes the binary snapshot of a parsed openings file, so later runs
+ * can skip CSV tokenizing entirely.
+ *
+ * Layout (big-endian):
+ * <pre>
+ *   header      magic, format version, source file size and modification time, lines file path
+ *               (length-prefixed UTF-8, empty if none), size and modification time, row count
+ *   dictionary  count, then each distinct string (opening names, colors, ECO codes, dates, moves)
+ *               as a length-prefixed UTF-8 byte sequence
+ *   columns     one contiguous column of row count entries each for name id, color id, ECO id, last played id
+ *               (-1 if unknown), numGames, avgRating, playerWinPercent, drawPercent and opponentWinPercent; then
+ *               the total number of moves, row count + 1 move offsets and the move ids they index
+ *   trailer     CRC32 of everything before it
+ * </pre>
+ * A snapshot is only used if its recorded source size and modification time match the CSV file.
+ * The snapshot of a PGN file also depends on the lines file its games were matched against, so it
+ * records that file's path, size and modification time too, and is only used while they match.
+ */
+public final class OpeningsSnapshot {
+    private static final int MAGIC = 0x43534E50; // "CSNP"
+    private static final int VERSION = 5;
+
+    private OpeningsSnapshot() {}
+
+    /**
+     * @param csvFile openings.csv-style file
+     * @return location of that file's snapshot
+     */
+    public static File snapshotFile(File csvFile) {
+        return new File(csvFile.getPath() + ".snap");
+    }
+
+    /**
+     * Writes a snapshot of the openings parsed from a CSV file. The file is written to a
+     * temporary name and then moved into place, so readers never see a partial snapshot.
+     *
+     * @param snapshot file to write
+     * @param openings openings parsed from the source file
+     * @param sourceSize size of the source file when it was read
+     * @param sourceLastModified modification time of the source file when it was read
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static void write(File snapshot, List<ChessOpening> openings, long sourceSize, long sourceLastModified) throws IOException {
+        write(snapshot, openings, sourceSize, sourceLastModified, null);
+    }
+
+    /**
+     * Writes a snapshot of the openings parsed from a source file that also depends on another file,
+     * such as the lines file a PGN file is matched against.
+     *
+     * @param snapshot file to write
+     * @param openings openings parsed from the source file
+     * @param sourceSize size of the source file when it was read
+     * @param sourceLastModified modification time of the source file when it was read
+     * @param lines file the openings also depend on, or null; its current path, size and modification time are recorded
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static void write(File snapshot, List<ChessOpening> openings, long sourceSize, long sourceLastModified, File lines) throws IOException {
+        // Assign every distinct string an id, in order of first use
+        HashMap<String, Integer> ids = new HashMap<>();
+        ArrayList<String> dictionary = new ArrayList<>();
+        int moveCount = 0;
+        for (ChessOpening opening : openings) {
+            intern(opening.getOpening(), ids, dictionary);
+            intern(opening.getColor(), ids, dictionary);
+            intern(opening.getEco(), ids, dictionary);
+            if (opening.getLastPlayed() != null) {
+                intern(opening.getLastPlayed(), ids, dictionary);
+            }
+            for (String move : opening.getMovesList()) {
+                intern(move, ids, dictionary);
+            }
+            moveCount += opening.getMoveCount();
+        }
+
+        File temp = new File(snapshot.getPath() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileOutputStream file = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(file, crc), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sourceSize);
+            out.writeLong(sourceLastModified);
+            byte[] linesPath = linesPath(lines).getBytes(StandardCharsets.UTF_8);
+            out.writeInt(linesPath.length);
+            out.write(linesPath);
+            out.writeLong(lines == null ? 0 : lines.length());
+            out.writeLong(lines == null ? 0 : lines.lastModified());
+            out.writeInt(openings.size());
+
+            out.writeInt(dictionary.size());
+            for (String value : dictionary) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            for (ChessOpening opening : openings) {
+                out.writeInt(ids.get(opening.getOpening()));
+            }
+            for (ChessOpening opening : openings) {
+                out.writeInt(ids.get(opening.getColor()));
+            }
+            for (ChessOpening opening : openings) {
+                out.writeInt(ids.get(opening.getEco()));
+            }
+            for (ChessOpening opening : openings) {
+                out.writeInt(opening.getLastPlayed() == null ? -1 : ids.get(opening.getLastPlayed()));
+            }
+            for (ChessOpening opening : openings) {
+                out.writeInt(opening.getNumGames());
+            }
+            for (ChessOpening opening : openings) {
+                out.writeInt(opening.getAvgRating());
+            }
+            for (ChessOpening opening : openings) {
+                out.writeDouble(opening.getPlayerWinPercent());
+            }
+            for (ChessOpening opening : openings) {
+                out.writeDouble(opening.getDrawPercent());
+            }
+            for (ChessOpening opening : openings) {
+                out.writeDouble(opening.getOpponentWinPercent());
+            }
+
+            int offset = 0;
+            out.writeInt(moveCount);
+            for (ChessOpening opening : openings) {
+                out.writeInt(offset);
+                offset += opening.getMoveCount();
+            }
+            out.writeInt(offset);
+            for (ChessOpening opening : openings) {
+                for (String move : opening.getMovesList()) {
+                    out.writeInt(ids.get(move));
+                }
+            }
+
+            // The checksum covers everything written so far
+            out.flush();
+            new DataOutputStream(file).writeLong(crc.getValue());
+        }
+
+        try {
+            Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads the openings from a snapshot by memory-mapping it.
+     *
+     * @param snapshot snapshot file
+     * @param sourceSize current size of the source CSV file
+     * @param sourceLastModified current modification time of the source CSV file
+     * @return the openings, or null if the snapshot is missing, out of date, from another format version or corrupt
+     */
+    public static List<ChessOpening> read(File snapshot, long sourceSize, long sourceLastModified) {
+        return read(snapshot, sourceSize, sourceLastModified, null);
+    }
+
+    /**
+     * Reads the openings from a snapshot written with a lines file, see {@link #write(File, List, long, long, File)}.
+     *
+     * @param snapshot snapshot file
+     * @param sourceSize current size of the source file
+     * @param sourceLastModified current modification time of the source file
+     * @param lines file the openings also depend on, or null
+     * @return the openings, or null if the snapshot is missing, out of date (for the source or the lines file),
+     *         from another format version or corrupt
+     */
+    public static List<ChessOpening> read(File snapshot, long sourceSize, long sourceLastModified, File lines) {
+        try (OpeningsMetrics.Span span = OpeningsMetrics.start(OpeningsMetrics.Stage.PARSE, "OpeningsSnapshot.read")) {
+            if (!snapshot.isFile()) {
+                return null;
+            }
+
+            try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+                MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+                // Check the header before paying for the checksum
+                if (in.limit() < 60 || in.getInt() != MAGIC || in.getInt() != VERSION
+                        || in.getLong() != sourceSize || in.getLong() != sourceLastModified) {
+                    return null;
+                }
+                byte[] linesPath = linesPath(lines).getBytes(StandardCharsets.UTF_8);
+                // Not covered by the checksum yet, so the length is checked before allocating
+                int recordedLength = in.getInt();
+                if (recordedLength < 0 || recordedLength > in.remaining()) {
+                    return null;
+                }
+                byte[] recordedPath = new byte[recordedLength];
+                in.get(recordedPath);
+                if (!Arrays.equals(recordedPath, linesPath)
+                        || in.getLong() != (lines == null ? 0 : lines.length())
+                        || in.getLong() != (lines == null ? 0 : lines.lastModified())) {
+                    return null;
+                }
+
+                int checksumPosition = in.limit() - Long.BYTES;
+                CRC32 crc = new CRC32();
+                ByteBuffer payload = in.duplicate();
+                payload.position(0).limit(checksumPosition);
+                crc.update(payload);
+                if (crc.getValue() != in.getLong(checksumPosition)) {
+                    return null;
+                }
+
+                int rows = in.getInt();
+                String[] dictionary = new String[in.getInt()];
+                byte[] bytes = new byte[64];
+                for (int i = 0; i < dictionary.length; i++) {
+                    int length = in.getInt();
+                    if (length > bytes.length) {
+                        bytes = new byte[Math.max(length, bytes.length * 2)];
+                    }
+                    in.get(bytes, 0, length);
+                    dictionary[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+                }
+
+                // Each column is read in bulk into a primitive array
+                int[] names = readInts(in, new int[rows]);
+                int[] colors = readInts(in, new int[rows]);
+                int[] ecos = readInts(in, new int[rows]);
+                int[] lastPlayedIds = readInts(in, new int[rows]);
+                int[] numGames = readInts(in, new int[rows]);
+                int[] avgRatings = readInts(in, new int[rows]);
+                double[] playerWins = readDoubles(in, new double[rows]);
+                double[] draws = readDoubles(in, new double[rows]);
+                double[] opponentWins = readDoubles(in, new double[rows]);
+                int[] moves = new int[in.getInt()];
+                int[] moveOffsets = readInts(in, new int[rows + 1]);
+                readInts(in, moves);
+
+                ArrayList<ChessOpening> openings = new ArrayList<>(rows);
+                MoveLines moveLines = new MoveLines();
+                for (int i = 0; i < rows; i++) {
+                    String[] movesList = new String[moveOffsets[i + 1] - moveOffsets[i]];
+                    for (int j = 0; j < movesList.length; j++) {
+                        movesList[j] = dictionary[moves[moveOffsets[i] + j]];
+                    }
+                    int lastPlayed = lastPlayedIds[i];
+                    openings.add(new ChessOpening(dictionary[names[i]], dictionary[colors[i]], dictionary[ecos[i]],
+                                                  numGames[i], avgRatings[i], playerWins[i], draws[i], opponentWins[i], movesList,
+                                                  lastPlayed < 0 ? null : dictionary[lastPlayed], moveLines));
+                }
+                span.rows(rows);
+                return openings;
+            } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException
+                     | NegativeArraySizeException e) {
+                // An unreadable snapshot is simply rebuilt from the CSV file
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Fills an array from the buffer's position and moves the position past it.
+     */
+    private static int[] readInts(ByteBuffer in, int[] values) {
+        in.asIntBuffer().get(values);
+        in.position(in.position() + values.length * Integer.BYTES);
+        return values;
+    }
+
+    private static double[] readDoubles(ByteBuffer in, double[] values) {
+        in.asDoubleBuffer().get(values);
+        in.position(in.position() + values.length * Double.BYTES);
+        return values;
+    }
+
+    private static String linesPath(File lines) {
+        return lines == null ? "" : lines.getAbsolutePath();
+    }
+
+    private static void intern(String value, HashMap<String, Integer> ids, ArrayList<String> dictionary) {
+        if (!ids.containsKey(value)) {
+            ids.put(value, dictionary.size());
+            dictionary.add(value);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Column-oriented, primitive-typed storage for the openings dataset.
+ * Each attribute used by the analyses is kept in its own array (struct of arrays),
+ * so scans touch contiguous memory and no per-row objects or boxed values are needed.
+ * ECO codes are dictionary-encoded: each row stores a short index into a shared code table.
+ *
+ * The column arrays are returned without copying for speed and must not be modified.
+ */
+public final class OpeningsTable implements OpeningsColumns {
+    // Values of the color column
+    public static final byte WHITE = 0;
+    public static final byte BLACK = 1;
+    public static final byte OTHER_COLOR = 2;
+
+    // Most filter bitmaps kept per table, and most bytes of bitmaps, since each takes size()/8 bytes
+    private static final int MAX_CACHED_BITMAPS = 256;
+    private static final long MAX_CACHED_BITMAP_BYTES = 16L << 20;
+
+    private final int size;
+    private final int[] sourceRow;
+    private final int[] numGames;
+    private final int[] avgRating;
+    private final double[] winPercent;
+    private final byte[] color;
+    private final short[] eco;
+    private final short[] moveCount;
+
+    // ECO dictionary shared by a table and all tables selected from it
+    private final String[] ecoCodes;
+    private final short[] ecoSlots;
+
+    // Index by ECO code, built on first use
+    private volatile EcoIndex ecoIndex;
+
+    // Bitmaps of recently evaluated filters by key, least recently used first, and their total bytes
+    private final LinkedHashMap<String, BitSet> filterBitmaps = new LinkedHashMap<>(16, 0.75f, true);
+    private long filterBitmapBytes;
+
+    private OpeningsTable(int size, int[] sourceRow, int[] numGames, int[] avgRating, double[] winPercent,
+                          byte[] color, short[] eco, short[] moveCount, String[] ecoCodes, short[] ecoSlots) {
+        this.size = size;
+        this.sourceRow = sourceRow;
+        this.numGames = numGames;
+        this.avgRating = avgRating;
+        this.winPercent = winPercent;
+        this.color = color;
+        this.eco = eco;
+        this.moveCount = moveCount;
+        this.ecoCodes = ecoCodes;
+        this.ecoSlots = ecoSlots;
+    }
+
+    /**
+     * Builds a table from a list of openings. Row i of the table is openings.get(i).
+     *
+     * @param openings openings to store
+     * @return table holding the openings' columns
+     */
+    public static OpeningsTable from(List<ChessOpening> openings) {
+        try (OpeningsMetrics.Span span = OpeningsMetrics.start(OpeningsMetrics.Stage.AGGREGATION, "OpeningsTable.from")) {
+            int size = openings.size();
+            int[] sourceRow = new int[size];
+            int[] numGames = new int[size];
+            int[] avgRating = new int[size];
+            double[] winPercent = new double[size];
+            byte[] color = new byte[size];
+            short[] eco = new short[size];
+            short[] moveCount = new short[size];
+
+            HashMap<String, Short> ecoIds = new HashMap<>();
+            String[] ecoCodes = new String[16];
+
+            for (int i = 0; i < size; i++) {
+                ChessOpening opening = openings.get(i);
+                sourceRow[i] = i;
+                numGames[i] = opening.getNumGames();
+                avgRating[i] = opening.getAvgRating();
+                winPercent[i] = opening.getPlayerWinPercent();
+                color[i] = encodeColor(opening.getColor());
+                moveCount[i] = (short) Math.min(Short.MAX_VALUE, opening.getMoveCount());
+
+                // Assign the next dictionary id to ECO codes seen for the first time
+                Short id = ecoIds.get(opening.getEco());
+                if (id == null) {
+                    if (ecoIds.size() > Short.MAX_VALUE) {
+                        throw new IllegalStateException("Too many distinct ECO codes");
+                    }
+                    id = (short) ecoIds.size();
+                    ecoIds.put(opening.getEco(), id);
+                    if (id == ecoCodes.length) {
+                        ecoCodes = Arrays.copyOf(ecoCodes, ecoCodes.length * 2);
+                    }
+                    ecoCodes[id] = opening.getEco();
+                }
+                eco[i] = id;
+            }
+
+            ecoCodes = Arrays.copyOf(ecoCodes, ecoIds.size());
+            short[] ecoSlots = new short[ecoCodes.length];
+            for (int i = 0; i < ecoCodes.length; i++) {
+                ecoSlots[i] = (short) ecoSlot(ecoCodes[i]);
+            }
+
+            span.rows(size);
+            return new OpeningsTable(size, sourceRow, numGames, avgRating, winPercent, color, eco, moveCount, ecoCodes, ecoSlots);
+        }
+    }
+
+    /**
+     * Converts a color name to the value stored in the color column.
+     *
+     * @param color "white", "black" or any other value
+     * @return WHITE, BLACK or OTHER_COLOR
+     */
+    public static byte encodeColor(String color) {
+        if ("white".equals(color)) {
+            return WHITE;
+        } else if ("black".equals(color)) {
+            return BLACK;
+        }
+        return OTHER_COLOR;
+    }
+
+    /**
+     * Converts an ECO code such as "B03" to its position in a 500-slot array
+     * (letter A-E times 100 plus the number), as used by countEco.
+     *
+     * @param eco ECO code
+     * @return slot between 0 and 499, or -1 if the code is not a letter A-E followed by a number below 100
+     */
+    public static int ecoSlot(String eco) {
+        if (eco == null || eco.length() < 2) {
+            return -1;
+        }
+        int letter = eco.charAt(0) - 'A';
+        int number = 0;
+        for (int i = 1; i < eco.length(); i++) {
+            int digit = eco.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            number = number * 10 + digit;
+        }
+        if (letter < 0 || letter > 4 || number > 99) {
+            return -1;
+        }
+        return letter * 100 + number;
+    }
+
+    /**
+     * Returns a new table holding only the rows of one color, in their original order.
+     *
+     * @param colorValue WHITE, BLACK or OTHER_COLOR
+     * @return table of the matching rows
+     */
+    public OpeningsTable whereColor(byte colorValue) {
+        try (OpeningsMetrics.Span span = OpeningsMetrics.start(OpeningsMetrics.Stage.FILTER, "OpeningsTable.whereColor")) {
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (color[i] == colorValue) {
+                    count++;
+                }
+            }
+
+            int[] rows = new int[count];
+            int next = 0;
+            for (int i = 0; i < size; i++) {
+                if (color[i] == colorValue) {
+                    rows[next++] = i;
+                }
+            }
+            span.rows(size);
+            return select(rows);
+        }
+    }
+
+    /**
+     * Returns a new table holding the given rows of this table, in the given order.
+     *
+     * @param rows row positions in this table
+     * @return table of the selected rows
+     */
+    public OpeningsTable select(int[] rows) {
+        int count = rows.length;
+        int[] newSourceRow = new int[count];
+        int[] newNumGames = new int[count];
+        int[] newAvgRating = new int[count];
+        double[] newWinPercent = new double[count];
+        byte[] newColor = new byte[count];
+        short[] newEco = new short[count];
+        short[] newMoveCount = new short[count];
+
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            newSourceRow[i] = sourceRow[row];
+            newNumGames[i] = numGames[row];
+            newAvgRating[i] = avgRating[row];
+            newWinPercent[i] = winPercent[row];
+            newColor[i] = color[row];
+            newEco[i] = eco[row];
+            newMoveCount[i] = moveCount[row];
+        }
+        return new OpeningsTable(count, newSourceRow, newNumGames, newAvgRating, newWinPercent,
+                                 newColor, newEco, newMoveCount, ecoCodes, ecoSlots);
+    }
+
+    /**
+     * Returns a table with copies of this table's columns, for handing out a table that is
+     * shared elsewhere, since the column getters return the backing arrays.
+     *
+     * @return table of the same rows
+     */
+    public OpeningsTable copy() {
+        return new OpeningsTable(size, sourceRow.clone(), numGames.clone(), avgRating.clone(), winPercent.clone(),
+                                 color.clone(), eco.clone(), moveCount.clone(), ecoCodes, ecoSlots);
+    }
+
+    /**
+     * @return number of rows
+     */
+    @Override
+    public int size() { return size; }
+
+    /**
+     * @return for each row, its position in the list the original table was built from
+     */
+    public int[] sourceRow() { return sourceRow; }
+
+    // Column getters
+    public int[] numGames() { return numGames; }
+    public int[] avgRating() { return avgRating; }
+    public double[] winPercent() { return winPercent; }
+    public byte[] color() { return color; }
+    public short[] eco() { return eco; }
+    public short[] moveCount() { return moveCount; }
+
+    // Row getters, for code written against OpeningsColumns
+    @Override
+    public byte color(int row) { return color[row]; }
+    @Override
+    public int numGames(int row) { return numGames[row]; }
+    @Override
+    public int avgRating(int row) { return avgRating[row]; }
+    @Override
+    public double winPercent(int row) { return winPercent[row]; }
+    @Override
+    public int moveCount(int row) { return moveCount[row]; }
+
+    /**
+     * @param row row position
+     * @return the row's ECO code, e.g. "B03"
+     */
+    public String ecoCode(int row) { return ecoCodes[eco[row]]; }
+
+    /**
+     * @return index of this table's rows by ECO code, built on first use
+     */
+    public EcoIndex getEcoIndex() {
+        EcoIndex result = ecoIndex;
+        if (result == null) {
+            // Building twice under a race is harmless: both indexes hold the same data
+            result = EcoIndex.build(this);
+            ecoIndex = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return the table's ECO index if it has been built, otherwise null
+     */
+    EcoIndex builtEcoIndex() {
+        return ecoIndex;
+    }
+
+    /**
+     * Returns the cached bitmap of a filter, evaluating it if it is not cached.
+     * Used by {@link OpeningsFilter}; the bitmap must not be modified.
+     *
+     * @param key canonical filter key
+     * @param evaluate computes the bitmap on a cache miss
+     * @return bitmap of the rows matching the filter
+     */
+    BitSet filterBitmap(String key, Supplier<BitSet> evaluate) {
+        synchronized (filterBitmaps) {
+            BitSet bits = filterBitmaps.get(key);
+            if (bits != null) {
+                return bits;
+            }
+        }
+        // Evaluated outside the lock, since combined filters look up their operands
+        BitSet bits = evaluate.get();
+        long bytes = bits.size() / 8;
+        if (bytes > MAX_CACHED_BITMAP_BYTES) {
+            return bits;
+        }
+        synchronized (filterBitmaps) {
+            BitSet replaced = filterBitmaps.put(key, bits);
+            filterBitmapBytes += bytes - (replaced == null ? 0 : replaced.size() / 8);
+            Iterator<Map.Entry<String, BitSet>> eldest = filterBitmaps.entrySet().iterator();
+            while (filterBitmaps.size() > MAX_CACHED_BITMAPS || filterBitmapBytes > MAX_CACHED_BITMAP_BYTES) {
+                filterBitmapBytes -= eldest.next().getValue().size() / 8;
+                eldest.remove();
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * @param row row position
+     * @return the row's ECO code as a 500-slot array index, or -1 if it is not a valid code
+     */
+    @Override
+    public int ecoSlot(int row) { return ecoSlots[eco[row]]; }
+}
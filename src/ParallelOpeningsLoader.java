@@ -0,0 +1,308 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Loads very large openings exports by memory-mapping the file and parsing
+ * newline-aligned chunks of it in parallel on a fork-join pool.
+ *
+ * Chunk boundaries are found in two passes so that a line break inside a quoted
+ * field is never mistaken for the end of a record: the first pass counts the quotes
+ * in each raw chunk (in parallel), and a prefix over those counts tells whether each
+ * raw boundary falls inside quotes before it is moved forward to the next real line end.
+ */
+public final class ParallelOpeningsLoader {
+    // Chunks smaller than this are not worth a separate task
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    // A single mapping cannot exceed 2 GB, so keep raw chunks well below that
+    private static final long MAX_CHUNK_SIZE = 1 << 30;
+    private static final int SCAN_BUFFER_SIZE = 1 << 16;
+
+    private ParallelOpeningsLoader() {}
+
+    /**
+     * Loads the openings file using the common fork-join pool.
+     *
+     * @param file openings.csv-style file
+     * @return valid openings in file order
+     * @throws FileNotFoundException if the file is not found
+     */
+    public static ArrayList<ChessOpening> load(File file) throws FileNotFoundException {
+        return load(file, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Loads the openings file, parsing its chunks on the given pool.
+     * Filters out invalid openings (those with dashes in ECO codes).
+     *
+     * @param file openings.csv-style file
+     * @param pool pool the chunks are parsed on
+     * @return valid openings in file order
+     * @throws FileNotFoundException if the file is not found
+     */
+    public static ArrayList<ChessOpening> load(File file, ForkJoinPool pool) throws FileNotFoundException {
+        return load(file, pool, null);
+    }
+
+    /**
+     * Loads some columns of the openings file, parsing its chunks on the given pool.
+     * Filters out invalid openings (those with dashes in ECO codes).
+     *
+     * @param file openings.csv-style file
+     * @param pool pool the chunks are parsed on
+     * @param columns columns to load (see {@link OpeningsCsvReader#project(Set)}), or null for all of them
+     * @return valid openings in file order
+     * @throws FileNotFoundException if the file is not found
+     */
+    public static ArrayList<ChessOpening> load(File file, ForkJoinPool pool, Set<OpeningsColumn> columns) throws FileNotFoundException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long[] bounds = findChunkBounds(channel, pool);
+            return stitch(pool.invoke(new ParseTask(channel, bounds, columns, 0, bounds.length - 1)));
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(file.getPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + file, e);
+        } catch (UncheckedIOException e) {
+            throw new UncheckedIOException("Could not read " + file, e.getCause());
+        }
+    }
+
+    /**
+     * Splits the file into chunks that each start at the beginning of a record.
+     *
+     * @return offsets where chunk i spans [bounds[i], bounds[i + 1])
+     */
+    private static long[] findChunkBounds(FileChannel channel, ForkJoinPool pool) throws IOException {
+        long size = channel.size();
+        long target = Math.max(MIN_CHUNK_SIZE, size / (pool.getParallelism() * 4L));
+        int chunks = (int) Math.max(1, Math.min(Integer.MAX_VALUE - 1, size / Math.min(target, MAX_CHUNK_SIZE)));
+        while (size / chunks > MAX_CHUNK_SIZE) {
+            chunks++;
+        }
+
+        long[] raw = new long[chunks + 1];
+        for (int i = 0; i <= chunks; i++) {
+            raw[i] = size * i / chunks;
+        }
+
+        // Pass one: whether each raw chunk contains an odd number of quotes
+        boolean[] oddQuotes = new boolean[chunks];
+        pool.invoke(new QuoteParityTask(channel, raw, oddQuotes, 0, chunks));
+
+        // Pass two: move each raw boundary forward to the first line end outside quotes
+        long[] bounds = new long[chunks + 1];
+        bounds[chunks] = size;
+        boolean inQuotes = false;
+        for (int i = 1; i < chunks; i++) {
+            inQuotes ^= oddQuotes[i - 1];
+            long start = Math.max(raw[i], bounds[i - 1]);
+            bounds[i] = Math.min(size, nextRecordStart(channel, start, inQuotes && start == raw[i]));
+        }
+        return bounds;
+    }
+
+    /**
+     * Finds the offset just past the first line break at or after start that is not inside quotes.
+     */
+    private static long nextRecordStart(FileChannel channel, long start, boolean inQuotes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long position = start;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                return position;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '"') {
+                    inQuotes = !inQuotes;
+                } else if (b == '\n' && !inQuotes) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Counts the quote characters of each raw chunk. A quote byte never appears
+     * inside a multi-byte UTF-8 sequence, so the raw bytes can be scanned directly.
+     */
+    @SuppressWarnings("serial")
+    private static final class QuoteParityTask extends RecursiveAction {
+        private final FileChannel channel;
+        private final long[] raw;
+        private final boolean[] oddQuotes;
+        private final int from;
+        private final int to;
+
+        QuoteParityTask(FileChannel channel, long[] raw, boolean[] oddQuotes, int from, int to) {
+            this.channel = channel;
+            this.raw = raw;
+            this.oddQuotes = oddQuotes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new QuoteParityTask(channel, raw, oddQuotes, from, mid),
+                          new QuoteParityTask(channel, raw, oddQuotes, mid, to));
+                return;
+            }
+
+            MappedByteBuffer chunk = map(channel, raw[from], raw[from + 1]);
+            boolean odd = false;
+            for (int i = 0; i < chunk.limit(); i++) {
+                if (chunk.get(i) == '"') {
+                    odd = !odd;
+                }
+            }
+            oddQuotes[from] = odd;
+        }
+    }
+
+    /**
+     * Joins the parsed chunks in file order, copying their move buffers into one that the
+     * openings are moved to, so the load holds a single buffer and no lock is shared while parsing.
+     */
+    private static ArrayList<ChessOpening> stitch(ArrayList<Chunk> chunks) {
+        int count = 0;
+        ArrayList<MoveLines> parts = new ArrayList<>(chunks.size());
+        for (Chunk chunk : chunks) {
+            count += chunk.openings.size();
+            parts.add(chunk.moveLines);
+        }
+        int[] offsets = new int[parts.size()];
+        MoveLines joined = MoveLines.concat(parts, offsets);
+        ArrayList<ChessOpening> openings = new ArrayList<>(count);
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunk chunk = chunks.get(i);
+            for (ChessOpening opening : chunk.openings) {
+                opening.relocateMoves(chunk.moveLines, joined, offsets[i]);
+            }
+            openings.addAll(chunk.openings);
+        }
+        return openings;
+    }
+
+    /**
+     * Openings parsed from one chunk, and the buffer their moves were stored in.
+     */
+    private static final class Chunk {
+        final ArrayList<ChessOpening> openings;
+        final MoveLines moveLines;
+
+        Chunk(ArrayList<ChessOpening> openings, MoveLines moveLines) {
+            this.openings = openings;
+            this.moveLines = moveLines;
+        }
+    }
+
+    /**
+     * Parses a range of chunks, splitting it in half until a single chunk is left,
+     * and returns the parsed chunks in file order.
+     */
+    @SuppressWarnings("serial")
+    private static final class ParseTask extends RecursiveTask<ArrayList<Chunk>> {
+        private final FileChannel channel;
+        private final long[] bounds;
+        private final Set<OpeningsColumn> columns;
+        private final int from;
+        private final int to;
+
+        ParseTask(FileChannel channel, long[] bounds, Set<OpeningsColumn> columns, int from, int to) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected ArrayList<Chunk> compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                ParseTask right = new ParseTask(channel, bounds, columns, mid, to);
+                right.fork();
+                ArrayList<Chunk> chunks = new ParseTask(channel, bounds, columns, from, mid).compute();
+                chunks.addAll(right.join());
+                return chunks;
+            }
+
+            ArrayList<Chunk> chunks = new ArrayList<>(1);
+            if (bounds[from] >= bounds[from + 1]) {
+                return chunks;
+            }
+
+            // Chunks end on line breaks, so no multi-byte character is ever split
+            InputStream bytes = new MappedChunkInputStream(map(channel, bounds[from], bounds[from + 1]));
+            try (OpeningsCsvReader reader = new OpeningsCsvReader(new InputStreamReader(bytes, StandardCharsets.UTF_8))) {
+                if (columns != null) {
+                    reader.project(columns);
+                }
+                // Only the first chunk contains the header line
+                if (from == 0) {
+                    reader.nextRecord();
+                }
+                ArrayList<ChessOpening> openings = new ArrayList<>();
+                reader.readOpenings(openings);
+                chunks.add(new Chunk(openings, reader.moveLines()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return chunks;
+        }
+    }
+
+    /**
+     * Streams a mapped chunk so it is decoded a buffer at a time instead of all at once.
+     */
+    private static final class MappedChunkInputStream extends InputStream {
+        private final ByteBuffer chunk;
+
+        MappedChunkInputStream(ByteBuffer chunk) {
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int read() {
+            return chunk.hasRemaining() ? chunk.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!chunk.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, chunk.remaining());
+            chunk.get(b, off, count);
+            return count;
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long start, long end) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,613 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Builds opening statistics from raw games in a PGN file, in the same form as the rows of openings.csv.
+ *
+ * Each game is matched to the longest known opening line (the move lists of a reference openings file)
+ * that its moves start with, and counted for both sides: in the white row of that line from White's
+ * point of view (White's rating, White's wins) and in the black row from Black's. Games that match
+ * no line or have no result are skipped. Ratings come from the WhiteElo and BlackElo tags, where present,
+ * and Last Played from the latest Date tag.
+ *
+ * The file is split into chunks at "[Event " tags, which are parsed in parallel on a fork-join pool
+ * straight from the mapped bytes. A game's moves are only examined while they follow a known line, and
+ * each chunk keeps nothing but counters per line, so memory does not depend on the number of games.
+ */
+public final class PgnIngest {
+    /** System property with the openings file whose move lists games are matched against. */
+    public static final String LINES_PROPERTY = "chess.openings.pgn.lines";
+    private static final String DEFAULT_LINES = "data/openings.csv";
+
+    private static final byte[] EVENT_TAG = "\n[Event ".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    // A single mapping cannot exceed 2 GB, so keep chunks well below that
+    private static final long MAX_CHUNK_SIZE = 1 << 30;
+    private static final int SCAN_BUFFER_SIZE = 1 << 16;
+    private static final int MAX_TOKEN = 64;
+
+    private PgnIngest() {}
+
+    /**
+     * Aggregates a PGN file against the lines of the file named by {@link #LINES_PROPERTY}
+     * (data/openings.csv by default), on the common fork-join pool.
+     *
+     * @param pgn PGN file
+     * @return one opening per line and color with at least one game
+     * @throws FileNotFoundException if the PGN file or the lines file is not found
+     */
+    public static ArrayList<ChessOpening> load(File pgn) throws FileNotFoundException {
+        return load(pgn, OpeningsDataset.readFile(linesFile()), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @return the file named by {@link #LINES_PROPERTY}, whose lines a PGN file is aggregated against
+     * @throws IllegalArgumentException if it names a PGN file
+     */
+    static File linesFile() {
+        File lines = new File(System.getProperty(LINES_PROPERTY, DEFAULT_LINES));
+        if (lines.getName().endsWith(".pgn")) {
+            throw new IllegalArgumentException(LINES_PROPERTY + " must name an openings CSV file, not " + lines);
+        }
+        return lines;
+    }
+
+    /**
+     * Aggregates a PGN file against the given opening lines.
+     *
+     * @param pgn PGN file
+     * @param lines known openings; their names, ECO codes and move lists label the results
+     * @param pool pool the chunks are parsed on
+     * @return one opening per line and color with at least one game, in the order the lines first appear
+     * @throws FileNotFoundException if the PGN file is not found
+     */
+    public static ArrayList<ChessOpening> load(File pgn, List<ChessOpening> lines, ForkJoinPool pool) throws FileNotFoundException {
+        try (OpeningsMetrics.Span span = OpeningsMetrics.start(OpeningsMetrics.Stage.PARSE, "PgnIngest.load");
+             FileChannel channel = FileChannel.open(pgn.toPath(), StandardOpenOption.READ)) {
+            MoveTrie trie = MoveTrie.build(lines);
+            long[] bounds = findChunkBounds(channel, pool);
+            LineStats stats = pool.invoke(new ChunkTask(channel, trie, bounds, 0, bounds.length - 1));
+            OpeningsMetrics.add(OpeningsMetrics.Counter.ROWS_READ, stats.gamesRead);
+            OpeningsMetrics.add(OpeningsMetrics.Counter.ROWS_REJECTED, stats.gamesSkipped);
+            OpeningsMetrics.add(OpeningsMetrics.Counter.BYTES_READ, channel.size());
+
+            ArrayList<ChessOpening> openings = stats.toOpenings(trie, lines);
+            span.rows(stats.gamesRead);
+            return openings;
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(pgn.getPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + pgn, e);
+        } catch (UncheckedIOException e) {
+            throw new UncheckedIOException("Could not read " + pgn, e.getCause());
+        }
+    }
+
+    /**
+     * Splits the file into chunks that each start at an "[Event " tag at the beginning of a line.
+     *
+     * @return offsets where chunk i spans [bounds[i], bounds[i + 1])
+     */
+    private static long[] findChunkBounds(FileChannel channel, ForkJoinPool pool) throws IOException {
+        long size = channel.size();
+        long target = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, size / (pool.getParallelism() * 4L)));
+        int chunks = (int) Math.max(1, (size + target - 1) / target);
+
+        long[] bounds = new long[chunks + 1];
+        bounds[chunks] = size;
+        for (int i = 1; i < chunks; i++) {
+            bounds[i] = Math.max(bounds[i - 1], nextGameStart(channel, target * i));
+        }
+        return bounds;
+    }
+
+    /**
+     * Finds the start of the first "[Event " line at or after a position, or the end of the file.
+     */
+    private static long nextGameStart(FileChannel channel, long start) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        // Begin one byte early so a tag right at the start position is found
+        long position = Math.max(0, start - 1);
+        int matched = 0;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                matched = b == EVENT_TAG[matched] ? matched + 1 : (b == '\n' ? 1 : 0);
+                if (matched == EVENT_TAG.length) {
+                    // Skip the newline: the chunk starts at the '['
+                    return position + i + 2 - EVENT_TAG.length;
+                }
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Counters per trie node and color, at index node * 2 + color.
+     */
+    private static final class LineStats {
+        final long[] games;
+        final long[] wins;
+        final long[] draws;
+        final long[] losses;
+        final long[] ratingSum;
+        final long[] ratedGames;
+        final int[] lastPlayed; // yyyymmdd, 0 if unknown
+        long gamesRead;
+        long gamesSkipped;
+
+        LineStats(int nodes) {
+            games = new long[nodes * 2];
+            wins = new long[nodes * 2];
+            draws = new long[nodes * 2];
+            losses = new long[nodes * 2];
+            ratingSum = new long[nodes * 2];
+            ratedGames = new long[nodes * 2];
+            lastPlayed = new int[nodes * 2];
+        }
+
+        void add(int node, Game game) {
+            addSide(node * 2 + OpeningsTable.WHITE, game.whiteScore, game.whiteElo, game.date);
+            addSide(node * 2 + OpeningsTable.BLACK, 2 - game.whiteScore, game.blackElo, game.date);
+        }
+
+        /**
+         * @param score 2 for a win, 1 for a draw, 0 for a loss
+         */
+        private void addSide(int i, int score, int elo, int date) {
+            games[i]++;
+            if (score == 2) {
+                wins[i]++;
+            } else if (score == 1) {
+                draws[i]++;
+            } else {
+                losses[i]++;
+            }
+            if (elo > 0) {
+                ratingSum[i] += elo;
+                ratedGames[i]++;
+            }
+            lastPlayed[i] = Math.max(lastPlayed[i], date);
+        }
+
+        LineStats merge(LineStats other) {
+            for (int i = 0; i < games.length; i++) {
+                games[i] += other.games[i];
+                wins[i] += other.wins[i];
+                draws[i] += other.draws[i];
+                losses[i] += other.losses[i];
+                ratingSum[i] += other.ratingSum[i];
+                ratedGames[i] += other.ratedGames[i];
+                lastPlayed[i] = Math.max(lastPlayed[i], other.lastPlayed[i]);
+            }
+            gamesRead += other.gamesRead;
+            gamesSkipped += other.gamesSkipped;
+            return this;
+        }
+
+        /**
+         * Turns the counters into openings, labelled by a line of the same color at the node when
+         * there is one, and otherwise by any line at the node.
+         */
+        ArrayList<ChessOpening> toOpenings(MoveTrie trie, List<ChessOpening> lines) {
+            // Order the nodes by the first line ending at them, so results follow the lines file
+            int nodes = games.length / 2;
+            int[] firstRow = new int[nodes];
+            for (int node = 0; node < nodes; node++) {
+                firstRow[node] = Integer.MAX_VALUE;
+                for (int row = trie.firstOpeningAt(node); row >= 0; row = trie.nextOpeningAt(row)) {
+                    firstRow[node] = Math.min(firstRow[node], row);
+                }
+            }
+            Integer[] order = new Integer[nodes];
+            for (int node = 0; node < nodes; node++) {
+                order[node] = node;
+            }
+            java.util.Arrays.sort(order, (a, b) -> Integer.compare(firstRow[a], firstRow[b]));
+
+            ArrayList<ChessOpening> openings = new ArrayList<>();
+            String[] colors = { "white", "black" };
+            for (int node : order) {
+                for (byte color = OpeningsTable.WHITE; color <= OpeningsTable.BLACK; color++) {
+                    int i = node * 2 + color;
+                    if (games[i] == 0) {
+                        continue;
+                    }
+                    ChessOpening label = label(trie, lines, node, colors[color]);
+                    double n = games[i];
+                    openings.add(new ChessOpening(label.getOpening(), colors[color], label.getEco(),
+                                                  (int) Math.min(Integer.MAX_VALUE, games[i]),
+                                                  ratedGames[i] == 0 ? 0 : (int) Math.round((double) ratingSum[i] / ratedGames[i]),
+                                                  100 * wins[i] / n, 100 * draws[i] / n, 100 * losses[i] / n,
+                                                  label.getMovesList(), formatDate(lastPlayed[i])));
+                }
+            }
+            return openings;
+        }
+
+        /**
+         * @return the first line of the color ending at the node, or the first line there of any color
+         */
+        private static ChessOpening label(MoveTrie trie, List<ChessOpening> lines, int node, String color) {
+            int first = Integer.MAX_VALUE;
+            int sameColor = Integer.MAX_VALUE;
+            for (int row = trie.firstOpeningAt(node); row >= 0; row = trie.nextOpeningAt(row)) {
+                first = Math.min(first, row);
+                if (color.equals(lines.get(row).getColor())) {
+                    sameColor = Math.min(sameColor, row);
+                }
+            }
+            return lines.get(sameColor != Integer.MAX_VALUE ? sameColor : first);
+        }
+
+        private static String formatDate(int date) {
+            if (date == 0) {
+                return null;
+            }
+            return String.format(java.util.Locale.ROOT, "%04d-%02d-%02d", date / 10000, date / 100 % 100, date % 100);
+        }
+    }
+
+    /**
+     * Tags and matching state of the game being parsed.
+     */
+    private static final class Game {
+        int whiteScore = -1; // 2 win, 1 draw, 0 loss, -1 unknown
+        int whiteElo;
+        int blackElo;
+        int date;
+        // Deepest trie node reached so far, and the deepest one where a known line ends
+        int node;
+        int matched;
+        boolean following;
+        boolean started;
+
+        void reset(int root, MoveTrie trie) {
+            whiteScore = -1;
+            whiteElo = 0;
+            blackElo = 0;
+            date = 0;
+            node = root;
+            matched = trie.firstOpeningAt(root) >= 0 ? root : -1;
+            following = true;
+            started = false;
+        }
+    }
+
+    /**
+     * Parses a range of chunks, splitting it in half until a single chunk is left, and merges the counters.
+     */
+    @SuppressWarnings("serial")
+    private static final class ChunkTask extends RecursiveTask<LineStats> {
+        private final FileChannel channel;
+        private final MoveTrie trie;
+        private final long[] bounds;
+        private final int from;
+        private final int to;
+
+        ChunkTask(FileChannel channel, MoveTrie trie, long[] bounds, int from, int to) {
+            this.channel = channel;
+            this.trie = trie;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected LineStats compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                ChunkTask right = new ChunkTask(channel, trie, bounds, mid, to);
+                right.fork();
+                LineStats left = new ChunkTask(channel, trie, bounds, from, mid).compute();
+                return left.merge(right.join());
+            }
+
+            LineStats stats = new LineStats(trie.nodeCount());
+            if (bounds[from] < bounds[from + 1]) {
+                try {
+                    MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, bounds[from], bounds[from + 1] - bounds[from]);
+                    new ChunkParser(chunk, trie, stats).parse();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * Scans the bytes of one chunk. PGN is ASCII apart from tag values such as player names,
+     * which are never decoded, so the bytes are read directly.
+     */
+    private static final class ChunkParser {
+        private final ByteBuffer in;
+        private final MoveTrie trie;
+        private final LineStats stats;
+        private final Game game = new Game();
+        private final byte[] token = new byte[MAX_TOKEN];
+        private int position;
+
+        ChunkParser(ByteBuffer in, MoveTrie trie, LineStats stats) {
+            this.in = in;
+            this.trie = trie;
+            this.stats = stats;
+            game.reset(trie.rootNode(), trie);
+        }
+
+        void parse() {
+            int limit = in.limit();
+            boolean lineStart = true;
+            while (position < limit) {
+                byte b = in.get(position);
+                if (lineStart && b == '[') {
+                    // A tag after movetext starts the next game
+                    if (game.started) {
+                        finishGame();
+                    }
+                    tag();
+                    continue;
+                }
+                lineStart = b == '\n';
+                if (b == '{') {
+                    skipPast('}');
+                } else if (b == ';' || (b == '%' && position > 0 && in.get(position - 1) == '\n')) {
+                    skipPast('\n');
+                    lineStart = true;
+                } else if (b == '(') {
+                    skipVariation();
+                } else if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                    position++;
+                } else {
+                    movetextToken();
+                }
+            }
+            if (game.started) {
+                finishGame();
+            }
+        }
+
+        /**
+         * Reads a tag pair line such as [WhiteElo "2205"], keeping the tags the statistics use.
+         */
+        private void tag() {
+            int limit = in.limit();
+            int nameStart = ++position;
+            while (position < limit && in.get(position) != ' ' && in.get(position) != '"' && in.get(position) != ']') {
+                position++;
+            }
+            int nameEnd = position;
+            while (position < limit && in.get(position) != '"' && in.get(position) != '\n') {
+                position++;
+            }
+            int valueStart = position + 1;
+            int valueEnd = valueStart;
+            if (position < limit && in.get(position) == '"') {
+                position++;
+                while (position < limit && in.get(position) != '"' && in.get(position) != '\n') {
+                    // Escaped quotes and backslashes stay part of the value
+                    if (in.get(position) == '\\' && position + 1 < limit) {
+                        position++;
+                    }
+                    position++;
+                }
+                valueEnd = position;
+            }
+            skipPast('\n');
+
+            if (nameIs(nameStart, nameEnd, "Result")) {
+                game.whiteScore = score(valueStart, valueEnd);
+            } else if (nameIs(nameStart, nameEnd, "WhiteElo")) {
+                game.whiteElo = number(valueStart, valueEnd);
+            } else if (nameIs(nameStart, nameEnd, "BlackElo")) {
+                game.blackElo = number(valueStart, valueEnd);
+            } else if (nameIs(nameStart, nameEnd, "Date") || nameIs(nameStart, nameEnd, "UTCDate")) {
+                game.date = Math.max(game.date, date(valueStart, valueEnd));
+            }
+        }
+
+        /**
+         * Handles a move, move number, NAG or game termination marker.
+         */
+        private void movetextToken() {
+            int limit = in.limit();
+            int length = 0;
+            while (position < limit) {
+                byte b = in.get(position);
+                if (b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '{' || b == '(' || b == ')' || b == ';') {
+                    break;
+                }
+                if (length < MAX_TOKEN) {
+                    token[length] = b;
+                }
+                length++;
+                position++;
+            }
+            if (length == 0) {
+                // A stray ')' outside a variation
+                position++;
+                return;
+            }
+            if (length > MAX_TOKEN) {
+                return;
+            }
+            game.started = true;
+
+            if (isTermination(length)) {
+                // The movetext's own result overrides a missing or different Result tag
+                int score = score(token, length);
+                if (score >= 0) {
+                    game.whiteScore = score;
+                }
+                finishGame();
+                return;
+            }
+            if (token[0] == '$' || !game.following) {
+                return;
+            }
+
+            // Drop a leading move number ("12." or "12...") and trailing annotations ("!?")
+            int start = 0;
+            while (start < length && token[start] >= '0' && token[start] <= '9') {
+                start++;
+            }
+            if (start < length && token[start] == '.') {
+                while (start < length && token[start] == '.') {
+                    start++;
+                }
+            } else {
+                start = 0;
+            }
+            int end = length;
+            while (end > start && (token[end - 1] == '!' || token[end - 1] == '?')) {
+                end--;
+            }
+            if (start < end) {
+                follow(start, end);
+            }
+        }
+
+        /**
+         * Moves down the trie to the child whose move is the token, comparing bytes with the
+         * dictionary's moves so that no String is created.
+         */
+        private void follow(int start, int end) {
+            for (int child = trie.firstChildOf(game.node); child >= 0; child = trie.nextSiblingOf(child)) {
+                String move = MoveDictionary.move(trie.moveCodeOf(child));
+                if (move.length() == end - start && sameMove(move, start)) {
+                    game.node = child;
+                    if (trie.firstOpeningAt(child) >= 0) {
+                        game.matched = child;
+                    }
+                    return;
+                }
+            }
+            game.following = false;
+        }
+
+        private boolean sameMove(String move, int start) {
+            for (int i = 0; i < move.length(); i++) {
+                if (move.charAt(i) != token[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void finishGame() {
+            stats.gamesRead++;
+            if (game.matched < 0 || game.whiteScore < 0) {
+                stats.gamesSkipped++;
+            } else {
+                stats.add(game.matched, game);
+            }
+            game.reset(trie.rootNode(), trie);
+        }
+
+        private boolean isTermination(int length) {
+            // "0-0" castling is not a result
+            return (length == 1 && token[0] == '*') || score(token, length) >= 0;
+        }
+
+        private static int score(byte[] text, int length) {
+            if (length == 3 && text[0] == '1' && text[1] == '-' && text[2] == '0') {
+                return 2;
+            } else if (length == 3 && text[0] == '0' && text[1] == '-' && text[2] == '1') {
+                return 0;
+            } else if (length == 7 && text[0] == '1' && text[1] == '/' && text[2] == '2') {
+                return 1;
+            }
+            return -1;
+        }
+
+        private int score(int start, int end) {
+            byte[] text = new byte[Math.min(MAX_TOKEN, end - start)];
+            for (int i = 0; i < text.length; i++) {
+                text[i] = in.get(start + i);
+            }
+            return score(text, end - start);
+        }
+
+        private int number(int start, int end) {
+            int value = 0;
+            for (int i = start; i < end; i++) {
+                int digit = in.get(i) - '0';
+                if (digit < 0 || digit > 9 || value > 100_000) {
+                    return 0;
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        /**
+         * Parses a PGN date such as "2018.06.22" to 20180622; unknown parts ("2018.??.??") give 0.
+         */
+        private int date(int start, int end) {
+            if (end - start != 10 || in.get(start + 4) != '.' || in.get(start + 7) != '.') {
+                return 0;
+            }
+            int year = number(start, start + 4);
+            int month = number(start + 5, start + 7);
+            int day = number(start + 8, end);
+            return year == 0 || month == 0 || day == 0 ? 0 : year * 10000 + month * 100 + day;
+        }
+
+        private boolean nameIs(int start, int end, String name) {
+            if (end - start != name.length()) {
+                return false;
+            }
+            for (int i = 0; i < name.length(); i++) {
+                if (in.get(start + i) != name.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void skipPast(char c) {
+            int limit = in.limit();
+            while (position < limit && in.get(position) != c) {
+                position++;
+            }
+            position++;
+        }
+
+        /**
+         * Skips a recursive annotation variation, including nested variations and comments.
+         */
+        private void skipVariation() {
+            int limit = in.limit();
+            int depth = 0;
+            while (position < limit) {
+                byte b = in.get(position);
+                if (b == '{') {
+                    skipPast('}');
+                    continue;
+                }
+                position++;
+                if (b == '(') {
+                    depth++;
+                } else if (b == ')' && --depth == 0) {
+                    return;
+                }
+            }
+        }
+    }
+}
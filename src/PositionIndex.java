@@ -0,0 +1,337 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index of the positions reached by the openings' move lists, keyed by their Zobrist hash
+ * (see {@link ChessBoard#hash()}), so that lines reaching the same position through different
+ * move orders are counted together.
+ *
+ * Every position holds statistics over all openings whose move list passes through it, separately
+ * for white and black rows, weighted by games like {@link MoveTrie.Stats}. The index is built from a
+ * {@link MoveTrie}, so a move shared by many lines is only played once, and positions live in an
+ * open-addressing table of primitive arrays: a lookup by hash costs one probe sequence,
+ * whatever the number of openings.
+ *
+ * Lines with a move that is not legal where it is played only contribute the positions before it.
+ */
+public final class PositionIndex {
+    private static final int NONE = -1;
+
+    private final MoveTrie trie;
+
+    // Open-addressing table: a slot is used when its firstNode is not NONE
+    private long[] keys;
+    private int[] firstNode;
+    private int positions;
+    // Trie nodes reaching each position, linked through nextNode
+    private final int[] nextNode;
+
+    // Statistics per slot and color, at index slot * 2 + color
+    private int[] count;
+    private long[] games;
+    private double[] winSum;
+    private double[] drawSum;
+    private double[] lossSum;
+    private double[] ratingSum;
+
+    private int unplayableLines;
+
+    private PositionIndex(MoveTrie trie) {
+        this.trie = trie;
+        this.nextNode = new int[trie.nodeCount()];
+        allocate(Integer.highestOneBit(Math.max(16, trie.nodeCount())) * 2);
+    }
+
+    /**
+     * Builds the index over a list of openings.
+     *
+     * @param openings openings to index; their list positions are the row ids returned by {@link #openingsReaching(long)}
+     * @return index of every position the openings' move lists reach
+     */
+    public static PositionIndex build(List<ChessOpening> openings) {
+        return build(MoveTrie.build(openings));
+    }
+
+    /**
+     * Builds the index over the lines of a move trie, replaying each trie node's move once.
+     *
+     * @param trie trie over the openings
+     * @return index of every position the trie's lines reach
+     */
+    public static PositionIndex build(MoveTrie trie) {
+        try (OpeningsMetrics.Span span = OpeningsMetrics.start(OpeningsMetrics.Stage.AGGREGATION, "PositionIndex.build")) {
+            PositionIndex index = new PositionIndex(trie);
+            // One board per depth, so walking back up the tree needs no undo
+            ChessBoard[] boards = { new ChessBoard() };
+            long[] path = new long[16];
+            index.visit(trie.rootNode(), 0, boards, path);
+            span.rows(index.positions);
+            return index;
+        }
+    }
+
+    private void visit(int node, int depth, ChessBoard[] boards, long[] path) {
+        ChessBoard board = boards[depth];
+        long hash = board.hash();
+        // A line that comes back to a position it already passed (e.g. Nf3 Nf6 Ng1 Ng8)
+        // is counted there once, at its first visit
+        boolean repeated = false;
+        for (int i = 0; i < depth && !repeated; i++) {
+            repeated = path[i] == hash;
+        }
+        if (!repeated) {
+            add(hash, node);
+        }
+
+        if (depth + 1 >= boards.length) {
+            boards = Arrays.copyOf(boards, boards.length * 2);
+            path = Arrays.copyOf(path, path.length * 2);
+        }
+        path[depth] = hash;
+        for (int child = trie.firstChildOf(node); child != NONE; child = trie.nextSiblingOf(child)) {
+            ChessBoard next = boards[depth + 1];
+            if (next == null) {
+                next = new ChessBoard();
+                boards[depth + 1] = next;
+            }
+            next.copyFrom(board);
+            if (next.play(MoveDictionary.move(trie.moveCodeOf(child)))) {
+                visit(child, depth + 1, boards, path);
+            } else {
+                unplayableLines += linesBelow(child);
+            }
+        }
+    }
+
+    private void add(long hash, int node) {
+        if (positions * 2 >= keys.length) {
+            grow();
+        }
+        int slot = find(hash);
+        if (firstNode[slot] == NONE) {
+            keys[slot] = hash;
+            firstNode[slot] = NONE;
+            positions++;
+        }
+        nextNode[node] = firstNode[slot];
+        firstNode[slot] = node;
+
+        MoveTrie.Stats stats = trie.statsAt(node);
+        for (byte color = OpeningsTable.WHITE; color <= OpeningsTable.BLACK; color++) {
+            long n = stats.getGames(color);
+            int i = slot * 2 + color;
+            count[i] += stats.getCount(color);
+            games[i] += n;
+            if (n > 0) {
+                winSum[i] += n * stats.getWinPercent(color);
+                drawSum[i] += n * stats.getDrawPercent(color);
+                lossSum[i] += n * stats.getLossPercent(color);
+                ratingSum[i] += n * stats.getAvgRating(color);
+            }
+        }
+    }
+
+    /**
+     * @return the slot holding the hash, or the empty slot where it would go
+     */
+    private int find(long hash) {
+        int mask = keys.length - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (firstNode[slot] != NONE && keys[slot] != hash) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        firstNode = new int[capacity];
+        Arrays.fill(firstNode, NONE);
+        count = new int[capacity * 2];
+        games = new long[capacity * 2];
+        winSum = new double[capacity * 2];
+        drawSum = new double[capacity * 2];
+        lossSum = new double[capacity * 2];
+        ratingSum = new double[capacity * 2];
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldFirstNode = firstNode;
+        int[] oldCount = count;
+        long[] oldGames = games;
+        double[] oldWinSum = winSum;
+        double[] oldDrawSum = drawSum;
+        double[] oldLossSum = lossSum;
+        double[] oldRatingSum = ratingSum;
+        allocate(oldKeys.length * 2);
+
+        for (int old = 0; old < oldKeys.length; old++) {
+            if (oldFirstNode[old] == NONE) {
+                continue;
+            }
+            int slot = find(oldKeys[old]);
+            keys[slot] = oldKeys[old];
+            firstNode[slot] = oldFirstNode[old];
+            for (int color = 0; color < 2; color++) {
+                count[slot * 2 + color] = oldCount[old * 2 + color];
+                games[slot * 2 + color] = oldGames[old * 2 + color];
+                winSum[slot * 2 + color] = oldWinSum[old * 2 + color];
+                drawSum[slot * 2 + color] = oldDrawSum[old * 2 + color];
+                lossSum[slot * 2 + color] = oldLossSum[old * 2 + color];
+                ratingSum[slot * 2 + color] = oldRatingSum[old * 2 + color];
+            }
+        }
+    }
+
+    /**
+     * Plays a sequence of moves from the starting position.
+     *
+     * @param line moves such as "1.e4 c5 2.Nf3"
+     * @return hash of the position reached
+     * @throws IllegalArgumentException if a move is not legal where it is played
+     */
+    public static long hash(String line) {
+        ChessBoard board = new ChessBoard();
+        for (String san : MoveTrie.splitMoves(line)) {
+            if (!board.play(san)) {
+                throw new IllegalArgumentException("Illegal move " + san + " in " + line + " at " + board.toFen());
+            }
+        }
+        return board.hash();
+    }
+
+    /**
+     * Returns the statistics of all openings passing through the position a line reaches,
+     * whatever their move order.
+     *
+     * @param line moves such as "1.d4 Nf6 2.c4 e6"
+     * @return statistics for the position, or null if no opening reaches it
+     * @throws IllegalArgumentException if a move is not legal where it is played
+     */
+    public Stats stats(String line) {
+        return stats(hash(line));
+    }
+
+    /**
+     * @param hash position hash, see {@link ChessBoard#hash()}
+     * @return statistics for the position, or null if no opening reaches it
+     */
+    public Stats stats(long hash) {
+        int slot = find(hash);
+        return firstNode[slot] == NONE ? null : new Stats(this, slot);
+    }
+
+    /**
+     * Returns the openings whose move list passes through a position.
+     *
+     * @param hash position hash, see {@link ChessBoard#hash()}
+     * @return positions of the openings in the list the index was built from, in ascending order
+     */
+    public int[] openingsReaching(long hash) {
+        int slot = find(hash);
+        // The counts leave out openings of other colors, so count the rows first
+        int found = 0;
+        for (int node = firstNode[slot]; node != NONE; node = nextNode[node]) {
+            found += linesBelow(node);
+        }
+        int[] rows = new int[found];
+        found = 0;
+        for (int node = firstNode[slot]; node != NONE; node = nextNode[node]) {
+            found = collectLines(node, rows, found);
+        }
+        Arrays.sort(rows);
+        return rows;
+    }
+
+    /**
+     * @param hash position hash, see {@link ChessBoard#hash()}
+     * @return number of different move orders among the openings that reach the position
+     */
+    public int moveOrders(long hash) {
+        int slot = find(hash);
+        int orders = 0;
+        for (int node = firstNode[slot]; node != NONE; node = nextNode[node]) {
+            orders++;
+        }
+        return orders;
+    }
+
+    /**
+     * @return number of distinct positions, including the starting position
+     */
+    public int size() { return positions; }
+
+    /**
+     * @return number of openings whose move list has a move that is not legal where it is played
+     */
+    public int getUnplayableLines() { return unplayableLines; }
+
+    /**
+     * Adds the openings ending at or below a trie node to rows, growing it if needed.
+     */
+    private int collectLines(int node, int[] rows, int found) {
+        for (int row = trie.firstOpeningAt(node); row != NONE; row = trie.nextOpeningAt(row)) {
+            if (found < rows.length) {
+                rows[found] = row;
+            }
+            found++;
+        }
+        for (int child = trie.firstChildOf(node); child != NONE; child = trie.nextSiblingOf(child)) {
+            found = collectLines(child, rows, found);
+        }
+        return found;
+    }
+
+    private int linesBelow(int node) {
+        return collectLines(node, new int[0], 0);
+    }
+
+    /**
+     * Statistics of the openings passing through one position, for white and black rows.
+     * Percentages and ratings are weighted by the number of games.
+     */
+    public static final class Stats {
+        private final PositionIndex index;
+        private final int slot;
+
+        private Stats(PositionIndex index, int slot) {
+            this.index = index;
+            this.slot = slot;
+        }
+
+        /**
+         * @param color OpeningsTable.WHITE or OpeningsTable.BLACK
+         * @return number of openings of that color
+         */
+        public int getCount(byte color) { return index.count[slot * 2 + color]; }
+
+        /**
+         * @param color OpeningsTable.WHITE or OpeningsTable.BLACK
+         * @return games played with openings of that color
+         */
+        public long getGames(byte color) { return index.games[slot * 2 + color]; }
+
+        /**
+         * @return games played with openings of either color
+         */
+        public long getTotalGames() { return index.games[slot * 2] + index.games[slot * 2 + 1]; }
+
+        // Games-weighted percentages and rating for one color, NaN if it has no games
+        public double getWinPercent(byte color) { return weighted(index.winSum, color); }
+        public double getDrawPercent(byte color) { return weighted(index.drawSum, color); }
+        public double getLossPercent(byte color) { return weighted(index.lossSum, color); }
+        public double getAvgRating(byte color) { return weighted(index.ratingSum, color); }
+
+        private double weighted(double[] sums, byte color) {
+            long n = getGames(color);
+            return n == 0 ? Double.NaN : sums[slot * 2 + color] / n;
+        }
+
+        @Override
+        public String toString() {
+            return "white: " + getCount(OpeningsTable.WHITE) + " openings, " + getGames(OpeningsTable.WHITE) + " games, win% " + getWinPercent(OpeningsTable.WHITE)
+                    + "; black: " + getCount(OpeningsTable.BLACK) + " openings, " + getGames(OpeningsTable.BLACK) + " games, win% " + getWinPercent(OpeningsTable.BLACK);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Mergeable approximate quantile sketch for streams too large to keep in memory,
+ * in the style of the KLL sketch (Karnin, Lang and Liberty, 2016).
+ * Source: https://arxiv.org/abs/1603.05346
+ *
+ * Values are kept in levels of at most k items; an item on level h stands for 2^h
+ * original values. When a level fills up it is sorted and every other item (starting at a
+ * random offset) is promoted to the next level, the rest are dropped. The rank error of a
+ * query is about O(log(n / k) / k) of the stream length, and memory is O(k log(n / k)).
+ * Sketches built over separate partitions can be combined with {@link #merge(QuantileSketch)}.
+ * Instances are not thread-safe; use one per thread and merge them.
+ */
+public final class QuantileSketch {
+    /** Level capacity used by the no-argument constructor, about 1% rank error for large streams. */
+    public static final int DEFAULT_K = 200;
+
+    private final int k;
+    private final SplittableRandom random;
+    private double[][] levels = new double[0][];
+    private int[] sizes = new int[0];
+    private long count;
+
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * @param k capacity of each level; larger values are more accurate and use more memory
+     */
+    public QuantileSketch(int k) {
+        this(k, new SplittableRandom());
+    }
+
+    /**
+     * @param k capacity of each level
+     * @param random source of the compaction offsets, e.g. seeded for reproducible results
+     */
+    public QuantileSketch(int k, SplittableRandom random) {
+        if (k < 2) {
+            throw new IllegalArgumentException("k must be at least 2");
+        }
+        this.k = k;
+        this.random = random;
+        addLevel();
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param value value to add; must not be NaN
+     */
+    public void accept(double value) {
+        levels[0][sizes[0]++] = value;
+        count++;
+        if (sizes[0] == k) {
+            compact(0);
+        }
+    }
+
+    /**
+     * Combines another sketch's values into this one.
+     *
+     * @param other sketch over a separate set of values
+     * @return this sketch
+     */
+    public QuantileSketch merge(QuantileSketch other) {
+        while (levels.length < other.levels.length) {
+            addLevel();
+        }
+        for (int h = 0; h < other.levels.length; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) {
+                levels[h][sizes[h]++] = other.levels[h][i];
+                if (sizes[h] == k) {
+                    compact(h);
+                }
+            }
+        }
+        count += other.count;
+        return this;
+    }
+
+    /**
+     * @return number of values added, including merged sketches
+     */
+    public long count() { return count; }
+
+    /**
+     * @param p quantile between 0 and 1
+     * @return approximate value at the quantile, or NaN if the sketch is empty
+     */
+    public double quantile(double p) {
+        return quantiles(p)[0];
+    }
+
+    /**
+     * Returns several approximate quantiles with a single sort of the retained items, done
+     * on primitive arrays: each level is sorted and the levels are merged.
+     *
+     * @param ps quantiles between 0 and 1, in any order
+     * @return the quantile values, in the order of ps
+     */
+    public double[] quantiles(double... ps) {
+        double[] result = new double[ps.length];
+        if (count == 0) {
+            Arrays.fill(result, Double.NaN);
+            return result;
+        }
+
+        // Copy each level and sort it, then merge the sorted levels into values and weights
+        int retained = 0;
+        for (int size : sizes) {
+            retained += size;
+        }
+        double[] byLevel = new double[retained];
+        int[] heads = new int[levels.length];
+        int[] ends = new int[levels.length];
+        int next = 0;
+        for (int h = 0; h < levels.length; h++) {
+            heads[h] = next;
+            System.arraycopy(levels[h], 0, byLevel, next, sizes[h]);
+            next += sizes[h];
+            ends[h] = next;
+            Arrays.sort(byLevel, heads[h], ends[h]);
+        }
+
+        // An item on level h stands for 2^h values
+        double[] values = new double[retained];
+        long[] weights = new long[retained];
+        long total = 0;
+        for (int i = 0; i < retained; i++) {
+            int smallest = -1;
+            for (int h = 0; h < levels.length; h++) {
+                if (heads[h] < ends[h] && (smallest < 0 || byLevel[heads[h]] < byLevel[heads[smallest]])) {
+                    smallest = h;
+                }
+            }
+            values[i] = byLevel[heads[smallest]++];
+            weights[i] = 1L << smallest;
+            total += weights[i];
+        }
+        for (int q = 0; q < ps.length; q++) {
+            if (!(ps[q] >= 0 && ps[q] <= 1)) {
+                throw new IllegalArgumentException("Quantile " + ps[q] + " is not between 0 and 1");
+            }
+            double target = ps[q] * total;
+            long cumulative = 0;
+            result[q] = values[retained - 1];
+            for (int i = 0; i < retained; i++) {
+                cumulative += weights[i];
+                if (cumulative >= target) {
+                    result[q] = values[i];
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Halves a full level: sorts it and promotes every other item to the level above.
+     */
+    private void compact(int h) {
+        if (h + 1 == levels.length) {
+            addLevel();
+        }
+        double[] level = levels[h];
+        Arrays.sort(level, 0, sizes[h]);
+        for (int i = random.nextInt(2); i < sizes[h]; i += 2) {
+            levels[h + 1][sizes[h + 1]++] = level[i];
+            if (sizes[h + 1] == k) {
+                // Leave room by compacting the next level before continuing
+                compact(h + 1);
+            }
+        }
+        sizes[h] = 0;
+    }
+
+    private void addLevel() {
+        levels = Arrays.copyOf(levels, levels.length + 1);
+        levels[levels.length - 1] = new double[k];
+        sizes = Arrays.copyOf(sizes, sizes.length + 1);
+    }
+}
@@ -0,0 +1,241 @@
+import java.util.Arrays;
+
+/**
+ * Selection-based quantile and top-k queries over primitive columns.
+ *
+ * Uses introselect: quickselect with median-of-three pivots that falls back to sorting
+ * the remaining range if partitioning stops making progress, so a single quantile costs
+ * O(n) on average and O(n log n) at worst. Each query copies the column once and
+ * allocates nothing per element. Values must not be NaN.
+ */
+public final class Quantiles {
+    // Ranges this small are finished with a sort
+    private static final int SMALL_RANGE = 16;
+
+    private Quantiles() {}
+
+    /**
+     * Returns the k-th smallest value (0-based) of an array, leaving the array partially reordered.
+     *
+     * @param values values to select from; reordered in place
+     * @param k rank of the value to return, between 0 and values.length - 1
+     * @return the value of rank k
+     */
+    public static double selectInPlace(double[] values, int k) {
+        if (k < 0 || k >= values.length) {
+            throw new IndexOutOfBoundsException("Rank " + k + " out of bounds for length " + values.length);
+        }
+        select(values, 0, values.length, k);
+        return values[k];
+    }
+
+    /**
+     * Returns the value at a quantile of a column, using the nearest-rank definition:
+     * the smallest value with at least p * n values less than or equal to it.
+     *
+     * @param column values; not modified
+     * @param p quantile between 0 and 1, e.g. 0.75 for the 75th percentile
+     * @return the quantile value
+     */
+    public static double quantile(double[] column, double p) {
+        return quantiles(column, p)[0];
+    }
+
+    /**
+     * @see #quantile(double[], double)
+     */
+    public static double quantile(int[] column, double p) {
+        return quantiles(column, p)[0];
+    }
+
+    /**
+     * Returns several quantiles of a column at once. The column is copied once and each
+     * selection only searches the part of the copy between the neighbouring ranks.
+     *
+     * @param column values; not modified
+     * @param ps quantiles between 0 and 1, in any order
+     * @return the quantile values, in the order of ps
+     */
+    public static double[] quantiles(double[] column, double... ps) {
+        return quantilesInPlace(column.clone(), ps);
+    }
+
+    /**
+     * @see #quantiles(double[], double...)
+     */
+    public static double[] quantiles(int[] column, double... ps) {
+        double[] values = new double[column.length];
+        for (int i = 0; i < column.length; i++) {
+            values[i] = column[i];
+        }
+        return quantilesInPlace(values, ps);
+    }
+
+    /**
+     * Returns the rows holding the k largest values of a column. Rows with a value equal
+     * to the k-th largest are taken in row order, matching a stable descending sort.
+     *
+     * @param column values per row; not modified
+     * @param k number of rows to return
+     * @return row ids of the k largest values, in ascending row order
+     */
+    public static int[] topK(double[] column, int k) {
+        return topK(column.clone(), column, null, k);
+    }
+
+    /**
+     * @see #topK(double[], int)
+     */
+    public static int[] topK(int[] column, int k) {
+        double[] values = new double[column.length];
+        for (int i = 0; i < column.length; i++) {
+            values[i] = column[i];
+        }
+        return topK(values, null, column, k);
+    }
+
+    /**
+     * Returns the rows in the top percentage of a column, e.g. 25 for the top quarter.
+     * The number of rows is floor(percent / 100 * n), as in findTop25Ratings.
+     *
+     * @param column values per row; not modified
+     * @param percent percentage between 0 and 100
+     * @return row ids of the top rows, in ascending row order
+     */
+    public static int[] topPercent(int[] column, double percent) {
+        return topK(column, (int) Math.floor(percent / 100.0 * column.length));
+    }
+
+    /**
+     * @see #topPercent(int[], double)
+     */
+    public static int[] topPercent(double[] column, double percent) {
+        return topK(column, (int) Math.floor(percent / 100.0 * column.length));
+    }
+
+    private static double[] quantilesInPlace(double[] values, double[] ps) {
+        int n = values.length;
+        if (n == 0) {
+            throw new IllegalArgumentException("No values");
+        }
+
+        // Select the ranks in ascending order so each search can start past the previous rank
+        int[] ranks = new int[ps.length];
+        Integer[] order = new Integer[ps.length];
+        for (int i = 0; i < ps.length; i++) {
+            if (!(ps[i] >= 0 && ps[i] <= 1)) {
+                throw new IllegalArgumentException("Quantile " + ps[i] + " is not between 0 and 1");
+            }
+            ranks[i] = Math.max(0, (int) Math.ceil(ps[i] * n) - 1);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(ranks[a], ranks[b]));
+
+        double[] result = new double[ps.length];
+        int from = 0;
+        for (int i : order) {
+            select(values, from, n, ranks[i]);
+            result[i] = values[ranks[i]];
+            from = ranks[i];
+        }
+        return result;
+    }
+
+    /**
+     * Finds the k-th largest value with a selection, then takes every row above it
+     * and as many rows equal to it as needed, in row order.
+     */
+    private static int[] topK(double[] scratch, double[] doubles, int[] ints, int k) {
+        int n = scratch.length;
+        if (k <= 0) {
+            return new int[0];
+        }
+        if (k >= n) {
+            int[] all = new int[n];
+            for (int i = 0; i < n; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        double threshold = selectInPlace(scratch, n - k);
+        int above = 0;
+        for (int i = n - k + 1; i < n; i++) {
+            if (scratch[i] > threshold) {
+                above++;
+            }
+        }
+        int equalToTake = k - above;
+
+        int[] rows = new int[k];
+        int next = 0;
+        for (int row = 0; row < n && next < k; row++) {
+            double value = doubles != null ? doubles[row] : ints[row];
+            if (value > threshold) {
+                rows[next++] = row;
+            } else if (value == threshold && equalToTake > 0) {
+                rows[next++] = row;
+                equalToTake--;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Partially orders values[from, to) so that values[k] holds the value of rank k,
+     * everything before it is less than or equal to it and everything after it is greater or equal.
+     */
+    private static void select(double[] values, int from, int to, int k) {
+        // Quickselect normally needs about 2 log2(n) rounds; more means the pivots are poor
+        int budget = 2 * (32 - Integer.numberOfLeadingZeros(to - from + 1));
+        int lo = from;
+        int hi = to - 1;
+        while (hi - lo >= SMALL_RANGE) {
+            if (budget-- == 0) {
+                Arrays.sort(values, lo, hi + 1);
+                return;
+            }
+
+            double pivot = medianOfThree(values, lo, (lo + hi) >>> 1, hi);
+            // Three-way partition: [lo, lt) < pivot, [lt, gt] == pivot, (gt, hi] > pivot
+            int lt = lo;
+            int gt = hi;
+            int i = lo;
+            while (i <= gt) {
+                double value = values[i];
+                if (value < pivot) {
+                    swap(values, lt++, i++);
+                } else if (value > pivot) {
+                    swap(values, i, gt--);
+                } else {
+                    i++;
+                }
+            }
+
+            if (k < lt) {
+                hi = lt - 1;
+            } else if (k > gt) {
+                lo = gt + 1;
+            } else {
+                return;
+            }
+        }
+        Arrays.sort(values, lo, hi + 1);
+    }
+
+    private static double medianOfThree(double[] values, int a, int b, int c) {
+        double x = values[a];
+        double y = values[b];
+        double z = values[c];
+        if (x < y) {
+            return y < z ? y : Math.max(x, z);
+        }
+        return x < z ? x : Math.max(y, z);
+    }
+
+    private static void swap(double[] values, int i, int j) {
+        double t = values[i];
+        values[i] = values[j];
+        values[j] = t;
+    }
+}
@@ -0,0 +1,591 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Bootstrap confidence intervals and permutation tests for statistics of paired columns,
+ * such as the Pearson correlation of {@link ChessOpeningsAnalysis#findCorrelationCoeff(double[], double[])},
+ * and a permutation test of ECO code frequencies between two groups of openings, with
+ * Benjamini-Hochberg false discovery rate control across codes.
+ *
+ * Resamples are split into fixed-size batches run in parallel on a fork-join pool. Each batch
+ * has its own {@link SplittableRandom}, split from the engine's seed in batch order, so results
+ * are reproducible whatever the scheduling. Resampling only rearranges an index array that each
+ * batch allocates once, and statistics read the columns through it, so an iteration allocates nothing.
+ */
+public final class ResamplingEngine {
+    /** Number of resamples used by {@link #ResamplingEngine()}. */
+    public static final int DEFAULT_RESAMPLES = 10_000;
+
+    // Resamples run by one fork-join task
+    private static final int BATCH_SIZE = 250;
+
+    /**
+     * Pearson correlation of the pairs selected by the rows, computed in one pass with
+     * the same update as {@link CovarianceAccumulator}.
+     */
+    public static final PairedStatistic PEARSON = (x, y, rows, from, to) -> {
+        double meanX = 0;
+        double meanY = 0;
+        double m2X = 0;
+        double m2Y = 0;
+        double cXY = 0;
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            double xi = x[rows[i]];
+            double yi = y[rows[i]];
+            count++;
+            double dx = xi - meanX;
+            meanX += dx / count;
+            double dy = yi - meanY;
+            meanY += dy / count;
+            m2X += dx * (xi - meanX);
+            m2Y += dy * (yi - meanY);
+            cXY += dx * (yi - meanY);
+        }
+        return cXY / Math.sqrt(m2X * m2Y);
+    };
+
+    /**
+     * Direction of the alternative hypothesis of a test.
+     */
+    public enum Alternative {
+        /** The statistic is greater than under the null hypothesis. */
+        GREATER,
+        /** The statistic is less than under the null hypothesis. */
+        LESS,
+        /** The statistic differs from its null value in either direction. */
+        TWO_SIDED
+    }
+
+    /**
+     * A statistic of the pairs (x[rows[i]], y[rows[i]]) for i from {@code from} to {@code to}.
+     * Implementations must not allocate or modify their arguments, since they are called once per resample.
+     */
+    @FunctionalInterface
+    public interface PairedStatistic {
+        double compute(double[] x, double[] y, int[] rows, int from, int to);
+    }
+
+    private final int resamples;
+    private final long seed;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates an engine running {@link #DEFAULT_RESAMPLES} resamples on the common fork-join pool, with a fixed seed.
+     */
+    public ResamplingEngine() {
+        this(DEFAULT_RESAMPLES, 0x5EEDL);
+    }
+
+    /**
+     * @param resamples number of resamples per interval or test
+     * @param seed seed of the random resamples; the same seed gives the same results
+     */
+    public ResamplingEngine(int resamples, long seed) {
+        this(resamples, seed, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param resamples number of resamples per interval or test
+     * @param seed seed of the random resamples; the same seed gives the same results
+     * @param pool pool the resamples run on
+     */
+    public ResamplingEngine(int resamples, long seed, ForkJoinPool pool) {
+        if (resamples < 1) {
+            throw new IllegalArgumentException("At least one resample is needed");
+        }
+        this.resamples = resamples;
+        this.seed = seed;
+        this.pool = pool;
+    }
+
+    /**
+     * Percentile bootstrap confidence interval of a statistic, resampling the pairs with replacement.
+     * Resamples where the statistic is not finite, such as a Pearson correlation of a resample that
+     * drew one row repeatedly and so has a constant column, are left out of the interval and the
+     * standard error and counted in {@link Interval#getUndefined()}.
+     *
+     * @param x first column
+     * @param y second column, of the same length
+     * @param statistic statistic to estimate
+     * @param confidence confidence level, e.g. 0.95
+     * @return the statistic over all pairs with its bootstrap interval and standard error; the
+     *         bounds and standard error are NaN if no resample gave a finite statistic
+     */
+    public Interval bootstrap(double[] x, double[] y, PairedStatistic statistic, double confidence) {
+        try (OpeningsMetrics.Span span = OpeningsMetrics.start(OpeningsMetrics.Stage.STATISTICS, "ResamplingEngine.bootstrap")) {
+            checkPaired(x, y);
+            if (!(confidence > 0 && confidence < 1)) {
+                throw new IllegalArgumentException("Confidence must be between 0 and 1");
+            }
+            int n = x.length;
+            double estimate = statistic.compute(x, y, identity(n), 0, n);
+
+            double[] estimates = new double[resamples];
+            runBatches((random, from, to) -> {
+                int[] rows = new int[n];
+                for (int r = from; r < to; r++) {
+                    for (int i = 0; i < n; i++) {
+                        rows[i] = random.nextInt(n);
+                    }
+                    estimates[r] = statistic.compute(x, y, rows, 0, n);
+                }
+            });
+
+            StatsAccumulator spread = new StatsAccumulator();
+            int finite = 0;
+            for (double value : estimates) {
+                if (Double.isFinite(value)) {
+                    spread.accept(value);
+                    estimates[finite++] = value;
+                }
+            }
+            span.rows(n);
+            if (finite == 0) {
+                return new Interval(estimate, Double.NaN, Double.NaN, confidence, Double.NaN, resamples);
+            }
+            double tail = (1 - confidence) / 2;
+            double[] bounds = Quantiles.quantiles(Arrays.copyOf(estimates, finite), tail, 1 - tail);
+            return new Interval(estimate, bounds[0], bounds[1], confidence, spread.standardDeviation(), resamples - finite);
+        }
+    }
+
+    /**
+     * Permutation test of independence: the y values are shuffled against the x values, and the
+     * p-value is the share of shuffles whose statistic is at least as extreme as the observed one.
+     * Shuffles where the statistic is not finite are left out of the p-value and counted in
+     * {@link PermutationTest#getUndefined()}.
+     *
+     * @param x first column
+     * @param y second column, of the same length
+     * @param statistic statistic measuring the association, e.g. {@link #PEARSON}
+     * @param alternative direction of the alternative hypothesis, relative to a null value of 0
+     * @return p-value, (extreme shuffles + 1) / (finite shuffles + 1); NaN if the observed
+     *         statistic is not finite, such as a Pearson correlation with a constant column
+     */
+    public PermutationTest permutationTest(double[] x, double[] y, PairedStatistic statistic, Alternative alternative) {
+        try (OpeningsMetrics.Span span = OpeningsMetrics.start(OpeningsMetrics.Stage.STATISTICS, "ResamplingEngine.permutationTest")) {
+            checkPaired(x, y);
+            int n = x.length;
+            int[] identity = identity(n);
+            double observed = statistic.compute(x, y, identity, 0, n);
+            span.rows(n);
+            if (!Double.isFinite(observed)) {
+                return new PermutationTest(observed, Double.NaN, 0);
+            }
+
+            long[] counts = new long[2]; // extreme, undefined
+            runBatches((random, from, to) -> {
+                // Shuffling the previous shuffle again is still a uniform permutation
+                double[] shuffled = y.clone();
+                long extreme = 0;
+                long undefined = 0;
+                for (int r = from; r < to; r++) {
+                    shuffle(shuffled, random);
+                    double value = statistic.compute(x, shuffled, identity, 0, n);
+                    if (!Double.isFinite(value)) {
+                        undefined++;
+                    } else if (isExtreme(value, observed, alternative)) {
+                        extreme++;
+                    }
+                }
+                synchronized (counts) {
+                    counts[0] += extreme;
+                    counts[1] += undefined;
+                }
+            });
+            return pValue(observed, counts[0], (int) counts[1]);
+        }
+    }
+
+    /**
+     * Permutation test of the difference of a statistic between two groups of pairs, such as the
+     * correlations of white and black openings that {@link ChessOpeningsAnalysis#fisherTransformation(double, double)}
+     * compares in closed form. Pairs are reassigned between the groups at random, keeping the group sizes.
+     * Reassignments where the difference is not finite are left out of the p-value and counted in
+     * {@link PermutationTest#getUndefined()}.
+     *
+     * @param x1 first column of the first group
+     * @param y1 second column of the first group
+     * @param x2 first column of the second group
+     * @param y2 second column of the second group
+     * @param statistic statistic to compare
+     * @param alternative direction of the alternative hypothesis for statistic(group 1) - statistic(group 2)
+     * @return p-value, (extreme reassignments + 1) / (finite reassignments + 1); NaN if the
+     *         observed difference is not finite, such as when one group has a constant column
+     */
+    public PermutationTest differenceTest(double[] x1, double[] y1, double[] x2, double[] y2, PairedStatistic statistic, Alternative alternative) {
+        try (OpeningsMetrics.Span span = OpeningsMetrics.start(OpeningsMetrics.Stage.STATISTICS, "ResamplingEngine.differenceTest")) {
+            checkPaired(x1, y1);
+            checkPaired(x2, y2);
+            int n1 = x1.length;
+            int n = n1 + x2.length;
+            double[] x = concat(x1, x2);
+            double[] y = concat(y1, y2);
+            int[] identity = identity(n);
+            double observed = statistic.compute(x, y, identity, 0, n1) - statistic.compute(x, y, identity, n1, n);
+            span.rows(n);
+            if (!Double.isFinite(observed)) {
+                return new PermutationTest(observed, Double.NaN, 0);
+            }
+
+            long[] counts = new long[2]; // extreme, undefined
+            runBatches((random, from, to) -> {
+                int[] rows = identity(n);
+                long extreme = 0;
+                long undefined = 0;
+                for (int r = from; r < to; r++) {
+                    shuffle(rows, n1, random);
+                    double difference = statistic.compute(x, y, rows, 0, n1) - statistic.compute(x, y, rows, n1, n);
+                    if (!Double.isFinite(difference)) {
+                        undefined++;
+                    } else if (isExtreme(difference, observed, alternative)) {
+                        extreme++;
+                    }
+                }
+                synchronized (counts) {
+                    counts[0] += extreme;
+                    counts[1] += undefined;
+                }
+            });
+            return pValue(observed, counts[0], (int) counts[1]);
+        }
+    }
+
+    /**
+     * Permutation test of whether each ECO code is used more by a group of openings (for example
+     * those with the top 25% of ratings) than by the rest of a table. For each code the statistic
+     * is its share of the group's openings minus its share of the others; one shuffle of the
+     * group membership tests every code at once. Codes that do not occur are not tested, and rows
+     * whose ECO code is not a letter A-E followed by a number are left out of both the group and the rest.
+     *
+     * @param table openings of one color
+     * @param groupRows rows of the table in the group, without duplicates
+     * @return the observed differences, p-values and Benjamini-Hochberg q-values per ECO slot
+     * @throws IllegalArgumentException unless the group holds some but not all of the rows with a valid ECO code
+     */
+    public EcoTest ecoFrequencyTest(OpeningsTable table, int[] groupRows) {
+        try (OpeningsMetrics.Span span = OpeningsMetrics.start(OpeningsMetrics.Stage.STATISTICS, "ResamplingEngine.ecoFrequencyTest")) {
+            // Slots of the rows with a valid code, packed so the shuffles only see counted rows
+            int[] slots = new int[table.size()];
+            int[] totals = new int[EcoTest.SLOTS];
+            int counted = 0;
+            for (int row = 0; row < table.size(); row++) {
+                int slot = table.ecoSlot(row);
+                if (slot >= 0) {
+                    slots[counted++] = slot;
+                    totals[slot]++;
+                }
+            }
+            int[] groupCounts = new int[EcoTest.SLOTS];
+            int groupCounted = 0;
+            for (int row : groupRows) {
+                int slot = table.ecoSlot(row);
+                if (slot >= 0) {
+                    groupCounts[slot]++;
+                    groupCounted++;
+                }
+            }
+            int n = counted;
+            int groupSize = groupCounted;
+            if (groupSize == 0 || groupSize >= n) {
+                throw new IllegalArgumentException("The group must hold some but not all of the rows with a valid ECO code");
+            }
+            double[] observed = new double[EcoTest.SLOTS];
+            for (int slot = 0; slot < EcoTest.SLOTS; slot++) {
+                observed[slot] = shareDifference(groupCounts[slot], totals[slot], groupSize, n);
+            }
+
+            long[] extreme = new long[EcoTest.SLOTS];
+            runBatches((random, from, to) -> {
+                int[] rows = identity(n);
+                int[] counts = new int[EcoTest.SLOTS];
+                long[] batchExtreme = new long[EcoTest.SLOTS];
+                for (int r = from; r < to; r++) {
+                    shuffle(rows, groupSize, random);
+                    for (int i = 0; i < groupSize; i++) {
+                        counts[slots[rows[i]]]++;
+                    }
+                    for (int slot = 0; slot < EcoTest.SLOTS; slot++) {
+                        if (totals[slot] > 0 && isExtreme(shareDifference(counts[slot], totals[slot], groupSize, n), observed[slot], Alternative.GREATER)) {
+                            batchExtreme[slot]++;
+                        }
+                    }
+                    for (int i = 0; i < groupSize; i++) {
+                        counts[slots[rows[i]]] = 0;
+                    }
+                }
+                synchronized (extreme) {
+                    for (int slot = 0; slot < EcoTest.SLOTS; slot++) {
+                        extreme[slot] += batchExtreme[slot];
+                    }
+                }
+            });
+
+            double[] pValues = new double[EcoTest.SLOTS];
+            for (int slot = 0; slot < EcoTest.SLOTS; slot++) {
+                pValues[slot] = totals[slot] > 0 ? (extreme[slot] + 1.0) / (resamples + 1.0) : Double.NaN;
+            }
+            span.rows(n);
+            return new EcoTest(observed, pValues, benjaminiHochberg(pValues));
+        }
+    }
+
+    /**
+     * Benjamini-Hochberg adjustment of p-values: a hypothesis whose q-value is at most α can be
+     * rejected with the false discovery rate over all rejections kept at α.
+     * Source: https://en.wikipedia.org/wiki/False_discovery_rate#Benjamini%E2%80%93Hochberg_procedure
+     *
+     * @param pValues p-values of the hypotheses; NaN marks a hypothesis that was not tested
+     * @return q-values in the same order, NaN where the p-value is NaN
+     */
+    public static double[] benjaminiHochberg(double[] pValues) {
+        // Order the tested hypotheses by p-value
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < pValues.length; i++) {
+            if (!Double.isNaN(pValues[i])) {
+                if (pValues[i] < 0 || pValues[i] > 1) {
+                    throw new IllegalArgumentException("p-value " + pValues[i] + " is not between 0 and 1");
+                }
+                order.add(i);
+            }
+        }
+        order.sort((a, b) -> Double.compare(pValues[a], pValues[b]));
+        int tested = order.size();
+
+        // q(rank) = min over ranks j >= rank of p(j) * tested / j
+        double[] qValues = new double[pValues.length];
+        Arrays.fill(qValues, Double.NaN);
+        double min = 1;
+        for (int rank = tested; rank >= 1; rank--) {
+            int hypothesis = order.get(rank - 1);
+            min = Math.min(min, pValues[hypothesis] * tested / rank);
+            qValues[hypothesis] = min;
+        }
+        return qValues;
+    }
+
+    /**
+     * A bootstrap estimate of a statistic.
+     */
+    public static final class Interval {
+        private final double estimate;
+        private final double lower;
+        private final double upper;
+        private final double confidence;
+        private final double standardError;
+        private final int undefined;
+
+        Interval(double estimate, double lower, double upper, double confidence, double standardError, int undefined) {
+            this.estimate = estimate;
+            this.lower = lower;
+            this.upper = upper;
+            this.confidence = confidence;
+            this.standardError = standardError;
+            this.undefined = undefined;
+        }
+
+        /** @return the statistic over the original data */
+        public double getEstimate() { return estimate; }
+        public double getLower() { return lower; }
+        public double getUpper() { return upper; }
+        public double getConfidence() { return confidence; }
+        /** @return standard deviation of the bootstrap estimates */
+        public double getStandardError() { return standardError; }
+        /** @return number of resamples left out because their statistic was not finite */
+        public int getUndefined() { return undefined; }
+
+        /**
+         * @param value value to check
+         * @return true if the interval contains the value
+         */
+        public boolean contains(double value) {
+            return value >= lower && value <= upper;
+        }
+
+        @Override
+        public String toString() {
+            String interval = String.format(java.util.Locale.ROOT, "%.4f [%.4f, %.4f] (%.0f%%, SE %.4f)",
+                                            estimate, lower, upper, confidence * 100, standardError);
+            return undefined == 0 ? interval : interval + ", " + undefined + " undefined resamples";
+        }
+    }
+
+    /**
+     * Result of {@link #permutationTest} or {@link #differenceTest}.
+     */
+    public static final class PermutationTest {
+        private final double observed;
+        private final double pValue;
+        private final int undefined;
+
+        PermutationTest(double observed, double pValue, int undefined) {
+            this.observed = observed;
+            this.pValue = pValue;
+            this.undefined = undefined;
+        }
+
+        /** @return the statistic, or the difference of the statistics, over the original data */
+        public double getObserved() { return observed; }
+        /** @return p-value, NaN if the observed statistic or every resampled one is not finite */
+        public double getPValue() { return pValue; }
+        /** @return number of resamples left out because their statistic was not finite */
+        public int getUndefined() { return undefined; }
+
+        @Override
+        public String toString() {
+            String test = String.format(java.util.Locale.ROOT, "%.4f (p = %.4f)", observed, pValue);
+            return undefined == 0 ? test : test + ", " + undefined + " undefined resamples";
+        }
+    }
+
+    /**
+     * Result of {@link #ecoFrequencyTest(OpeningsTable, int[])}, indexed by ECO slot
+     * (see {@link ChessOpeningsAnalysis#getEcoCode(int)}).
+     */
+    public static final class EcoTest {
+        static final int SLOTS = 500;
+
+        private final double[] difference;
+        private final double[] pValues;
+        private final double[] qValues;
+
+        EcoTest(double[] difference, double[] pValues, double[] qValues) {
+            this.difference = difference;
+            this.pValues = pValues;
+            this.qValues = qValues;
+        }
+
+        /** @return the group's share of each code minus the other openings' share */
+        public double[] getDifference() { return difference.clone(); }
+        /** @return p-value per code, NaN for codes that do not occur */
+        public double[] getPValues() { return pValues.clone(); }
+        /** @return Benjamini-Hochberg q-value per code, NaN for codes that do not occur */
+        public double[] getQValues() { return qValues.clone(); }
+
+        /**
+         * @param alpha false discovery rate, e.g. 0.05
+         * @return ECO codes significantly more common in the group, in code order
+         */
+        public List<String> significant(double alpha) {
+            List<String> codes = new ArrayList<>();
+            for (int slot = 0; slot < SLOTS; slot++) {
+                if (qValues[slot] <= alpha) {
+                    codes.add(ChessOpeningsAnalysis.getEcoCode(slot));
+                }
+            }
+            return codes;
+        }
+    }
+
+    /**
+     * The work of one batch of resamples, [from, to).
+     */
+    @FunctionalInterface
+    private interface Batch {
+        void run(SplittableRandom random, int from, int to);
+    }
+
+    /**
+     * Runs the resamples in batches on the pool, each batch with its own random generator.
+     */
+    private void runBatches(Batch batch) {
+        SplittableRandom root = new SplittableRandom(seed);
+        List<RecursiveAction> tasks = new ArrayList<>();
+        for (int from = 0; from < resamples; from += BATCH_SIZE) {
+            int start = from;
+            int end = Math.min(resamples, from + BATCH_SIZE);
+            SplittableRandom random = root.split();
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    batch.run(random, start, end);
+                }
+            });
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    /**
+     * p-value of a permutation test from the number of extreme resamples, counting only finite ones.
+     */
+    private PermutationTest pValue(double observed, long extreme, int undefined) {
+        int finite = resamples - undefined;
+        double pValue = finite == 0 ? Double.NaN : (extreme + 1.0) / (finite + 1.0);
+        return new PermutationTest(observed, pValue, undefined);
+    }
+
+    private static boolean isExtreme(double value, double observed, Alternative alternative) {
+        // Tolerate rounding so that permutations equal to the observed data count as extreme
+        double tolerance = 1e-12 * Math.max(1, Math.abs(observed));
+        switch (alternative) {
+            case GREATER:
+                return value >= observed - tolerance;
+            case LESS:
+                return value <= observed + tolerance;
+            default:
+                return Math.abs(value) >= Math.abs(observed) - tolerance;
+        }
+    }
+
+    private static double shareDifference(int groupCount, int total, int groupSize, int n) {
+        return (double) groupCount / groupSize - (double) (total - groupCount) / (n - groupSize);
+    }
+
+    /**
+     * Fisher-Yates shuffle of a whole array.
+     */
+    private static void shuffle(double[] values, SplittableRandom random) {
+        for (int i = values.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            double swap = values[i];
+            values[i] = values[j];
+            values[j] = swap;
+        }
+    }
+
+    /**
+     * Partial Fisher-Yates shuffle: afterwards the first k entries are a uniform random
+     * choice of k of the entries, in random order.
+     */
+    private static void shuffle(int[] values, int k, SplittableRandom random) {
+        for (int i = 0; i < k; i++) {
+            int j = i + random.nextInt(values.length - i);
+            int swap = values[i];
+            values[i] = values[j];
+            values[j] = swap;
+        }
+    }
+
+    private static int[] identity(int n) {
+        int[] rows = new int[n];
+        for (int i = 0; i < n; i++) {
+            rows[i] = i;
+        }
+        return rows;
+    }
+
+    private static double[] concat(double[] a, double[] b) {
+        double[] joined = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, joined, a.length, b.length);
+        return joined;
+    }
+
+    private static void checkPaired(double[] x, double[] y) {
+        if (x.length != y.length) {
+            throw new IllegalArgumentException("Columns have different lengths: " + x.length + " and " + y.length);
+        }
+        if (x.length < 2) {
+            throw new IllegalArgumentException("At least two pairs are needed");
+        }
+    }
+}
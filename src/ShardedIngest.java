@@ -0,0 +1,314 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Loads openings split over several CSV shards (for example one per month or per site),
+ * each in the openings.csv format, and merges them into one list.
+ *
+ * Shards are given as a directory, whose *.csv and *.pgn files are all read, or as a glob such as
+ * {@code data/shards/2024-*.csv} or {@code data/**}{@code /openings.csv}. They are loaded in parallel,
+ * each through its own binary snapshot, so only shards that changed are parsed again.
+ *
+ * An opening that appears in several shards is merged into one: the numbers of games are summed,
+ * the win, draw and loss percentages and the average rating are weighted by each shard's number
+ * of games, and the latest Last Played date is kept. Rows are the same opening when they have the
+ * same name, color and moves; the moves are part of the key because a name can cover several
+ * move orders, which stay separate rows.
+ */
+public final class ShardedIngest {
+    private ShardedIngest() {}
+
+    /**
+     * @param path location given for the openings
+     * @return true if it names a directory or contains glob characters, rather than a single file
+     */
+    public static boolean isSharded(String path) {
+        return new File(path).isDirectory() || firstGlobCharacter(path) >= 0;
+    }
+
+    /**
+     * Lists the shards a directory or glob refers to, in path order. A single file is its only shard.
+     *
+     * @param path directory, glob or file
+     * @return the shard files
+     * @throws FileNotFoundException if no file matches
+     */
+    public static List<File> resolve(String path) throws FileNotFoundException {
+        List<Path> shards;
+        File file = new File(path);
+        try {
+            if (file.isDirectory()) {
+                try (Stream<Path> files = Files.list(file.toPath())) {
+                    shards = files.filter(p -> isShardFile(p) && Files.isRegularFile(p))
+                                  .collect(Collectors.toList());
+                }
+            } else if (firstGlobCharacter(path) >= 0) {
+                // Only openings files, so snapshots next to the shards are never read as shards
+                shards = glob(path).stream().filter(ShardedIngest::isShardFile).collect(Collectors.toList());
+            } else {
+                shards = file.isFile() ? List.of(file.toPath()) : List.of();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list " + path, e);
+        }
+
+        if (shards.isEmpty()) {
+            throw new FileNotFoundException(path);
+        }
+        return shards.stream().sorted().map(Path::toFile).collect(Collectors.toList());
+    }
+
+    /**
+     * Resolves and loads the shards on the common fork-join pool.
+     *
+     * @param path directory, glob or file
+     * @return the merged openings, in order of first appearance
+     * @throws FileNotFoundException if no shard matches or a shard disappears while loading
+     */
+    public static ArrayList<ChessOpening> load(String path) throws FileNotFoundException {
+        return load(resolve(path), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Loads shards in parallel and merges their openings.
+     *
+     * @param shards openings.csv-style files
+     * @param pool pool the shards are loaded on
+     * @return the merged openings, in order of first appearance
+     * @throws FileNotFoundException if a shard is not found
+     */
+    public static ArrayList<ChessOpening> load(List<File> shards, ForkJoinPool pool) throws FileNotFoundException {
+        try (OpeningsMetrics.Span span = OpeningsMetrics.start(OpeningsMetrics.Stage.LOAD, "ShardedIngest.load")) {
+            List<ShardTask> tasks = new ArrayList<>();
+            for (File shard : shards) {
+                tasks.add(new ShardTask(shard));
+            }
+            try {
+                pool.invoke(new RecursiveTask<Void>() {
+                    @Override
+                    protected Void compute() {
+                        ForkJoinTask.invokeAll(tasks);
+                        return null;
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                if (e.getCause() instanceof FileNotFoundException) {
+                    throw (FileNotFoundException) e.getCause();
+                }
+                throw e;
+            }
+
+            List<List<ChessOpening>> loaded = new ArrayList<>();
+            for (ShardTask task : tasks) {
+                loaded.add(task.getRawResult());
+            }
+            ArrayList<ChessOpening> merged = merge(loaded);
+            span.rows(merged.size());
+            return merged;
+        }
+    }
+
+    /**
+     * Merges the openings of several shards, combining rows for the same opening.
+     *
+     * @param shards openings of each shard
+     * @return one opening per distinct name, color and move list, in order of first appearance
+     */
+    public static ArrayList<ChessOpening> merge(List<? extends List<ChessOpening>> shards) {
+        try (OpeningsMetrics.Span span = OpeningsMetrics.start(OpeningsMetrics.Stage.AGGREGATION, "ShardedIngest.merge")) {
+            LinkedHashMap<String, ArrayList<ChessOpening>> byOpening = new LinkedHashMap<>();
+            for (List<ChessOpening> shard : shards) {
+                for (ChessOpening opening : shard) {
+                    byOpening.computeIfAbsent(key(opening), k -> new ArrayList<>(1)).add(opening);
+                }
+            }
+
+            ArrayList<ChessOpening> merged = new ArrayList<>(byOpening.size());
+            for (ArrayList<ChessOpening> duplicates : byOpening.values()) {
+                merged.add(duplicates.size() == 1 ? duplicates.get(0) : combine(duplicates));
+            }
+            span.rows(merged.size());
+            return merged;
+        }
+    }
+
+    /**
+     * Combines rows for the same opening from different shards.
+     */
+    private static ChessOpening combine(List<ChessOpening> duplicates) {
+        long games = 0;
+        double rating = 0;
+        double win = 0;
+        double draw = 0;
+        double loss = 0;
+        String lastPlayed = null;
+        for (ChessOpening opening : duplicates) {
+            int n = opening.getNumGames();
+            games += n;
+            rating += (double) n * opening.getAvgRating();
+            win += n * opening.getPlayerWinPercent();
+            draw += n * opening.getDrawPercent();
+            loss += n * opening.getOpponentWinPercent();
+            // ISO dates order the same way as their text
+            String date = opening.getLastPlayed();
+            if (date != null && (lastPlayed == null || date.compareTo(lastPlayed) > 0)) {
+                lastPlayed = date;
+            }
+        }
+
+        ChessOpening first = duplicates.get(0);
+        if (games == 0) {
+            return new ChessOpening(first, 0, first.getAvgRating(), first.getPlayerWinPercent(),
+                                    first.getDrawPercent(), first.getOpponentWinPercent(), lastPlayed);
+        }
+        if (games > Integer.MAX_VALUE) {
+            throw new ArithmeticException("Too many games for " + first.getOpening() + ": " + games);
+        }
+        return new ChessOpening(first, (int) games, (int) Math.round(rating / games),
+                                win / games, draw / games, loss / games, lastPlayed);
+    }
+
+    private static String key(ChessOpening opening) {
+        return opening.getOpening() + '\u0000' + opening.getColor() + '\u0000' + String.join(" ", opening.getMovesList());
+    }
+
+    /**
+     * Records the path, size and modification time of every shard, used to tell when a shard
+     * was added, removed, renamed or changed.
+     *
+     * @param shards shard files, as listed by {@link #resolve(String)}
+     * @return state of the shards
+     */
+    static SourceState sourceState(List<File> shards) {
+        return new SourceState(shards);
+    }
+
+    /**
+     * Paths, sizes and modification times of a list of shards. Two states are equal when they
+     * list the same shards, in the same order, with the same sizes and modification times.
+     */
+    static final class SourceState {
+        private final List<String> paths = new ArrayList<>();
+        private final long[] sizes;
+        private final long[] lastModified;
+
+        private SourceState(List<File> shards) {
+            sizes = new long[shards.size()];
+            lastModified = new long[shards.size()];
+            for (int i = 0; i < shards.size(); i++) {
+                File shard = shards.get(i);
+                paths.add(shard.getPath());
+                sizes[i] = shard.length();
+                lastModified[i] = shard.lastModified();
+            }
+        }
+
+        /** @return total size of the shards in bytes */
+        long size() {
+            long size = 0;
+            for (long shardSize : sizes) {
+                size += shardSize;
+            }
+            return size;
+        }
+
+        /** @return latest modification time of the shards */
+        long lastModified() {
+            long latest = 0;
+            for (long time : lastModified) {
+                latest = Math.max(latest, time);
+            }
+            return latest;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof SourceState)) {
+                return false;
+            }
+            SourceState state = (SourceState) other;
+            return paths.equals(state.paths) && Arrays.equals(sizes, state.sizes) && Arrays.equals(lastModified, state.lastModified);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(paths, Arrays.hashCode(sizes), Arrays.hashCode(lastModified));
+        }
+    }
+
+    /**
+     * Matches a glob against the files below its last directory without glob characters.
+     * A pattern without "**" only matches at its own depth.
+     */
+    private static List<Path> glob(String pattern) throws IOException {
+        int split = pattern.lastIndexOf(File.separatorChar, firstGlobCharacter(pattern));
+        if (File.separatorChar != '/') {
+            split = Math.max(split, pattern.lastIndexOf('/', firstGlobCharacter(pattern)));
+        }
+        Path base = Paths.get(split < 0 ? "." : pattern.substring(0, split + 1));
+        String relative = pattern.substring(split + 1);
+        if (!Files.isDirectory(base)) {
+            return List.of();
+        }
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + relative);
+        int depth = relative.contains("**") ? Integer.MAX_VALUE : Paths.get(relative).getNameCount();
+        try (Stream<Path> files = Files.walk(base, depth)) {
+            return files.filter(p -> Files.isRegularFile(p) && matcher.matches(base.relativize(p)))
+                        .collect(Collectors.toList());
+        }
+    }
+
+    private static boolean isShardFile(Path path) {
+        String name = path.getFileName().toString();
+        return name.endsWith(".csv") || name.endsWith(".pgn");
+    }
+
+    private static int firstGlobCharacter(String path) {
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Loads one shard, through its snapshot when it is up to date.
+     */
+    @SuppressWarnings("serial")
+    private static final class ShardTask extends RecursiveTask<List<ChessOpening>> {
+        private final File shard;
+
+        ShardTask(File shard) {
+            this.shard = shard;
+        }
+
+        @Override
+        protected List<ChessOpening> compute() {
+            try {
+                return OpeningsDataset.readFile(shard);
+            } catch (FileNotFoundException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
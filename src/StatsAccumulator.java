@@ -0,0 +1,93 @@
+/**
+ * Single-pass accumulator for the count, mean and variance of a stream of values,
+ * using Welford's numerically stable update.
+ * Source: https://en.wikipedia.org/wiki/Algorithms_for_calculating_variance#Welford's_online_algorithm
+ *
+ * Accumulators built over separate partitions of the data (for example on different
+ * threads) can be combined with {@link #merge(StatsAccumulator)}.
+ * Instances are not thread-safe; use one per thread and merge them.
+ */
+public final class StatsAccumulator {
+    private long count;
+    private double mean;
+    private double m2; // Sum of squared differences from the mean
+
+    /**
+     * Adds a value.
+     *
+     * @param value value to add
+     */
+    public void accept(double value) {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+    }
+
+    /**
+     * Adds every value of an array.
+     *
+     * @param values values to add
+     */
+    public void acceptAll(double[] values) {
+        for (double value : values) {
+            accept(value);
+        }
+    }
+
+    /**
+     * Combines another accumulator's values into this one (Chan et al. parallel update).
+     *
+     * @param other accumulator over a separate set of values
+     * @return this accumulator
+     */
+    public StatsAccumulator merge(StatsAccumulator other) {
+        if (other.count == 0) {
+            return this;
+        }
+        if (count == 0) {
+            count = other.count;
+            mean = other.mean;
+            m2 = other.m2;
+            return this;
+        }
+
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        m2 += other.m2 + delta * delta * ((double) count * other.count / total);
+        count = total;
+        return this;
+    }
+
+    /**
+     * @return number of values added
+     */
+    public long count() { return count; }
+
+    /**
+     * @return mean of the values, or NaN if there are none
+     */
+    public double mean() { return count == 0 ? Double.NaN : mean; }
+
+    /**
+     * @return sum of squared differences from the mean
+     */
+    public double sumOfSquares() { return m2; }
+
+    /**
+     * @return population variance, Σ(x - x̄)² / n
+     */
+    public double variance() { return count == 0 ? Double.NaN : m2 / count; }
+
+    /**
+     * @return population standard deviation
+     */
+    public double standardDeviation() { return Math.sqrt(variance()); }
+
+    /**
+     * @param value value to standardize
+     * @return the value's z-score relative to these values
+     */
+    public double zScore(double value) { return (value - mean()) / standardDeviation(); }
+}
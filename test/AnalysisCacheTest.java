@@ -0,0 +1,182 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AnalysisCacheTest {
+    @TempDir
+    Path dir;
+
+    private String configuredPath;
+    private OpeningsDataset dataset;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void loadDataset() throws IOException {
+        Path csv = dir.resolve("openings.csv");
+        Files.writeString(csv, ",Opening,Colour,Num Games,ECO,Last Played,Perf Rating,Avg Player,Player Win %,Draw %,Opponent Win %,Moves,moves_list\n"
+                               + "0,Alekhine Defense,white,692,B03,2018-06-22,2247,2225,40.8,24.3,35.0,1.e4 Nf6,\"['1.e4', 'Nf6']\"\n");
+        configuredPath = OpeningsDataset.getConfiguredPath();
+        OpeningsDataset.setPath(csv.toString());
+        dataset = reload();
+    }
+
+    @AfterEach
+    void restoreDataset() {
+        OpeningsDataset.setPath(configuredPath);
+        OpeningsDataset.invalidate();
+    }
+
+    @Test
+    void secondRequestIsAHit() throws FileNotFoundException {
+        AnalysisCache cache = new AnalysisCache(16);
+        Object first = cache.get(dataset, "op", this::load, 1);
+        assertSame(first, cache.get(dataset, "op", this::load, 1));
+        cache.get(dataset, "op", this::load, 2);
+        cache.get(dataset, "other", this::load, 1);
+        assertEquals(3, loads.get());
+        assertEquals(1, cache.stats().getHits());
+        assertEquals(3, cache.stats().getMisses());
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        AnalysisCache cache = new AnalysisCache(16);
+        int threads = 8;
+        CountDownLatch arrived = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    arrived.countDown();
+                    return cache.get(dataset, "slow", () -> {
+                        // Keep the load running until every thread has asked for the key
+                        await(arrived);
+                        return load();
+                    });
+                }));
+            }
+            Object value = results.get(0).get();
+            for (Future<Object> result : results) {
+                assertSame(value, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(threads - 1, cache.stats().getHits());
+        assertEquals(1, cache.stats().getMisses());
+    }
+
+    @Test
+    void failedLoadIsNotCached() throws FileNotFoundException {
+        AnalysisCache cache = new AnalysisCache(16);
+        assertThrows(FileNotFoundException.class, () -> cache.get(dataset, "op", () -> {
+            loads.incrementAndGet();
+            throw new FileNotFoundException("missing.csv");
+        }));
+        cache.get(dataset, "op", this::load);
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.stats().getSize());
+    }
+
+    @Test
+    void burstOfOneOffQueriesKeepsPopularResults() throws FileNotFoundException {
+        AnalysisCache cache = new AnalysisCache(100);
+        int oneOff = 0;
+        for (int round = 0; round < 5; round++) {
+            for (int key = 0; key < 50; key++) {
+                cache.get(dataset, "popular", this::load, key);
+                cache.get(dataset, "scan", this::load, oneOff++);
+            }
+        }
+        for (int i = 0; i < 1_000; i++) {
+            cache.get(dataset, "scan", this::load, oneOff++);
+        }
+        assertEquals(100, cache.stats().getSize());
+        assertEquals(50 + oneOff - 100, cache.stats().getEvictions());
+
+        loads.set(0);
+        for (int key = 0; key < 50; key++) {
+            cache.get(dataset, "popular", this::load, key);
+        }
+        assertEquals(0, loads.get());
+    }
+
+    @Test
+    void weightBoundIsKept() throws FileNotFoundException {
+        AnalysisCache cache = new AnalysisCache(10, value -> ((int[]) value).length);
+        for (int key = 0; key < 20; key++) {
+            cache.get(dataset, "rows", () -> new int[3], key);
+            assertTrue(cache.stats().getWeight() <= 10);
+        }
+
+        // Heavier than the whole cache: returned but not stored
+        int[] huge = cache.get(dataset, "rows", () -> new int[11], "huge");
+        assertEquals(11, huge.length);
+        assertTrue(cache.stats().getWeight() <= 10);
+        cache.get(dataset, "rows", () -> {
+            loads.incrementAndGet();
+            return new int[11];
+        }, "huge");
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void newerDatasetDropsOlderResults() throws FileNotFoundException {
+        AnalysisCache cache = new AnalysisCache(16);
+        cache.get(dataset, "op", this::load);
+        cache.get(dataset, "other", this::load);
+
+        OpeningsDataset newer = reload();
+        assertTrue(newer.getVersion() > dataset.getVersion());
+        cache.get(newer, "op", this::load);
+        assertEquals(2, cache.stats().getInvalidations());
+        assertEquals(1, cache.stats().getSize());
+
+        // Results for the older snapshot are still computed, but no longer stored
+        cache.get(dataset, "op", this::load);
+        cache.get(dataset, "op", this::load);
+        assertEquals(5, loads.get());
+        assertEquals(1, cache.stats().getSize());
+    }
+
+    private Object load() {
+        loads.incrementAndGet();
+        return new Object();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static OpeningsDataset reload() throws FileNotFoundException {
+        OpeningsDataset.invalidate();
+        return OpeningsDataset.get();
+    }
+}
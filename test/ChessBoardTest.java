@@ -0,0 +1,109 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ChessBoardTest {
+    @Test
+    void playsOpeningLine() {
+        ChessBoard board = play("1.e4 e5 2.Nf3 Nc6 3.Bb5 a6 4.Ba4 Nf6 5.O-O Be7");
+        assertEquals("r1bqk2r/1pppbppp/p1n2n2/4p3/B3P3/5N2/PPPP1PPP/RNBQ1RK1 w kq -", board.toFen());
+        assertEquals(ChessBoard.WHITE, board.sideToMove());
+    }
+
+    @Test
+    void ignoresMoveNumbersAndAnnotations() {
+        ChessBoard board = new ChessBoard();
+        assertTrue(board.play("1.e4!?"));
+        assertTrue(board.play("1...c5"));
+        assertTrue(board.play("2.Nf3+"));
+        assertEquals(play("1.e4 c5 2.Nf3").toFen(), board.toFen());
+    }
+
+    @Test
+    void rejectsMalformedAndImpossibleMoves() {
+        ChessBoard board = new ChessBoard();
+        String start = board.toFen();
+        for (String san : new String[] {"", "e", "e5", "i3", "e9", "Nc4", "Ke2", "Bb2", "exd3", "O-O", "Zf3"}) {
+            assertFalse(board.play(san), san);
+            assertEquals(start, board.toFen());
+        }
+    }
+
+    @Test
+    void pinnedPieceCannotMove() {
+        ChessBoard board = play("1.e4 e5 2.d3 Bb4+ 3.Nc3 Nf6");
+        String before = board.toFen();
+        assertFalse(board.play("Nd5"));
+        assertFalse(board.play("Na4"));
+        assertEquals(before, board.toFen());
+        assertTrue(board.play("Bd2"));
+    }
+
+    @Test
+    void checkmatedSideHasNoMoves() {
+        ChessBoard board = play("1.f3 e5 2.g4 Qh4#");
+        for (String san : new String[] {"a3", "Kf2", "g5", "Nh3", "Ke2"}) {
+            assertFalse(board.play(san), san);
+        }
+    }
+
+    @Test
+    void ambiguousMoveNeedsDisambiguation() {
+        ChessBoard board = play("1.d4 d5 2.Nf3 Nf6");
+        assertFalse(board.play("Nd2"));
+        assertTrue(board.play("Nbd2"));
+    }
+
+    @Test
+    void cannotCastleThroughAttackedSquare() {
+        ChessBoard board = play("1.e4 b6 2.Nf3 Ba6 3.g3 Nc6 4.Bh3 Nf6");
+        // The bishop on a6 attacks f1 through the empty e2 square
+        assertFalse(board.play("O-O"));
+        assertTrue(board.play("d3"));
+        assertTrue(board.play("e6"));
+        assertTrue(board.play("O-O"));
+    }
+
+    @Test
+    void enPassantOnlyStraightAfterTheDoubleStep() {
+        ChessBoard board = play("1.e4 a6 2.e5 d5");
+        assertTrue(board.copy().play("exd6"));
+
+        board = play("1.e4 a6 2.e5 d5 3.a3 h6");
+        assertFalse(board.play("exd6"));
+    }
+
+    @Test
+    void promotesOnTheLastRank() {
+        ChessBoard board = play("1.h4 g5 2.hxg5 h5 3.g6 h4 4.g7 h3");
+        ChessBoard underpromoted = board.copy();
+        assertTrue(underpromoted.play("gxh8=N"));
+        assertEquals("rnbqkbnN/pppppp2/8/8/8/7p/PPPPPPP1/RNBQKBNR b KQq -", underpromoted.toFen());
+
+        // A missing promotion piece is read as a queen
+        ChessBoard queened = board.copy();
+        assertTrue(queened.play("gxh8"));
+        assertTrue(board.play("gxh8=Q"));
+        assertEquals("rnbqkbnQ/pppppp2/8/8/8/7p/PPPPPPP1/RNBQKBNR b KQq -", board.toFen());
+        assertEquals(board.toFen(), queened.toFen());
+
+        assertFalse(new ChessBoard().play("e4=Q"));
+    }
+
+    @Test
+    void transpositionsReachTheSameHash() {
+        assertEquals(play("1.e4 e6 2.d4").hash(), play("1.d4 e6 2.e4").hash());
+        assertEquals(play("1.Nf3 Nf6 2.Ng1 Ng8").hash(), new ChessBoard().hash());
+        assertFalse(play("1.e4").hash() == play("1.e3").hash());
+    }
+
+    private static ChessBoard play(String line) {
+        ChessBoard board = new ChessBoard();
+        for (String san : line.split(" ")) {
+            assertTrue(board.play(san), san);
+        }
+        return board;
+    }
+}
@@ -0,0 +1,124 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class OpeningsCsvReaderTest {
+    private static final String ROW =
+            "0,\"Alekhine Defense, Balogh Variation\",white,692,B03,2018-06-22,2247,2225,40.8,24.3,35.0,"
+            + "1.e4 Nf6 2.e5 Nd5 3.d4 d6 4.Bc4,\"['1.e4', 'Nf6', '2.e5', 'Nd5', '3.d4', 'd6', '4.Bc4']\",e4,Nf6";
+
+    @Test
+    void quotedFieldKeepsItsCommas() {
+        OpeningsCsvReader reader = OpeningsCsvReader.forLine(ROW);
+        assertEquals(15, reader.fieldCount());
+        assertEquals("Alekhine Defense, Balogh Variation", reader.getString(OpeningsCsvReader.OPENING));
+        assertEquals("white", reader.getColor(OpeningsCsvReader.COLOUR));
+        assertEquals(692, reader.getInt(OpeningsCsvReader.NUM_GAMES));
+        assertEquals("B03", reader.getString(OpeningsCsvReader.ECO));
+        assertEquals(40.8, reader.getDouble(OpeningsCsvReader.PLAYER_WIN), 0);
+        assertArrayEquals(new String[] {"1.e4", "Nf6", "2.e5", "Nd5", "3.d4", "d6", "4.Bc4"},
+                          reader.getMoves(OpeningsCsvReader.MOVES_LIST));
+    }
+
+    @Test
+    void doubledQuotesAreUnescaped() {
+        OpeningsCsvReader reader = OpeningsCsvReader.forLine("a,\"the \"\"Hippo\"\"\",\"\"\"\",\"\",c");
+        assertEquals(5, reader.fieldCount());
+        assertEquals("the \"Hippo\"", reader.getString(1));
+        assertEquals("\"", reader.getString(2));
+        assertEquals("", reader.getString(3));
+        assertEquals("c", reader.getString(4));
+    }
+
+    @Test
+    void lineBreaksInsideQuotesStayInTheField() throws IOException {
+        OpeningsCsvReader reader = new OpeningsCsvReader(new StringReader("a,\"one\ntwo\r\nthree\",b\nnext\n"));
+        assertTrue(reader.nextRecord());
+        assertEquals(3, reader.fieldCount());
+        assertEquals("one\ntwo\r\nthree", reader.getString(1));
+        assertEquals("b", reader.getString(2));
+        assertTrue(reader.nextRecord());
+        assertEquals("next", reader.getString(0));
+        assertFalse(reader.nextRecord());
+    }
+
+    @Test
+    void crlfLineEndsAreStripped() throws IOException {
+        OpeningsCsvReader reader = new OpeningsCsvReader(new StringReader("a,b\r\nc,\"d\"\r\n"));
+        assertTrue(reader.nextRecord());
+        assertEquals("b", reader.getString(1));
+        assertTrue(reader.nextRecord());
+        assertEquals("d", reader.getString(1));
+        assertFalse(reader.nextRecord());
+    }
+
+    @Test
+    void lastRecordNeedsNoLineEnd() throws IOException {
+        OpeningsCsvReader reader = new OpeningsCsvReader(new StringReader("a,b\n,\"c,\""));
+        assertTrue(reader.nextRecord());
+        assertTrue(reader.nextRecord());
+        assertEquals(2, reader.fieldCount());
+        assertEquals("", reader.getString(0));
+        assertEquals("c,", reader.getString(1));
+        assertFalse(reader.nextRecord());
+    }
+
+    @Test
+    void recordsLongerThanTheBufferAreRead() throws IOException {
+        // The stream buffer holds 64K characters, so this field is split across refills
+        String name = "x".repeat(200_000);
+        OpeningsCsvReader reader = new OpeningsCsvReader(new StringReader("a,\"" + name + "\",b\nc\n"));
+        assertTrue(reader.nextRecord());
+        assertEquals(name, reader.getString(1));
+        assertEquals("b", reader.getString(2));
+        assertTrue(reader.nextRecord());
+        assertEquals("c", reader.getString(0));
+    }
+
+    @Test
+    void reusedLineTokenizerGrowsForLongerLines() {
+        OpeningsCsvReader reader = OpeningsCsvReader.forLines();
+        reader.parseLine("a,\"b,c\"");
+        assertEquals("b,c", reader.getString(1));
+        String longField = "y".repeat(1_000);
+        reader.parseLine("\"" + longField + "\",z");
+        assertEquals(longField, reader.getString(0));
+        assertEquals("z", reader.getString(1));
+        reader.parseLine("short");
+        assertEquals(1, reader.fieldCount());
+        assertEquals("short", reader.getString(0));
+    }
+
+    @Test
+    void streamTokenizerRejectsParseLine() {
+        OpeningsCsvReader reader = new OpeningsCsvReader(new StringReader(ROW));
+        assertThrows(IllegalStateException.class, () -> reader.parseLine(ROW));
+    }
+
+    @Test
+    void readOpeningsSkipsHeaderBlankAndInvalidRows() throws IOException {
+        String csv = ",Opening,Colour,Num Games,ECO,Last Played,Perf Rating,Avg Player,Player Win %,Draw %,"
+                     + "Opponent Win %,Moves,moves_list\n"
+                     + ROW + "\n"
+                     + "\n"
+                     + ROW.replace("B03", "B-3") + "\n"
+                     + "1,truncated,black\n"
+                     + ROW.replace("white", "black") + "\r\n";
+        List<ChessOpening> openings = new ArrayList<>();
+        new OpeningsCsvReader(new StringReader(csv)).readOpenings(openings);
+        assertEquals(2, openings.size());
+        assertEquals("white", openings.get(0).getColor());
+        assertEquals("black", openings.get(1).getColor());
+        assertEquals("Alekhine Defense, Balogh Variation", openings.get(1).getOpening());
+        assertEquals(7, openings.get(1).getMoveCount());
+    }
+}
@@ -0,0 +1,123 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OpeningsSnapshotTest {
+    private static final long SOURCE_SIZE = 12_345;
+    private static final long SOURCE_MODIFIED = 1_600_000_000_000L;
+    // Offsets into the header: magic, version, source size and modification time, lines path length
+    private static final int VERSION_OFFSET = 4;
+    private static final int LINES_PATH_LENGTH_OFFSET = 24;
+    // First byte of the first dictionary string when there is no lines file
+    private static final int DICTIONARY_OFFSET = 56;
+
+    private static final List<ChessOpening> OPENINGS = List.of(
+            new ChessOpening("Alekhine Defense, Balogh Variation", "white", "B03", 692, 2225, 40.8, 24.3, 35.0,
+                             new String[] {"1.e4", "Nf6", "2.e5", "Nd5", "3.d4", "d6", "4.Bc4"}, "2018-06-22"),
+            new ChessOpening("Réti Opening", "black", "A04", 228, 2193, 29.8, 22.4, 47.8,
+                             new String[] {"1.Nf3"}, null),
+            new ChessOpening("Alekhine Defense, Brooklyn Variation", "black", "B02", 1, 1500, 100, 0, 0,
+                             new String[] {"1.e4", "Nf6", "2.e5", "Ng8"}, "2018-06-27"));
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripKeepsEveryColumn() throws IOException {
+        File snapshot = write();
+        List<ChessOpening> read = OpeningsSnapshot.read(snapshot, SOURCE_SIZE, SOURCE_MODIFIED);
+        assertNotNull(read);
+        assertEquals(OPENINGS.size(), read.size());
+        for (int i = 0; i < OPENINGS.size(); i++) {
+            ChessOpening expected = OPENINGS.get(i);
+            ChessOpening actual = read.get(i);
+            assertEquals(expected.getOpening(), actual.getOpening());
+            assertEquals(expected.getColor(), actual.getColor());
+            assertEquals(expected.getEco(), actual.getEco());
+            assertEquals(expected.getLastPlayed(), actual.getLastPlayed());
+            assertEquals(expected.getNumGames(), actual.getNumGames());
+            assertEquals(expected.getAvgRating(), actual.getAvgRating());
+            assertEquals(expected.getPlayerWinPercent(), actual.getPlayerWinPercent(), 0);
+            assertEquals(expected.getDrawPercent(), actual.getDrawPercent(), 0);
+            assertEquals(expected.getOpponentWinPercent(), actual.getOpponentWinPercent(), 0);
+            assertArrayEquals(expected.getMovesList(), actual.getMovesList());
+        }
+    }
+
+    @Test
+    void missingSnapshotIsIgnored() {
+        assertNull(OpeningsSnapshot.read(dir.resolve("missing.snapshot").toFile(), SOURCE_SIZE, SOURCE_MODIFIED));
+    }
+
+    @Test
+    void changedSourceFileMakesSnapshotStale() throws IOException {
+        File snapshot = write();
+        assertNull(OpeningsSnapshot.read(snapshot, SOURCE_SIZE + 1, SOURCE_MODIFIED));
+        assertNull(OpeningsSnapshot.read(snapshot, SOURCE_SIZE, SOURCE_MODIFIED + 1));
+    }
+
+    @Test
+    void otherFormatVersionIsRejected() throws IOException {
+        File snapshot = write();
+        byte[] bytes = Files.readAllBytes(snapshot.toPath());
+        ByteBuffer.wrap(bytes).putInt(VERSION_OFFSET, ByteBuffer.wrap(bytes).getInt(VERSION_OFFSET) + 1);
+        Files.write(snapshot.toPath(), bytes);
+        assertNull(OpeningsSnapshot.read(snapshot, SOURCE_SIZE, SOURCE_MODIFIED));
+    }
+
+    @Test
+    void flippedByteFailsChecksum() throws IOException {
+        File snapshot = write();
+        byte[] bytes = Files.readAllBytes(snapshot.toPath());
+        // A letter of the first opening name would still decode, so only the checksum catches it
+        for (int offset : new int[] {DICTIONARY_OFFSET, bytes.length - 1}) {
+            bytes[offset] ^= 1;
+            Files.write(snapshot.toPath(), bytes);
+            assertNull(OpeningsSnapshot.read(snapshot, SOURCE_SIZE, SOURCE_MODIFIED));
+            bytes[offset] ^= 1;
+        }
+        Files.write(snapshot.toPath(), bytes);
+        assertNotNull(OpeningsSnapshot.read(snapshot, SOURCE_SIZE, SOURCE_MODIFIED));
+    }
+
+    @Test
+    void truncatedSnapshotIsRejected() throws IOException {
+        File snapshot = write();
+        byte[] bytes = Files.readAllBytes(snapshot.toPath());
+        for (int length : new int[] {0, 20, bytes.length / 2, bytes.length - 1}) {
+            Files.write(snapshot.toPath(), Arrays.copyOf(bytes, length));
+            assertNull(OpeningsSnapshot.read(snapshot, SOURCE_SIZE, SOURCE_MODIFIED));
+        }
+    }
+
+    @Test
+    void oversizedLengthIsRejectedBeforeAllocating() throws IOException {
+        File snapshot = write();
+        byte[] bytes = Files.readAllBytes(snapshot.toPath());
+        ByteBuffer.wrap(bytes).putInt(LINES_PATH_LENGTH_OFFSET, Integer.MAX_VALUE);
+        Files.write(snapshot.toPath(), bytes);
+        assertNull(OpeningsSnapshot.read(snapshot, SOURCE_SIZE, SOURCE_MODIFIED));
+
+        ByteBuffer.wrap(bytes).putInt(LINES_PATH_LENGTH_OFFSET, -1);
+        Files.write(snapshot.toPath(), bytes);
+        assertNull(OpeningsSnapshot.read(snapshot, SOURCE_SIZE, SOURCE_MODIFIED));
+    }
+
+    private File write() throws IOException {
+        File snapshot = dir.resolve("openings.snapshot").toFile();
+        OpeningsSnapshot.write(snapshot, OPENINGS, SOURCE_SIZE, SOURCE_MODIFIED);
+        return snapshot;
+    }
+}
@@ -0,0 +1,120 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ParallelOpeningsLoaderTest {
+    // Chunks are at least 1 MB, so files of several MB are needed to get more than one
+    private static final int ROWS = 8_000;
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void shutDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void lineBreaksInQuotedFieldsAcrossChunksMatchSequentialLoad() throws IOException {
+        assertMatchesSequentialLoad(write("multiline.csv", "\n"));
+    }
+
+    @Test
+    void crlfLineEndsAcrossChunksMatchSequentialLoad() throws IOException {
+        assertMatchesSequentialLoad(write("crlf.csv", "\r\n"));
+    }
+
+    @Test
+    void singleChunkFileMatchesSequentialLoad() throws IOException {
+        File file = dir.resolve("small.csv").toFile();
+        Files.writeString(file.toPath(), header() + row(new Random(1), 0, "\n") + row(new Random(2), 1, "\n"));
+        assertEquals(2, assertMatchesSequentialLoad(file));
+    }
+
+    @Test
+    void emptyFileHasNoOpenings() throws IOException {
+        File file = dir.resolve("empty.csv").toFile();
+        Files.writeString(file.toPath(), "");
+        assertTrue(ParallelOpeningsLoader.load(file, pool).isEmpty());
+    }
+
+    @Test
+    void missingFileIsReported() {
+        assertThrows(FileNotFoundException.class, () -> ParallelOpeningsLoader.load(dir.resolve("missing.csv").toFile(), pool));
+    }
+
+    /**
+     * Loads the file in parallel and with a single tokenizer and checks that both give the same openings.
+     *
+     * @return number of openings loaded
+     */
+    private int assertMatchesSequentialLoad(File file) throws IOException {
+        List<ChessOpening> expected = new ArrayList<>();
+        try (OpeningsCsvReader reader = OpeningsCsvReader.open(file)) {
+            reader.readOpenings(expected);
+        }
+        List<ChessOpening> actual = ParallelOpeningsLoader.load(file, pool);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getOpening(), actual.get(i).getOpening());
+            assertEquals(expected.get(i).getNumGames(), actual.get(i).getNumGames());
+            assertEquals(expected.get(i).getEco(), actual.get(i).getEco());
+            assertArrayEquals(expected.get(i).getMovesList(), actual.get(i).getMovesList());
+        }
+        return actual.size();
+    }
+
+    /**
+     * Writes a file of several chunks whose rows are mostly quoted text with line breaks, commas
+     * and escaped quotes, so most raw chunk boundaries fall inside a quoted field.
+     */
+    private File write(String name, String lineEnd) throws IOException {
+        Random random = new Random(42);
+        StringBuilder csv = new StringBuilder(header());
+        for (int i = 0; i < ROWS; i++) {
+            csv.append(row(random, i, lineEnd));
+        }
+        File file = dir.resolve(name).toFile();
+        Files.writeString(file.toPath(), csv, StandardCharsets.UTF_8);
+        assertTrue(file.length() > 4 << 20);
+        return file;
+    }
+
+    private static String header() {
+        return ",Opening,Colour,Num Games,ECO,Last Played,Perf Rating,Avg Player,Player Win %,Draw %,Opponent Win %,Moves,moves_list\n";
+    }
+
+    private static String row(Random random, int index, String lineEnd) {
+        StringBuilder opening = new StringBuilder("Opening ").append(index);
+        int parts = 20 + random.nextInt(40);
+        for (int i = 0; i < parts; i++) {
+            switch (random.nextInt(4)) {
+                case 0 -> opening.append(lineEnd);
+                case 1 -> opening.append(", ");
+                case 2 -> opening.append("\"\"");
+                default -> opening.append(' ');
+            }
+            opening.append("Variation ").append(random.nextInt(1000));
+        }
+        return index + ",\"" + opening + "\",white," + (index + 1) + ",B0" + (index % 10) + ",2018-06-22,2247,2225,40.8,24.3,35.0,"
+               + "1.e4 Nf6,\"['1.e4', 'Nf6', '" + (index % 2 == 0 ? "2.e5" : "2.d4") + "']\"" + lineEnd;
+    }
+}
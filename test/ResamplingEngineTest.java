@@ -0,0 +1,51 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ResamplingEngineTest {
+    private final ResamplingEngine engine = new ResamplingEngine(2_000, 42);
+
+    private static final double[] CONSTANT = {3, 3, 3, 3, 3, 3, 3, 3};
+    private static final double[] RISING = {1, 2, 3, 4, 5, 6, 7, 8};
+    private static final double[] NOISE = {5, 1, 7, 2, 8, 3, 6, 4};
+
+    @Test
+    void permutationTestOfConstantColumnIsUndefined() {
+        ResamplingEngine.PermutationTest test = engine.permutationTest(CONSTANT, RISING, ResamplingEngine.PEARSON,
+                                                                       ResamplingEngine.Alternative.TWO_SIDED);
+        assertTrue(Double.isNaN(test.getObserved()));
+        assertTrue(Double.isNaN(test.getPValue()));
+    }
+
+    @Test
+    void differenceTestWithConstantGroupIsUndefined() {
+        ResamplingEngine.PermutationTest test = engine.differenceTest(CONSTANT, RISING, RISING, NOISE, ResamplingEngine.PEARSON,
+                                                                      ResamplingEngine.Alternative.TWO_SIDED);
+        assertTrue(Double.isNaN(test.getPValue()));
+    }
+
+    @Test
+    void undefinedReassignmentsAreLeftOutOfThePValue() {
+        // A group of two rows drawn from data with repeated x values is often constant
+        double[] x1 = {1, 1, 2};
+        double[] y1 = {1, 2, 3};
+        double[] x2 = {1, 1, 1, 2, 2, 2};
+        double[] y2 = {4, 1, 3, 2, 6, 5};
+        ResamplingEngine.PermutationTest test = engine.differenceTest(x1, y1, x2, y2, ResamplingEngine.PEARSON,
+                                                                      ResamplingEngine.Alternative.TWO_SIDED);
+        assertTrue(Double.isFinite(test.getObserved()));
+        assertTrue(test.getUndefined() > 0);
+        assertTrue(test.getPValue() > 1.0 / (2_000 + 1));
+        assertTrue(test.getPValue() <= 1);
+    }
+
+    @Test
+    void perfectCorrelationIsSignificant() {
+        ResamplingEngine.PermutationTest test = engine.permutationTest(RISING, RISING, ResamplingEngine.PEARSON,
+                                                                       ResamplingEngine.Alternative.GREATER);
+        assertEquals(1, test.getObserved(), 1e-12);
+        assertEquals(0, test.getUndefined());
+        assertTrue(test.getPValue() < 0.01);
+    }
+}